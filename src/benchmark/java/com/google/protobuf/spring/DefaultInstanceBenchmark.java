@@ -0,0 +1,39 @@
+package com.google.protobuf.spring;
+
+import com.google.protobuf.Message;
+import com.google.protobuf.spring.http.benchmark.model.Order;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builder creation through the <code>MessageDefaultInstanceRegistry</code> compared with the reflective
+ * <code>newBuilder()</code> lookup it replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DefaultInstanceBenchmark {
+    private final Class<? extends Message> type = Order.class;
+
+    @Benchmark
+    public Message.Builder registry() {
+        return MessageDefaultInstanceRegistry.newBuilder(type);
+    }
+
+    @Benchmark
+    public Message.Builder reflection() throws Exception {
+        return (Message.Builder) type.getMethod("newBuilder").invoke(type);
+    }
+}
@@ -0,0 +1,67 @@
+package com.google.protobuf.spring.http;
+
+import com.google.protobuf.spring.http.benchmark.BenchmarkMessages;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <code>convertInputStreamToString</code> compared with the former line by line implementation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConvertInputStreamToStringBenchmark {
+    @Param({BenchmarkMessages.SMALL, BenchmarkMessages.LARGE})
+    public String size;
+
+    private byte[] body;
+
+    @Setup
+    public void setUp() {
+        body = ProtobufTextPrinter.printToByteArray(BenchmarkMessages.createOrder(size));
+    }
+
+    @Benchmark
+    public String convertInputStreamToString() {
+        return ProtobufHttpMessageConverter.convertInputStreamToString(new ByteArrayInputStream(body));
+    }
+
+    @Benchmark
+    public String readLines() {
+        return readLines(new ByteArrayInputStream(body));
+    }
+
+    private static String readLines(InputStream io) {
+        StringBuffer sb = new StringBuffer();
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(io, "UTF-8"));
+            String line = reader.readLine();
+            while (line != null) {
+                sb.append(line).append(ProtobufHttpMessageConverter.LS);
+                line = reader.readLine();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to obtain an InputStream", e);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,60 @@
+package com.google.protobuf.spring.http;
+
+import com.google.protobuf.Message;
+import com.google.protobuf.spring.http.benchmark.BenchmarkMessages;
+import com.google.protobuf.spring.http.benchmark.BufferedHttpInputMessage;
+import com.google.protobuf.spring.http.benchmark.BufferedHttpOutputMessage;
+import com.google.protobuf.spring.http.benchmark.model.Order;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading request bodies through the <code>ProtobufHttpMessageConverter</code>, for every readable media type
+ * and message size.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConverterReadBenchmark {
+    @Param({"protobuf", "json", "xml", "text"})
+    public String format;
+
+    @Param({BenchmarkMessages.SMALL, BenchmarkMessages.LARGE})
+    public String size;
+
+    private ProtobufHttpMessageConverter converter;
+    private MediaType contentType;
+    private byte[] body;
+
+    @Setup
+    public void setUp() throws IOException {
+        converter = new ProtobufHttpMessageConverter(BenchmarkMessages.EXTENSIONS);
+        contentType = ProtobufFormat.forName(format).getMediaType();
+        Message message = ProtobufFormat.XML.name().equalsIgnoreCase(format) ?
+                BenchmarkMessages.createXmlReadableOrder(size) : BenchmarkMessages.createOrder(size);
+        BufferedHttpOutputMessage output = new BufferedHttpOutputMessage(message.getSerializedSize() * 4);
+        converter.write(message, contentType, output);
+        body = output.toByteArray();
+    }
+
+    @Benchmark
+    public Message readInternal() throws IOException {
+        return converter.readInternal(Order.class, new BufferedHttpInputMessage(body, contentType));
+    }
+}
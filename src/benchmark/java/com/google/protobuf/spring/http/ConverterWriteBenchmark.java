@@ -0,0 +1,88 @@
+package com.google.protobuf.spring.http;
+
+import com.google.protobuf.Message;
+import com.google.protobuf.spring.http.benchmark.BenchmarkMessages;
+import com.google.protobuf.spring.http.benchmark.BufferedHttpOutputMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing responses through the <code>ProtobufHttpMessageConverter</code>, for every media type, message size
+ * and content coding.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConverterWriteBenchmark {
+    @Param({"protobuf", "json", "xml", "text", "html"})
+    public String format;
+
+    @Param({BenchmarkMessages.SMALL, BenchmarkMessages.LARGE})
+    public String size;
+
+    @Param({"identity", "gzip"})
+    public String encoding;
+
+    private ProtobufHttpMessageConverter converter;
+    private Message message;
+    private MediaType contentType;
+    private ContentEncoding contentEncoding;
+    private int bufferSize;
+
+    @Setup
+    public void setUp() {
+        converter = new ProtobufHttpMessageConverter(BenchmarkMessages.EXTENSIONS);
+        contentEncoding = ContentEncoding.forValue(encoding);
+        if (contentEncoding != ContentEncoding.IDENTITY) {
+            converter.setCompressionThreshold(0);
+        }
+        message = BenchmarkMessages.createOrder(size);
+        contentType = ProtobufFormat.forName(format).getMediaType();
+        bufferSize = message.getSerializedSize() * 4;
+    }
+
+    /**
+     * Full <code>write</code> path: content type, <code>getContentLength</code> and <code>writeInternal</code>.
+     */
+    @Benchmark
+    public int write() throws IOException {
+        BufferedHttpOutputMessage output = new BufferedHttpOutputMessage(bufferSize);
+        converter.write(message, contentType, wrap(output));
+        return output.size();
+    }
+
+    @Benchmark
+    public int writeInternal() throws IOException {
+        BufferedHttpOutputMessage output = new BufferedHttpOutputMessage(bufferSize);
+        HttpOutputMessage outputMessage = wrap(output);
+        outputMessage.getHeaders().setContentType(contentType);
+        converter.writeInternal(message, outputMessage);
+        return output.size();
+    }
+
+    @Benchmark
+    public Long getContentLength() {
+        return converter.getContentLength(message, contentType);
+    }
+
+    private HttpOutputMessage wrap(BufferedHttpOutputMessage output) {
+        return new AcceptEncodingHttpOutputMessage(output, contentEncoding);
+    }
+}
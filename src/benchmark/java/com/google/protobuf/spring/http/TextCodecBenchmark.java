@@ -0,0 +1,82 @@
+package com.google.protobuf.spring.http;
+
+import com.google.protobuf.ExtensionRegistry;
+import com.google.protobuf.Message;
+import com.google.protobuf.TextFormat;
+import com.google.protobuf.spring.http.benchmark.BenchmarkMessages;
+import com.google.protobuf.spring.http.benchmark.model.Order;
+import com.googlecode.protobuf.format.JsonFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The <code>ProtobufJsonCodec</code> and <code>ProtobufTextPrinter</code> compared with <code>JsonFormat</code> and
+ * <code>TextFormat</code>, each including the UTF-8 encoding or decoding of the body.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TextCodecBenchmark {
+    @Param({BenchmarkMessages.SMALL, BenchmarkMessages.LARGE})
+    public String size;
+
+    private Message message;
+    private ExtensionRegistry registry;
+    private byte[] json;
+
+    @Setup
+    public void setUp() {
+        message = BenchmarkMessages.createOrder(size);
+        registry = BenchmarkMessages.newExtensionRegistry();
+        json = ProtobufJsonCodec.printToByteArray(message);
+    }
+
+    @Benchmark
+    public byte[] printJsonCodec() {
+        return ProtobufJsonCodec.printToByteArray(message);
+    }
+
+    @Benchmark
+    public byte[] printJsonFormat() {
+        return JsonFormat.printToString(message).getBytes(ProtobufHttpMessageConverter.DEFAULT_CHARSET);
+    }
+
+    @Benchmark
+    public Message parseJsonCodec() throws IOException {
+        Order.Builder builder = Order.newBuilder();
+        ProtobufJsonCodec.merge(json, registry, builder);
+        return builder.build();
+    }
+
+    @Benchmark
+    public Message parseJsonFormat() throws IOException {
+        Order.Builder builder = Order.newBuilder();
+        JsonFormat.merge(new String(json, ProtobufHttpMessageConverter.DEFAULT_CHARSET), registry, builder);
+        return builder.build();
+    }
+
+    @Benchmark
+    public byte[] printTextPrinter() {
+        return ProtobufTextPrinter.printToByteArray(message);
+    }
+
+    @Benchmark
+    public byte[] printTextFormat() {
+        return TextFormat.printToString(message).getBytes(ProtobufHttpMessageConverter.DEFAULT_CHARSET);
+    }
+}
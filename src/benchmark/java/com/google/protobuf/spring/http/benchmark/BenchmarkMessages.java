@@ -0,0 +1,109 @@
+package com.google.protobuf.spring.http.benchmark;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.ExtensionRegistry;
+import com.google.protobuf.spring.ExtensionRegistryInitializer;
+import com.google.protobuf.spring.http.benchmark.model.Address;
+import com.google.protobuf.spring.http.benchmark.model.Audit;
+import com.google.protobuf.spring.http.benchmark.model.BenchmarkProtos;
+import com.google.protobuf.spring.http.benchmark.model.Customer;
+import com.google.protobuf.spring.http.benchmark.model.LineItem;
+import com.google.protobuf.spring.http.benchmark.model.Order;
+import com.google.protobuf.spring.http.benchmark.model.OrderStatus;
+
+import java.util.Random;
+
+/**
+ * Deterministic <code>Order</code> messages shared by the benchmarks.<br/>
+ * A <code>small</code> order has a single line item, while a <code>large</code> one has hundreds of line items
+ * with repeated tags, a 64KB note and extension fields.<br/>
+ * String values start with a letter and only contain ASCII letters, digits, spaces, <code>-</code> and <code>@</code>,
+ * since the tokenizer of <code>XmlFormat</code> cannot read other values back; for the same reason {@link #createXmlReadableOrder}
+ * leaves the <code>bytes</code> field out.
+ */
+public final class BenchmarkMessages {
+    public static final String SMALL = "small";
+    public static final String LARGE = "large";
+
+    public static final ExtensionRegistryInitializer EXTENSIONS = new ExtensionRegistryInitializer() {
+        public void initializeExtensionRegistry(ExtensionRegistry registry) {
+            BenchmarkProtos.registerAllExtensions(registry);
+        }
+    };
+
+    private BenchmarkMessages() {
+    }
+
+    public static ExtensionRegistry newExtensionRegistry() {
+        ExtensionRegistry registry = ExtensionRegistry.newInstance();
+        EXTENSIONS.initializeExtensionRegistry(registry);
+        return registry;
+    }
+
+    /**
+     * @param size either {@link #SMALL} or {@link #LARGE}.
+     * @return the same message content for every call with the same <i>size</i>.
+     */
+    public static Order createOrder(String size) {
+        boolean large = LARGE.equals(size);
+        Random random = new Random(42);
+        int itemCount = large ? 250 : 1;
+
+        Customer.Builder customer = Customer.newBuilder()
+                .setId(1234567890123L)
+                .setName("Jane Doe")
+                .setEmail("jane-doe@example");
+        for (int i = 0; i < (large ? 3 : 1); i++) {
+            customer.addAddresses(Address.newBuilder()
+                    .setStreet("Main Street " + (100 + i))
+                    .setCity("Zurich")
+                    .setPostalCode("CH-" + (8000 + i))
+                    .setCountry("CH"));
+        }
+
+        Order.Builder order = Order.newBuilder()
+                .setId(987654321L)
+                .setStatus(OrderStatus.SHIPPED)
+                .setCustomer(customer)
+                .setCreatedAt(1300000000000L)
+                .setNotes(randomText(random, large ? 64 * 1024 : 64));
+        for (int i = 0; i < itemCount; i++) {
+            LineItem.Builder item = LineItem.newBuilder()
+                    .setSku("SKU-" + (100000 + i))
+                    .setTitle(randomText(random, 40))
+                    .setQuantity(1 + random.nextInt(10))
+                    .setUnitPrice(random.nextInt(100000) / 100.0);
+            for (int j = 0; j < (large ? 4 : 1); j++) {
+                item.addTags("tag-" + random.nextInt(50));
+            }
+            order.addItems(item);
+            order.addAdjustments(random.nextInt(2000) - 1000);
+        }
+        byte[] signature = new byte[large ? 256 : 32];
+        random.nextBytes(signature);
+        order.setSignature(ByteString.copyFrom(signature));
+
+        order.setExtension(BenchmarkProtos.audit, Audit.newBuilder()
+                .setCreatedBy("benchmark")
+                .addChanges("created")
+                .addChanges("paid")
+                .build());
+        order.addExtension(BenchmarkProtos.labels, "priority");
+        return order.build();
+    }
+
+    public static Order createXmlReadableOrder(String size) {
+        return createOrder(size).toBuilder().clearSignature().build();
+    }
+
+    private static String randomText(Random random, int length) {
+        String words = "lorem ipsum dolor sit amet consectetur adipiscing elit sed do eiusmod tempor";
+        StringBuilder text = new StringBuilder(length);
+        while (text.length() < length) {
+            int start = random.nextInt(words.length() - 10);
+            text.append(words, start, start + 10).append(' ');
+        }
+        text.setLength(length);
+        return text.toString();
+    }
+}
@@ -0,0 +1,30 @@
+package com.google.protobuf.spring.http.benchmark;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.MediaType;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+/**
+ * <code>HttpInputMessage</code> reading the body from a byte array.
+ */
+public class BufferedHttpInputMessage implements HttpInputMessage {
+    private final HttpHeaders headers = new HttpHeaders();
+    private final InputStream body;
+
+    public BufferedHttpInputMessage(byte[] body, MediaType contentType) {
+        this.body = new ByteArrayInputStream(body);
+        headers.setContentType(contentType);
+        headers.setContentLength(body.length);
+    }
+
+    public HttpHeaders getHeaders() {
+        return headers;
+    }
+
+    public InputStream getBody() {
+        return body;
+    }
+}
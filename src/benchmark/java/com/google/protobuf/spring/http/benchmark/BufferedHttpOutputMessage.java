@@ -0,0 +1,36 @@
+package com.google.protobuf.spring.http.benchmark;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+
+/**
+ * <code>HttpOutputMessage</code> collecting the body in memory, so the benchmarks measure the converters
+ * rather than a servlet container.
+ */
+public class BufferedHttpOutputMessage implements HttpOutputMessage {
+    private final HttpHeaders headers = new HttpHeaders();
+    private final ByteArrayOutputStream body;
+
+    public BufferedHttpOutputMessage(int initialSize) {
+        this.body = new ByteArrayOutputStream(initialSize);
+    }
+
+    public HttpHeaders getHeaders() {
+        return headers;
+    }
+
+    public OutputStream getBody() {
+        return body;
+    }
+
+    public byte[] toByteArray() {
+        return body.toByteArray();
+    }
+
+    public int size() {
+        return body.size();
+    }
+}
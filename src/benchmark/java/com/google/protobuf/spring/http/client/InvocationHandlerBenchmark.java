@@ -0,0 +1,176 @@
+package com.google.protobuf.spring.http.client;
+
+import com.google.protobuf.spring.http.ProtobufHttpMessageConverter;
+import com.google.protobuf.spring.http.benchmark.BenchmarkMessages;
+import com.google.protobuf.spring.http.benchmark.model.Order;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service proxy dispatch through the <code>AbstractClientHttpInvocationHandler</code> against an in-memory transport,
+ * so only the handler overhead and the message conversion are measured, along with the URL generation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InvocationHandlerBenchmark {
+    private static final String BASE_URL = "http://localhost:8585/api";
+
+    public interface OrderService {
+        @ServiceRequest(name = "orders", pattern = "/orders/${id}", method = HttpMethod.GET)
+        Order getOrder(@RequestParam("id") long id);
+
+        @ServiceRequest(name = "orders", pattern = "/orders", method = HttpMethod.POST)
+        Order createOrder(Order order);
+
+        @ServiceRequest(name = "orders", pattern = "/customers/${customer}/orders", method = HttpMethod.GET)
+        Order findOrder(@RequestParam("customer") String customer, @RequestParam("status") String status,
+                        @RequestParam("tag") String[] tags);
+    }
+
+    @Param({BenchmarkMessages.SMALL, BenchmarkMessages.LARGE})
+    public String size;
+
+    private AbstractClientHttpInvocationHandler handler;
+    private OrderService service;
+    private Order order;
+    private UrlTemplate urlTemplate;
+    private final Object[] urlArguments = {"jane doe", "SHIPPED", new String[]{"priority", "gift"}};
+
+    @Setup
+    public void setUp() throws Exception {
+        order = BenchmarkMessages.createOrder(size);
+        ClientHttpInvocationHandlerServiceConfigurator config = new ClientHttpInvocationHandlerServiceConfigurator() {
+            public String getServiceBaseUrl(String serviceName) {
+                return BASE_URL;
+            }
+
+            public int getServiceTimeoutInSeconds(String serviceName) {
+                return 5;
+            }
+        };
+        handler = new AbstractClientHttpInvocationHandler(new InMemoryRequestFactory(order.toByteArray()), config,
+                BenchmarkMessages.EXTENSIONS) {
+        };
+        handler.prepareInvocationPlans(OrderService.class);
+        service = (OrderService) Proxy.newProxyInstance(OrderService.class.getClassLoader(),
+                new Class[]{OrderService.class}, handler);
+
+        Method findOrder = OrderService.class.getMethod("findOrder", String.class, String.class, String[].class);
+        urlTemplate = new UrlTemplate(BASE_URL, findOrder.getAnnotation(ServiceRequest.class).pattern(),
+                AbstractClientHttpInvocationHandler.retrieveRequestParams(findOrder));
+    }
+
+    @TearDown
+    public void tearDown() {
+        handler.destroy();
+    }
+
+    @Benchmark
+    public Order get() {
+        return service.getOrder(42);
+    }
+
+    @Benchmark
+    public Order post() {
+        return service.createOrder(order);
+    }
+
+    @Benchmark
+    public String expandUrl() {
+        return urlTemplate.expand(urlArguments, false);
+    }
+
+    /**
+     * Answers every request with the same binary protobuf body.
+     */
+    private static final class InMemoryRequestFactory implements ClientHttpRequestFactory {
+        private final byte[] responseBody;
+
+        private InMemoryRequestFactory(byte[] responseBody) {
+            this.responseBody = responseBody;
+        }
+
+        public ClientHttpRequest createRequest(URI uri, final HttpMethod httpMethod) {
+            return new ClientHttpRequest() {
+                private final HttpHeaders headers = new HttpHeaders();
+                private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+                public HttpMethod getMethod() {
+                    return httpMethod;
+                }
+
+                public HttpHeaders getHeaders() {
+                    return headers;
+                }
+
+                public OutputStream getBody() {
+                    return body;
+                }
+
+                public ClientHttpResponse execute() {
+                    return new InMemoryResponse(responseBody);
+                }
+            };
+        }
+    }
+
+    private static final class InMemoryResponse implements ClientHttpResponse {
+        private final HttpHeaders headers = new HttpHeaders();
+        private final InputStream body;
+
+        private InMemoryResponse(byte[] body) {
+            this.body = new ByteArrayInputStream(body);
+            headers.setContentType(ProtobufHttpMessageConverter.PROTOBUF);
+            headers.setContentLength(body.length);
+        }
+
+        public HttpStatus getStatusCode() {
+            return HttpStatus.OK;
+        }
+
+        public String getStatusText() {
+            return HttpStatus.OK.name();
+        }
+
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        public InputStream getBody() {
+            return body;
+        }
+
+        public void close() {
+        }
+    }
+}
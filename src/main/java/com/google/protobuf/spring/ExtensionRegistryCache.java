@@ -0,0 +1,41 @@
+package com.google.protobuf.spring;
+
+import com.google.protobuf.ExtensionRegistry;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class keeps one <code>ExtensionRegistry</code> per <code>ExtensionRegistryInitializer</code>.<br/>
+ * The registry is populated only once, however many converters, invocation handlers and response futures use the
+ * initializer, and is shared as an unmodifiable view. Initializers are held for the lifetime of the class loader,
+ * so they are expected to be long lived beans.
+ */
+public final class ExtensionRegistryCache {
+    private static final ConcurrentHashMap<ExtensionRegistryInitializer, ExtensionRegistry> registryCache =
+            new ConcurrentHashMap<ExtensionRegistryInitializer, ExtensionRegistry>();
+
+    private ExtensionRegistryCache() {
+    }
+
+    /**
+     * Returns the registry populated by the given initializer, initializing it on first use.
+     * @param registryInitializer populating the registry, may be <code>null</code>.
+     * @return unmodifiable registry, the empty registry if <i>registryInitializer</i> is <code>null</code>.
+     */
+    public static ExtensionRegistry getExtensionRegistry(ExtensionRegistryInitializer registryInitializer) {
+        if (registryInitializer == null) {
+            return ExtensionRegistry.getEmptyRegistry();
+        }
+        ExtensionRegistry registry = registryCache.get(registryInitializer);
+        if (registry == null) {
+            ExtensionRegistry initialized = ExtensionRegistry.newInstance();
+            registryInitializer.initializeExtensionRegistry(initialized);
+            ExtensionRegistry unmodifiable = initialized.getUnmodifiable();
+            registry = registryCache.putIfAbsent(registryInitializer, unmodifiable);
+            if (registry == null) {
+                registry = unmodifiable;
+            }
+        }
+        return registry;
+    }
+}
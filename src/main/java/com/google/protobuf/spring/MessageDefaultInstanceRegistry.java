@@ -0,0 +1,58 @@
+package com.google.protobuf.spring;
+
+import com.google.protobuf.Message;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class keeps the default instance of every generated <code>Message</code> class it has seen.<br/>
+ * The default instance is resolved through reflection only once per class, after which new builders are
+ * obtained with <code>newBuilderForType()</code>, so the per-message hot path does not use <code>Method.invoke</code>.
+ */
+public final class MessageDefaultInstanceRegistry {
+    private static final ConcurrentHashMap<Class, Message> defaultInstanceCache = new ConcurrentHashMap<Class, Message>();
+
+    private MessageDefaultInstanceRegistry() {
+    }
+
+    /**
+     * Returns the default instance of the given generated <code>Message</code> class.
+     * @param clazz generated <code>Message</code> class.
+     * @return default instance of <i>clazz</i>.
+     */
+    public static Message getDefaultInstance(Class<? extends Message> clazz) {
+        Message defaultInstance = defaultInstanceCache.get(clazz);
+        if (defaultInstance == null) {
+            defaultInstance = resolveDefaultInstance(clazz);
+            defaultInstanceCache.put(clazz, defaultInstance);
+        }
+        return defaultInstance;
+    }
+
+    /**
+     * Creates a new, empty builder for the given generated <code>Message</code> class.
+     * @param clazz generated <code>Message</code> class.
+     * @return new <code>Message.Builder</code> for <i>clazz</i>.
+     */
+    public static Message.Builder newBuilder(Class<? extends Message> clazz) {
+        return getDefaultInstance(clazz).newBuilderForType();
+    }
+
+    /**
+     * Resolves the default instances of the given classes ahead of the first request that uses them.
+     * @param classes generated <code>Message</code> classes.
+     */
+    public static void warmUp(Iterable<Class<? extends Message>> classes) {
+        for (Class<? extends Message> clazz : classes) {
+            getDefaultInstance(clazz);
+        }
+    }
+
+    private static Message resolveDefaultInstance(Class<? extends Message> clazz) {
+        try {
+            return (Message) clazz.getMethod("getDefaultInstance").invoke(clazz);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Unable to obtain the default instance of " + clazz.getName(), e);
+        }
+    }
+}
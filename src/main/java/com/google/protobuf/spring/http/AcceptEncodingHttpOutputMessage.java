@@ -0,0 +1,37 @@
+package com.google.protobuf.spring.http;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Decorates an <code>HttpOutputMessage</code> with the content coding negotiated from the request
+ * <code>Accept-Encoding</code> header, so the {@link ProtobufHttpMessageConverter} can compress the response.
+ */
+public class AcceptEncodingHttpOutputMessage implements HttpOutputMessage {
+    private final HttpOutputMessage delegate;
+    private final ContentEncoding acceptedEncoding;
+
+    public AcceptEncodingHttpOutputMessage(HttpOutputMessage delegate, ContentEncoding acceptedEncoding) {
+        this.delegate = delegate;
+        this.acceptedEncoding = acceptedEncoding;
+    }
+
+    public ContentEncoding getAcceptedEncoding() {
+        return acceptedEncoding;
+    }
+
+    protected HttpOutputMessage getDelegate() {
+        return delegate;
+    }
+
+    public HttpHeaders getHeaders() {
+        return delegate.getHeaders();
+    }
+
+    public OutputStream getBody() throws IOException {
+        return delegate.getBody();
+    }
+}
@@ -0,0 +1,104 @@
+package com.google.protobuf.spring.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Buffered byte output of the text format codecs, writing numbers without going through <code>String</code>.
+ */
+class ByteWriter {
+    static final byte[] HEX_DIGITS = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+    static final int BUFFER_SIZE = 4096;
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+
+    ByteWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    final void write(int b) throws IOException {
+        if (position == buffer.length) {
+            flushBuffer();
+        }
+        buffer[position++] = (byte) b;
+    }
+
+    final void write(byte[] bytes) throws IOException {
+        if (bytes.length > buffer.length - position) {
+            flushBuffer();
+            if (bytes.length > buffer.length) {
+                out.write(bytes);
+                return;
+            }
+        }
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    final void writeAscii(String s) throws IOException {
+        for (int i = 0; i < s.length(); i++) {
+            write(s.charAt(i));
+        }
+    }
+
+    final void writeLong(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            writeAscii("-9223372036854775808");
+            return;
+        }
+        if (value < 0) {
+            write('-');
+            value = -value;
+        }
+        writeDigits(value);
+    }
+
+    final void writeUnsignedLong(long value) throws IOException {
+        if (value >= 0) {
+            writeDigits(value);
+        } else {
+            long quotient = (value >>> 1) / 5;
+            writeDigits(quotient);
+            write((int) ('0' + (value - quotient * 10)));
+        }
+    }
+
+    private void writeDigits(long value) throws IOException {
+        if (buffer.length - position < 20) {
+            flushBuffer();
+        }
+        int length = 1;
+        for (long v = value; v >= 10; v /= 10) {
+            length++;
+        }
+        int index = position + length;
+        do {
+            buffer[--index] = (byte) ('0' + (value % 10));
+            value /= 10;
+        } while (value != 0);
+        position += length;
+    }
+
+    /**
+     * Writes <code>0x</code> followed by the given number of lowercase hex <i>digits</i>.
+     */
+    final void writeHex(long value, int digits) throws IOException {
+        write('0');
+        write('x');
+        for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+            write(HEX_DIGITS[(int) (value >>> shift) & 0xf]);
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+    }
+
+    final void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+}
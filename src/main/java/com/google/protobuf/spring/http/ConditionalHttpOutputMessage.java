@@ -0,0 +1,65 @@
+package com.google.protobuf.spring.http;
+
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpResponse;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link AcceptEncodingHttpOutputMessage} also carrying the <code>If-None-Match</code> entity tags of a
+ * <code>GET</code> or <code>HEAD</code> request, so the {@link ProtobufHttpMessageConverter} can answer
+ * <code>304 Not Modified</code> instead of writing a body the client already has.
+ */
+public class ConditionalHttpOutputMessage extends AcceptEncodingHttpOutputMessage {
+    public static final String IF_NONE_MATCH = "If-None-Match";
+
+    private final List<String> ifNoneMatch;
+
+    /**
+     * @param ifNoneMatch entity tags of the request <code>If-None-Match</code> header, may be empty.
+     */
+    public ConditionalHttpOutputMessage(HttpOutputMessage delegate, ContentEncoding acceptedEncoding, List<String> ifNoneMatch) {
+        super(delegate, acceptedEncoding);
+        this.ifNoneMatch = ifNoneMatch != null ? ifNoneMatch : Collections.<String>emptyList();
+    }
+
+    public List<String> getIfNoneMatch() {
+        return ifNoneMatch;
+    }
+
+    /**
+     * Compares <i>eTag</i> with the request entity tags using the weak comparison required for
+     * <code>If-None-Match</code>.
+     * @param eTag quoted entity tag of the current representation.
+     * @return <code>true</code> if the client already holds the representation.
+     */
+    public boolean isNotModified(String eTag) {
+        if (!(getDelegate() instanceof ServerHttpResponse)) {
+            return false;
+        }
+        String opaqueTag = opaqueTag(eTag);
+        for (String tag : ifNoneMatch) {
+            if ("*".equals(tag) || opaqueTag.equals(opaqueTag(tag))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sends a <code>304 Not Modified</code> status with the headers set so far and no body.
+     */
+    public void sendNotModified() {
+        ServerHttpResponse response = (ServerHttpResponse) getDelegate();
+        response.getHeaders().remove("Content-Length");
+        response.setStatusCode(HttpStatus.NOT_MODIFIED);
+        response.close();
+    }
+
+    private static String opaqueTag(String tag) {
+        tag = tag.trim();
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+}
@@ -0,0 +1,378 @@
+package com.google.protobuf.spring.http;
+
+import org.springframework.util.StringUtils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * HTTP content codings supported by the protobuf converters.<br/>
+ * Compressing and decompressing streams share pooled <code>Deflater</code>/<code>Inflater</code> instances,
+ * which are returned to the pool when the stream is finished or closed, or fails to open.
+ */
+public enum ContentEncoding {
+    GZIP("gzip", true),
+    DEFLATE("deflate", false),
+    IDENTITY("identity", false);
+
+    public static final String CONTENT_ENCODING = "Content-Encoding";
+    public static final String ACCEPT_ENCODING = "Accept-Encoding";
+
+    private static final int MAX_POOL_SIZE = 64;
+    private static final int BUFFER_SIZE = 4096;
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+    private static final byte[] GZIP_HEADER = {(byte) GZIP_MAGIC, (byte) (GZIP_MAGIC >> 8), Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+
+    private final String value;
+    private final boolean gzip;
+    private final Queue<Deflater> deflaterPool = new ConcurrentLinkedQueue<Deflater>();
+    private final Queue<Inflater> inflaterPool = new ConcurrentLinkedQueue<Inflater>();
+    private final AtomicInteger deflaterPoolSize = new AtomicInteger();
+    private final AtomicInteger inflaterPoolSize = new AtomicInteger();
+
+    private ContentEncoding(String value, boolean gzip) {
+        this.value = value;
+        this.gzip = gzip;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * Picks the preferred coding out of an <code>Accept-Encoding</code> header value.<br/>
+     * <code>gzip</code> is preferred over <code>deflate</code>, codings with <code>q=0</code> are not accepted.
+     * @param acceptEncoding header value, may be <code>null</code>.
+     * @return negotiated coding or <code>IDENTITY</code> if no compression is accepted.
+     */
+    public static ContentEncoding negotiate(String acceptEncoding) {
+        if (!StringUtils.hasText(acceptEncoding)) {
+            return IDENTITY;
+        }
+        boolean gzipAccepted = false;
+        boolean deflateAccepted = false;
+        for (String coding : StringUtils.tokenizeToStringArray(acceptEncoding, ",")) {
+            String[] parts = StringUtils.tokenizeToStringArray(coding, ";");
+            if (parts.length == 0 || isRejected(parts)) {
+                continue;
+            }
+            String name = parts[0];
+            if ("*".equals(name) || GZIP.value.equalsIgnoreCase(name) || "x-gzip".equalsIgnoreCase(name)) {
+                gzipAccepted = true;
+            } else if (DEFLATE.value.equalsIgnoreCase(name)) {
+                deflateAccepted = true;
+            }
+        }
+        return gzipAccepted ? GZIP : deflateAccepted ? DEFLATE : IDENTITY;
+    }
+
+    /**
+     * Resolves the coding named by a <code>Content-Encoding</code> header value.
+     * @param contentEncoding header value, may be <code>null</code>.
+     * @return matching coding, <code>IDENTITY</code> if the header is absent.
+     * @throws IllegalArgumentException if the coding is not supported.
+     */
+    public static ContentEncoding forValue(String contentEncoding) {
+        if (!StringUtils.hasText(contentEncoding) || IDENTITY.value.equalsIgnoreCase(contentEncoding.trim())) {
+            return IDENTITY;
+        }
+        String coding = contentEncoding.trim();
+        if (GZIP.value.equalsIgnoreCase(coding) || "x-gzip".equalsIgnoreCase(coding)) {
+            return GZIP;
+        } else if (DEFLATE.value.equalsIgnoreCase(coding)) {
+            return DEFLATE;
+        }
+        throw new IllegalArgumentException("Unsupported Content-Encoding: " + contentEncoding);
+    }
+
+    /**
+     * Wraps <i>out</i> into a compressing stream. <code>finish()</code> or <code>close()</code> must be called
+     * on the returned stream to complete the encoding; <code>finish()</code> leaves <i>out</i> open.
+     * @param out stream receiving the encoded bytes.
+     * @return compressing stream, or <i>out</i> itself for <code>IDENTITY</code>.
+     * @throws IOException in case of I/O errors.
+     */
+    public OutputStream encode(OutputStream out) throws IOException {
+        if (this == IDENTITY) {
+            return out;
+        }
+        return new EncodingOutputStream(out);
+    }
+
+    /**
+     * Wraps <i>in</i> into a decompressing stream.
+     * @param in stream providing the encoded bytes.
+     * @return decompressing stream, or <i>in</i> itself for <code>IDENTITY</code>.
+     * @throws IOException in case of I/O errors.
+     */
+    public InputStream decode(InputStream in) throws IOException {
+        if (this == IDENTITY) {
+            return in;
+        }
+        return new DecodingInputStream(in);
+    }
+
+    /**
+     * Returns the <code>Deflater</code> of a stream opened by {@link #encode(OutputStream)} to the pool without
+     * finishing the encoding, when writing the body failed. Does nothing once the stream is finished.
+     * @param encoded stream returned by {@link #encode(OutputStream)}.
+     */
+    static void release(OutputStream encoded) {
+        if (encoded instanceof EncodingOutputStream) {
+            ((EncodingOutputStream) encoded).release();
+        }
+    }
+
+    int getPooledDeflaterCount() {
+        return deflaterPoolSize.get();
+    }
+
+    int getPooledInflaterCount() {
+        return inflaterPoolSize.get();
+    }
+
+    private static boolean isRejected(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String param = parts[i].replace(" ", "");
+            if (param.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(param.substring(2)) <= 0;
+                } catch (NumberFormatException e) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private Deflater borrowDeflater() {
+        Deflater deflater = deflaterPool.poll();
+        if (deflater == null) {
+            return new Deflater(Deflater.DEFAULT_COMPRESSION, gzip);
+        }
+        deflaterPoolSize.decrementAndGet();
+        return deflater;
+    }
+
+    private void releaseDeflater(Deflater deflater) {
+        if (deflaterPoolSize.incrementAndGet() <= MAX_POOL_SIZE) {
+            deflater.reset();
+            deflaterPool.offer(deflater);
+        } else {
+            deflaterPoolSize.decrementAndGet();
+            deflater.end();
+        }
+    }
+
+    private Inflater borrowInflater() {
+        Inflater inflater = inflaterPool.poll();
+        if (inflater == null) {
+            return new Inflater(gzip);
+        }
+        inflaterPoolSize.decrementAndGet();
+        return inflater;
+    }
+
+    private void releaseInflater(Inflater inflater) {
+        if (inflaterPoolSize.incrementAndGet() <= MAX_POOL_SIZE) {
+            inflater.reset();
+            inflaterPool.offer(inflater);
+        } else {
+            inflaterPoolSize.decrementAndGet();
+            inflater.end();
+        }
+    }
+
+    private class EncodingOutputStream extends DeflaterOutputStream {
+        private final CRC32 crc = new CRC32();
+        private boolean released;
+
+        private EncodingOutputStream(OutputStream out) throws IOException {
+            super(out, borrowDeflater(), BUFFER_SIZE);
+            if (gzip) {
+                try {
+                    out.write(GZIP_HEADER);
+                } catch (IOException e) {
+                    release();
+                    throw e;
+                }
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (released) {
+                throw new IOException("Stream already finished");
+            }
+            super.write(b, off, len);
+            if (gzip) {
+                crc.update(b, off, len);
+            }
+        }
+
+        @Override
+        public void finish() throws IOException {
+            if (released) {
+                return;
+            }
+            try {
+                super.finish();
+                if (gzip) {
+                    writeInt((int) crc.getValue());
+                    writeInt((int) def.getBytesRead());
+                }
+            } finally {
+                release();
+            }
+        }
+
+        private void release() {
+            if (!released) {
+                released = true;
+                releaseDeflater(def);
+            }
+        }
+
+        private void writeInt(int i) throws IOException {
+            out.write(i & 0xff);
+            out.write((i >> 8) & 0xff);
+            out.write((i >> 16) & 0xff);
+            out.write((i >> 24) & 0xff);
+        }
+    }
+
+    private class DecodingInputStream extends InflaterInputStream {
+        private final CRC32 crc = new CRC32();
+        private boolean released;
+        private boolean eof;
+
+        private DecodingInputStream(InputStream in) throws IOException {
+            super(in, borrowInflater(), BUFFER_SIZE);
+            if (gzip) {
+                try {
+                    readHeader();
+                } catch (IOException e) {
+                    release();
+                    throw e;
+                }
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (eof) {
+                return -1;
+            }
+            int n = super.read(b, off, len);
+            if (n == -1) {
+                eof = true;
+                if (gzip) {
+                    readTrailer();
+                }
+                release();
+            } else if (gzip) {
+                crc.update(b, off, n);
+            }
+            return n;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return eof ? 0 : super.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            release();
+            super.close();
+        }
+
+        private void release() {
+            if (!released) {
+                released = true;
+                releaseInflater(inf);
+            }
+        }
+
+        private void readHeader() throws IOException {
+            if (readUShort(in) != GZIP_MAGIC) {
+                throw new ZipException("Not in GZIP format");
+            }
+            if (readUByte(in) != Deflater.DEFLATED) {
+                throw new ZipException("Unsupported compression method");
+            }
+            int flags = readUByte(in);
+            skipFully(in, 6);
+            if ((flags & FEXTRA) == FEXTRA) {
+                skipFully(in, readUShort(in));
+            }
+            if ((flags & FNAME) == FNAME) {
+                while (readUByte(in) != 0) ;
+            }
+            if ((flags & FCOMMENT) == FCOMMENT) {
+                while (readUByte(in) != 0) ;
+            }
+            if ((flags & FHCRC) == FHCRC) {
+                skipFully(in, 2);
+            }
+        }
+
+        private void readTrailer() throws IOException {
+            int remaining = inf.getRemaining();
+            byte[] trailer = new byte[8];
+            int n = Math.min(remaining, trailer.length);
+            System.arraycopy(buf, len - remaining, trailer, 0, n);
+            while (n < trailer.length) {
+                int read = in.read(trailer, n, trailer.length - n);
+                if (read == -1) {
+                    throw new EOFException("Unexpected end of GZIP trailer");
+                }
+                n += read;
+            }
+            long expectedCrc = readUInt(trailer, 0);
+            long expectedSize = readUInt(trailer, 4);
+            if (expectedCrc != crc.getValue() || expectedSize != (inf.getBytesWritten() & 0xffffffffL)) {
+                throw new ZipException("Corrupt GZIP trailer");
+            }
+        }
+
+        private long readUInt(byte[] b, int off) {
+            return (b[off] & 0xffL) | ((b[off + 1] & 0xffL) << 8) | ((b[off + 2] & 0xffL) << 16) | ((b[off + 3] & 0xffL) << 24);
+        }
+
+        private int readUShort(InputStream in) throws IOException {
+            int b = readUByte(in);
+            return (readUByte(in) << 8) | b;
+        }
+
+        private int readUByte(InputStream in) throws IOException {
+            int b = in.read();
+            if (b == -1) {
+                throw new EOFException("Unexpected end of GZIP header");
+            }
+            return b;
+        }
+
+        private void skipFully(InputStream in, int n) throws IOException {
+            while (n > 0) {
+                readUByte(in);
+                n--;
+            }
+        }
+    }
+}
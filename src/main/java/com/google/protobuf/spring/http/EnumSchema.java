@@ -0,0 +1,47 @@
+package com.google.protobuf.spring.http;
+
+import com.google.protobuf.Descriptors.EnumDescriptor;
+import com.google.protobuf.Descriptors.EnumValueDescriptor;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiled form of an enum type, shared by the text format codecs: value names are looked up by name table
+ * and printed from pre-encoded bytes.
+ */
+final class EnumSchema {
+    private static final ConcurrentHashMap<EnumDescriptor, EnumSchema> schemas = new ConcurrentHashMap<EnumDescriptor, EnumSchema>();
+
+    final EnumDescriptor descriptor;
+    final NameTable<EnumValueDescriptor> names;
+    /** Encoded quoted names, by value index. */
+    final byte[][] jsonNames;
+    /** Encoded names, by value index. */
+    final byte[][] textNames;
+
+    private EnumSchema(EnumDescriptor descriptor) {
+        this.descriptor = descriptor;
+        List<EnumValueDescriptor> values = descriptor.getValues();
+        names = new NameTable<EnumValueDescriptor>(values.size());
+        jsonNames = new byte[values.size()][];
+        textNames = new byte[values.size()][];
+        for (EnumValueDescriptor value : values) {
+            names.put(value.getName(), value);
+            jsonNames[value.getIndex()] = MessageSchema.encode("\"" + value.getName() + "\"");
+            textNames[value.getIndex()] = MessageSchema.encode(value.getName());
+        }
+    }
+
+    static EnumSchema forType(EnumDescriptor descriptor) {
+        EnumSchema schema = schemas.get(descriptor);
+        if (schema == null) {
+            schema = new EnumSchema(descriptor);
+            EnumSchema existing = schemas.putIfAbsent(descriptor, schema);
+            if (existing != null) {
+                schema = existing;
+            }
+        }
+        return schema;
+    }
+}
@@ -0,0 +1,41 @@
+package com.google.protobuf.spring.http;
+
+import com.google.protobuf.Descriptors.FieldDescriptor;
+
+/**
+ * Compiled form of a field, holding the encoded name prefixes written by the text format codecs.
+ */
+final class FieldSchema {
+    final FieldDescriptor descriptor;
+    final FieldDescriptor.Type type;
+    final boolean repeated;
+    /** Encoded <code>"name": </code> JSON prefix. */
+    final byte[] jsonName;
+    /** Encoded <code>name: </code> or <code>name {</code> text format prefix. */
+    final byte[] textName;
+
+    FieldSchema(FieldDescriptor descriptor) {
+        this.descriptor = descriptor;
+        this.type = descriptor.getType();
+        this.repeated = descriptor.isRepeated();
+        boolean message = descriptor.getJavaType() == FieldDescriptor.JavaType.MESSAGE;
+        String name;
+        String textName;
+        if (descriptor.isExtension()) {
+            name = descriptor.getFullName();
+            // Message set extensions are named after their type, as printed by TextFormat
+            boolean messageSetItem = descriptor.getContainingType().getOptions().getMessageSetWireFormat() &&
+                    message && descriptor.isOptional() && descriptor.getExtensionScope() == descriptor.getMessageType();
+            textName = "[" + (messageSetItem ? descriptor.getMessageType().getFullName() : name) + "]";
+        } else if (type == FieldDescriptor.Type.GROUP) {
+            // Groups are named after their type
+            name = descriptor.getMessageType().getName();
+            textName = name;
+        } else {
+            name = descriptor.getName();
+            textName = name;
+        }
+        this.jsonName = MessageSchema.encode("\"" + name + "\": ");
+        this.textName = MessageSchema.encode(textName + (message ? " {\n" : ": "));
+    }
+}
@@ -0,0 +1,164 @@
+package com.google.protobuf.spring.http;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.Message;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Size and nesting limits applied while parsing untrusted bodies, shared by the <code>ProtobufHttpMessageConverter</code>
+ * and the service proxies.<br/>
+ * Sizes are checked against the <code>Content-Length</code> before the body is read, then enforced on the decoded
+ * bytes while they are streamed, for the binary and the text formats alike, so an oversized body is rejected with a
+ * {@link MessageTooLargeException} before anything proportional to its size is allocated. The binary format and the
+ * UTF-8 JSON codec also stop at the recursion limit.
+ */
+public class MessageLimits {
+    /** Same as the default recursion limit of <code>CodedInputStream</code>. */
+    public static final int DEFAULT_RECURSION_LIMIT = 64;
+
+    private int maxMessageSize = -1;
+    private Map<Class<? extends Message>, Integer> maxMessageSizes = Collections.emptyMap();
+    private int recursionLimit = DEFAULT_RECURSION_LIMIT;
+
+    public int getMaxMessageSize() {
+        return maxMessageSize;
+    }
+
+    /**
+     * @param maxMessageSize largest body in bytes of the message types without their own limit, a negative value
+     * leaves them unlimited, which is the default. Binary bodies are still bound by the 64 MB default of
+     * <code>CodedInputStream</code>.
+     */
+    public void setMaxMessageSize(int maxMessageSize) {
+        this.maxMessageSize = maxMessageSize;
+    }
+
+    public Map<Class<? extends Message>, Integer> getMaxMessageSizes() {
+        return Collections.unmodifiableMap(maxMessageSizes);
+    }
+
+    /**
+     * @param maxMessageSizes largest body in bytes per message type, overriding the global limit.
+     */
+    public void setMaxMessageSizes(Map<Class<? extends Message>, Integer> maxMessageSizes) {
+        this.maxMessageSizes = new HashMap<Class<? extends Message>, Integer>(maxMessageSizes);
+    }
+
+    public int getRecursionLimit() {
+        return recursionLimit;
+    }
+
+    /**
+     * @param recursionLimit deepest nesting of messages, 64 by default.
+     */
+    public void setRecursionLimit(int recursionLimit) {
+        if (recursionLimit <= 0) {
+            throw new IllegalArgumentException("Recursion limit must be positive, but was " + recursionLimit);
+        }
+        this.recursionLimit = recursionLimit;
+    }
+
+    /**
+     * @param type of the parsed message.
+     * @return largest body in bytes of the <i>type</i>, negative if unlimited.
+     */
+    public int getMaxMessageSize(Class<?> type) {
+        Integer size = maxMessageSizes.get(type);
+        return size != null ? size : maxMessageSize;
+    }
+
+    /**
+     * Rejects a body whose announced length exceeds the limit of the <i>type</i>.
+     * @param contentLength of the body, negative if unknown.
+     * @param type of the parsed message.
+     * @throws MessageTooLargeException if the body is too large.
+     */
+    public void checkContentLength(long contentLength, Class<?> type) {
+        int maxSize = getMaxMessageSize(type);
+        if (maxSize >= 0 && contentLength > maxSize) {
+            throw new MessageTooLargeException(type, maxSize);
+        }
+    }
+
+    /**
+     * @param in decoded body.
+     * @param type of the parsed message.
+     * @return stream throwing a {@link MessageTooLargeException} once more bytes than the limit of the <i>type</i>
+     * are read, or <i>in</i> itself if the type is unlimited.
+     */
+    public InputStream limit(InputStream in, Class<?> type) {
+        int maxSize = getMaxMessageSize(type);
+        return maxSize >= 0 && in != null ? new LimitedInputStream(in, type, maxSize) : in;
+    }
+
+    /**
+     * Applies the size limit of the <i>type</i> and the recursion limit to a binary protobuf input.
+     * @param input reading the body.
+     * @param type of the parsed message.
+     * @return the <i>input</i>.
+     */
+    public CodedInputStream configure(CodedInputStream input, Class<?> type) {
+        int maxSize = getMaxMessageSize(type);
+        if (maxSize >= 0) {
+            input.setSizeLimit(maxSize);
+        }
+        input.setRecursionLimit(recursionLimit);
+        return input;
+    }
+
+    private static final class LimitedInputStream extends FilterInputStream {
+        private final Class<?> type;
+        private final long maxSize;
+        private long count;
+
+        private LimitedInputStream(InputStream in, Class<?> type, long maxSize) {
+            super(in);
+            this.type = type;
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b != -1) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            // Asks for one byte past the limit at most, so the overflow is noticed without reading further
+            int n = in.read(b, off, (int) Math.min(len, maxSize - count + 1));
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(Math.min(n, maxSize - count + 1));
+            count(skipped);
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void count(long n) {
+            count += n;
+            if (count > maxSize) {
+                throw new MessageTooLargeException(type, maxSize);
+            }
+        }
+    }
+}
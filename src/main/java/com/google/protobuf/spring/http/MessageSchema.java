@@ -0,0 +1,96 @@
+package com.google.protobuf.spring.http;
+
+import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiled form of a message type, built once per <code>Descriptor</code> and shared by the JSON and text
+ * format codecs.<br/>
+ * It holds the fields in printing order with their encoded names, and a name table resolving the field
+ * names, and group type names, read by parsers.
+ */
+final class MessageSchema {
+    private static final ConcurrentHashMap<Descriptor, MessageSchema> schemas = new ConcurrentHashMap<Descriptor, MessageSchema>();
+
+    final Descriptor descriptor;
+    /** <code>true</code> if the type declares extension ranges, so <code>getAllFields()</code> must be used. */
+    final boolean extendable;
+    /** Fields in field number order, the order of <code>Message.getAllFields()</code>. */
+    final FieldSchema[] fields;
+    final NameTable<FieldDescriptor> names;
+    private final FieldSchema[] fieldsByIndex;
+    private final ConcurrentHashMap<FieldDescriptor, FieldSchema> extensions = new ConcurrentHashMap<FieldDescriptor, FieldSchema>();
+
+    private MessageSchema(Descriptor descriptor) {
+        this.descriptor = descriptor;
+        this.extendable = descriptor.toProto().getExtensionRangeCount() > 0;
+        List<FieldDescriptor> fieldList = descriptor.getFields();
+        fieldsByIndex = new FieldSchema[fieldList.size()];
+        names = new NameTable<FieldDescriptor>(fieldList.size() * 2);
+        for (FieldDescriptor field : fieldList) {
+            fieldsByIndex[field.getIndex()] = new FieldSchema(field);
+            names.put(field.getName(), field);
+            if (field.getType() == FieldDescriptor.Type.GROUP) {
+                names.put(field.getMessageType().getName(), field);
+            }
+        }
+        fields = fieldsByIndex.clone();
+        Arrays.sort(fields, new Comparator<FieldSchema>() {
+            public int compare(FieldSchema a, FieldSchema b) {
+                return a.descriptor.getNumber() - b.descriptor.getNumber();
+            }
+        });
+    }
+
+    static MessageSchema forType(Descriptor descriptor) {
+        MessageSchema schema = schemas.get(descriptor);
+        if (schema == null) {
+            schema = new MessageSchema(descriptor);
+            MessageSchema existing = schemas.putIfAbsent(descriptor, schema);
+            if (existing != null) {
+                schema = existing;
+            }
+        }
+        return schema;
+    }
+
+    /**
+     * Compiles the schema of the given type, and of every message and enum type reachable from its fields,
+     * ahead of the first message that uses them.
+     * @param descriptor message type.
+     */
+    static void compile(Descriptor descriptor) {
+        if (schemas.containsKey(descriptor)) {
+            return;
+        }
+        forType(descriptor);
+        for (FieldDescriptor field : descriptor.getFields()) {
+            if (field.getJavaType() == FieldDescriptor.JavaType.MESSAGE) {
+                compile(field.getMessageType());
+            } else if (field.getJavaType() == FieldDescriptor.JavaType.ENUM) {
+                EnumSchema.forType(field.getEnumType());
+            }
+        }
+    }
+
+    FieldSchema fieldSchema(FieldDescriptor field) {
+        if (!field.isExtension()) {
+            return fieldsByIndex[field.getIndex()];
+        }
+        FieldSchema schema = extensions.get(field);
+        if (schema == null) {
+            schema = new FieldSchema(field);
+            extensions.putIfAbsent(field, schema);
+        }
+        return schema;
+    }
+
+    static byte[] encode(String s) {
+        return s.getBytes(ProtobufHttpMessageConverter.DEFAULT_CHARSET);
+    }
+}
@@ -0,0 +1,51 @@
+package com.google.protobuf.spring.http;
+
+import com.google.protobuf.Message;
+
+import java.util.Iterator;
+
+/**
+ * Messages of a single type returned by a handler method to be streamed by the
+ * {@link ProtobufStreamingHttpMessageConverter} one message at a time.<br/>
+ * The converter only sees the class of the returned object, so plain <code>Iterable</code> and <code>Iterator</code>
+ * objects are left to the other converters and the message type is named explicitly:
+ * <pre>
+ * &#64;RequestMapping("/orders")
+ * &#64;ResponseBody
+ * public MessageStream&lt;Order&gt; listOrders() {
+ *     return MessageStream.of(Order.class, orderDao.iterateAll());
+ * }
+ * </pre>
+ */
+public final class MessageStream<T extends Message> implements Iterable<T> {
+    private final Class<T> messageType;
+    private final Iterator<? extends T> iterator;
+
+    private MessageStream(Class<T> messageType, Iterator<? extends T> iterator) {
+        if (messageType == null) {
+            throw new IllegalArgumentException("Message type must not be null");
+        }
+        this.messageType = messageType;
+        this.iterator = iterator;
+    }
+
+    public static <T extends Message> MessageStream<T> of(Class<T> messageType, Iterable<? extends T> messages) {
+        return new MessageStream<T>(messageType, messages.iterator());
+    }
+
+    public static <T extends Message> MessageStream<T> of(Class<T> messageType, Iterator<? extends T> messages) {
+        return new MessageStream<T>(messageType, messages);
+    }
+
+    public Class<T> getMessageType() {
+        return messageType;
+    }
+
+    /**
+     * @return iterator over the messages, which can only be iterated once.
+     */
+    @SuppressWarnings("unchecked")
+    public Iterator<T> iterator() {
+        return (Iterator<T>) iterator;
+    }
+}
@@ -0,0 +1,26 @@
+package com.google.protobuf.spring.http;
+
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+/**
+ * Thrown when a message body is larger than the limit configured by {@link MessageLimits}, either announced by its
+ * <code>Content-Length</code> or found while it is read. Servers answer it with
+ * <code>413 Request Entity Too Large</code> when it is thrown while reading a <code>@RequestBody</code>.
+ */
+public class MessageTooLargeException extends HttpMessageNotReadableException {
+    private final long maxSize;
+
+    public MessageTooLargeException(Class<?> type, long maxSize) {
+        super("Body of " + (type != null ? type.getName() : "message") + " is larger than " + maxSize + " bytes");
+        this.maxSize = maxSize;
+    }
+
+    protected MessageTooLargeException(MessageTooLargeException cause) {
+        super(cause.getMessage(), cause);
+        this.maxSize = cause.getMaxSize();
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+}
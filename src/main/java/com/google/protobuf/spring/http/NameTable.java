@@ -0,0 +1,73 @@
+package com.google.protobuf.spring.http;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash table looking up names directly from a <code>char</code> buffer, so parsers do not
+ * build a <code>String</code> for every name they read.
+ */
+final class NameTable<T> {
+    private final char[][] keys;
+    private final Object[] values;
+    private final int mask;
+
+    NameTable(int expectedSize) {
+        int capacity = 4;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        keys = new char[capacity][];
+        values = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Adds the <i>name</i>, unless it is already present.
+     */
+    void put(String name, T value) {
+        char[] key = name.toCharArray();
+        int index = hash(key, key.length) & mask;
+        while (keys[index] != null) {
+            if (Arrays.equals(keys[index], key)) {
+                return;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index] = key;
+        values[index] = value;
+    }
+
+    @SuppressWarnings("unchecked")
+    T get(char[] chars, int length) {
+        int index = hash(chars, length) & mask;
+        char[] key;
+        while ((key = keys[index]) != null) {
+            if (key.length == length && regionEquals(key, chars, length)) {
+                return (T) values[index];
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+    T get(String name) {
+        return get(name.toCharArray(), name.length());
+    }
+
+    private static boolean regionEquals(char[] key, char[] chars, int length) {
+        for (int i = 0; i < length; i++) {
+            if (key[i] != chars[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(char[] chars, int length) {
+        int h = 0;
+        for (int i = 0; i < length; i++) {
+            h = 31 * h + chars[i];
+        }
+        return h ^ (h >>> 16);
+    }
+}
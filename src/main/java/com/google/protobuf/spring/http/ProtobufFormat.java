@@ -0,0 +1,66 @@
+package com.google.protobuf.spring.http;
+
+import org.springframework.http.MediaType;
+
+/**
+ * Message formats supported by the {@link ProtobufHttpMessageConverter}, resolved once from a media type
+ * instead of matching it against every format in turn.
+ */
+public enum ProtobufFormat {
+    PROTOBUF(ProtobufHttpMessageConverter.PROTOBUF),
+    JSON(ProtobufHttpMessageConverter.JSON),
+    XML(ProtobufHttpMessageConverter.XML),
+    TEXT(ProtobufHttpMessageConverter.TEXT),
+    HTML(ProtobufHttpMessageConverter.HTML);
+
+    private static final ProtobufFormat[] FORMATS = values();
+
+    private final MediaType mediaType;
+
+    private ProtobufFormat(MediaType mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    public MediaType getMediaType() {
+        return mediaType;
+    }
+
+    /**
+     * @return <code>true</code> for the formats rendered as text, <code>false</code> for binary protobuf.
+     */
+    public boolean isText() {
+        return this != PROTOBUF;
+    }
+
+    /**
+     * Resolves the format of the given media type, ignoring its parameters.
+     * @param mediaType e.g. a <code>Content-Type</code> header value.
+     * @return matching format, or <code>null</code> if the media type is not supported.
+     */
+    public static ProtobufFormat forMediaType(MediaType mediaType) {
+        if (mediaType == null) {
+            return null;
+        }
+        String subtype = mediaType.getSubtype();
+        for (ProtobufFormat format : FORMATS) {
+            if (format.mediaType.getSubtype().equals(subtype) && format.mediaType.getType().equals(mediaType.getType())) {
+                return format;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Resolves a format by its case insensitive name, e.g. <code>json</code>.
+     * @param name of the format.
+     * @return matching format, or <code>null</code> if there is none.
+     */
+    public static ProtobufFormat forName(String name) {
+        for (ProtobufFormat format : FORMATS) {
+            if (format.name().equalsIgnoreCase(name)) {
+                return format;
+            }
+        }
+        return null;
+    }
+}
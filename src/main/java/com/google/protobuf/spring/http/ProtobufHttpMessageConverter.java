@@ -1,27 +1,37 @@
 package com.google.protobuf.spring.http;
 
 import com.google.protobuf.*;
+import com.google.protobuf.spring.ExtensionRegistryCache;
 import com.google.protobuf.spring.ExtensionRegistryInitializer;
+import com.google.protobuf.spring.MessageDefaultInstanceRegistry;
+import com.google.protobuf.spring.http.metrics.CountingInputStream;
+import com.google.protobuf.spring.http.metrics.NoOpProtobufMetrics;
+import com.google.protobuf.spring.http.metrics.ProtobufMetrics;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpInputMessage;
 import org.springframework.http.HttpOutputMessage;
 import org.springframework.http.MediaType;
 import org.springframework.http.converter.AbstractHttpMessageConverter;
 import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.http.converter.HttpMessageNotWritableException;
-import org.springframework.util.FileCopyUtils;
 
 import com.googlecode.protobuf.format.CouchDBFormat;
 import com.googlecode.protobuf.format.HtmlFormat;
 import com.googlecode.protobuf.format.JsonFormat;
 import com.googlecode.protobuf.format.XmlFormat;
 
-import java.io.BufferedReader;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.lang.reflect.Method;
+import java.io.OutputStream;
+import java.io.Reader;
 import java.nio.charset.Charset;
-import java.util.concurrent.ConcurrentHashMap;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
 
 /**
  * @since Spring 3.0
@@ -34,17 +44,171 @@ public class ProtobufHttpMessageConverter extends AbstractHttpMessageConverter<M
     public static final MediaType JSON = new MediaType("application", "json", DEFAULT_CHARSET);
     public static final MediaType TEXT = new MediaType("text", "plain");
     public static final MediaType HTML = new MediaType("text", "html");
-    private ExtensionRegistry extensionRegistry = ExtensionRegistry.newInstance();
+    /** Sequence of length-delimited <code>BatchProtos</code> messages, carrying several service calls at once. */
+    public static final MediaType BATCH = new MediaType("application", "x-protobuf-batch");
+    public static final int DEFAULT_BUFFER_SIZE = 4096;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final OutputStream NULL_OUTPUT_STREAM = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+    private final ExtensionRegistry extensionRegistry;
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+    private int compressionThreshold = -1;
+    private boolean eTagGeneration;
+    private RenderedOutputCache renderedOutputCache;
+    private ProtobufMetrics metrics = NoOpProtobufMetrics.INSTANCE;
+    private int pooledReadLimit = -1;
+    private MessageLimits messageLimits = new MessageLimits();
 
-    private static final ConcurrentHashMap<Class, Method> newBuilderMethodCache = new ConcurrentHashMap<Class, Method>();
+    private final ThreadLocal<RenderedMessage> renderedMessage = new ThreadLocal<RenderedMessage>();
+    private final ThreadLocal<MessageDigest> eTagDigest = new ThreadLocal<MessageDigest>();
+    private final ThreadLocal<byte[]> readBuffer = new ThreadLocal<byte[]>();
 
     public ProtobufHttpMessageConverter() {
-        this(null);
+        this((ExtensionRegistryInitializer) null);
     }
 
     public ProtobufHttpMessageConverter(ExtensionRegistryInitializer registryInitializer) {
+        this(ExtensionRegistryCache.getExtensionRegistry(registryInitializer));
+    }
+
+    private ProtobufHttpMessageConverter(ExtensionRegistry extensionRegistry) {
         super(PROTOBUF, JSON, HTML, TEXT, XML);
-        initializeExtentionRegistry(registryInitializer);
+        this.extensionRegistry = extensionRegistry != null ? extensionRegistry : ExtensionRegistry.getEmptyRegistry();
+    }
+
+    /**
+     * @param extensionRegistry already initialized, used as is, <code>null</code> for no extensions.
+     * @return converter resolving extensions with the given registry.
+     */
+    public static ProtobufHttpMessageConverter forExtensionRegistry(ExtensionRegistry extensionRegistry) {
+        return new ProtobufHttpMessageConverter(extensionRegistry);
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Sets the size of the buffer used by the <code>CodedOutputStream</code> that streams binary
+     * protobuf responses to the output body. Messages larger than the buffer are flushed in chunks,
+     * so the memory used per response does not grow with the size of the message.
+     * @param bufferSize in bytes, must be positive.
+     */
+    public void setBufferSize(int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be positive, but was " + bufferSize);
+        }
+        this.bufferSize = bufferSize;
+    }
+
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    /**
+     * Enables gzip/deflate compression of responses written through an {@link AcceptEncodingHttpOutputMessage},
+     * as created by the <code>ProtobufAnnotationMethodHandlerAdapter</code>. Bodies smaller than the threshold
+     * are sent uncompressed, since the compression overhead outweighs the savings for small messages.
+     * @param compressionThreshold minimal uncompressed body size in bytes, a negative value disables compression.
+     */
+    public void setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    public boolean isETagGeneration() {
+        return eTagGeneration;
+    }
+
+    /**
+     * Enables strong <code>ETag</code> headers on responses written through a {@link ConditionalHttpOutputMessage},
+     * as created by the <code>ProtobufAnnotationMethodHandlerAdapter</code>, and <code>304 Not Modified</code> answers
+     * when the tag matches the request <code>If-None-Match</code> header.<br/>
+     * The tag is a digest of the binary serialization of the message, computed through a bounded
+     * <code>CodedOutputStream</code> without buffering the message, so the text formats are only rendered when
+     * the body is actually sent.
+     * @param eTagGeneration <code>true</code> to generate ETags, disabled by default.
+     */
+    public void setETagGeneration(boolean eTagGeneration) {
+        this.eTagGeneration = eTagGeneration;
+    }
+
+    public long getRenderedOutputCacheSize() {
+        return renderedOutputCache != null ? renderedOutputCache.getMaxWeight() : 0;
+    }
+
+    /**
+     * Keeps the encoded HTML, JSON, XML and text renderings of written messages, so serving the same
+     * <code>Message</code> instance again, e.g. a cached snapshot, copies the bytes instead of rendering it.
+     * Renderings are keyed by message identity, media type and charset, and evicted least recently used first.
+     * @param renderedOutputCacheSize maximum total size in bytes of the kept renderings, 0 disables the cache,
+     * which is the default.
+     */
+    public void setRenderedOutputCacheSize(long renderedOutputCacheSize) {
+        this.renderedOutputCache = renderedOutputCacheSize > 0 ? new RenderedOutputCache(renderedOutputCacheSize) : null;
+    }
+
+    public int getPooledReadLimit() {
+        return pooledReadLimit;
+    }
+
+    /**
+     * Reads uncompressed binary protobuf request bodies with a <code>Content-Length</code> up to the limit into a
+     * buffer kept per thread, sized by the <code>Content-Length</code>, and parses them from that array instead of
+     * through the <code>InputStream</code>, so upload-heavy endpoints do not refill and copy a stream buffer for
+     * every body. The buffer only grows up to the largest body read so far, bounded by the limit.
+     * @param pooledReadLimit largest body size in bytes read into the pooled buffer, a negative value disables
+     * pooled reads, which is the default.
+     */
+    public void setPooledReadLimit(int pooledReadLimit) {
+        this.pooledReadLimit = pooledReadLimit;
+    }
+
+    public MessageLimits getMessageLimits() {
+        return messageLimits;
+    }
+
+    /**
+     * Bounds the size and nesting of the messages read, rejecting larger bodies with a
+     * {@link MessageTooLargeException}, which the <code>ProtobufAnnotationMethodHandlerAdapter</code> answers with
+     * <code>413 Request Entity Too Large</code>.
+     * @param messageLimits applied to every read, <code>null</code> for the defaults, which only limit nesting.
+     */
+    public void setMessageLimits(MessageLimits messageLimits) {
+        this.messageLimits = messageLimits != null ? messageLimits : new MessageLimits();
+    }
+
+    public ProtobufMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Reports the duration and uncompressed body size of every message read and written, as the
+     * {@link ProtobufMetrics.Stage#PARSE} and {@link ProtobufMetrics.Stage#SERIALIZE} stages, without a service name
+     * unless read through {@link #readMessage(Class, HttpInputMessage, String)}.
+     * @param metrics receiving the measures, <code>null</code> to record nothing, which is the default.
+     */
+    public void setMetrics(ProtobufMetrics metrics) {
+        this.metrics = metrics != null ? metrics : NoOpProtobufMetrics.INSTANCE;
+    }
+
+    /**
+     * Resolves the given message types up front, along with the compiled JSON and text format schemas of
+     * every message and enum type they reference, so the first request for each of them does not pay the
+     * reflective lookup and descriptor walking cost.
+     * @param messageTypes generated <code>Message</code> classes served or consumed by this converter.
+     */
+    public void setMessageTypes(List<Class<? extends Message>> messageTypes) {
+        MessageDefaultInstanceRegistry.warmUp(messageTypes);
+        for (Class<? extends Message> messageType : messageTypes) {
+            MessageSchema.compile(MessageDefaultInstanceRegistry.getDefaultInstance(messageType).getDescriptorForType());
+        }
     }
 
     @Override
@@ -54,55 +218,188 @@ public class ProtobufHttpMessageConverter extends AbstractHttpMessageConverter<M
 
     @Override
     protected Message readInternal(Class<? extends Message> clazz, HttpInputMessage inputMessage) throws IOException, HttpMessageNotReadableException {
+        return readMessage(clazz, inputMessage, null);
+    }
+
+    /**
+     * Reads a message in the format given by the <code>Content-Type</code> of the <i>inputMessage</i>, binary
+     * protobuf if it has none, as {@link #read(Class, HttpInputMessage)} does.
+     * @param clazz of the message.
+     * @param inputMessage providing the body.
+     * @param serviceName reported with the {@link ProtobufMetrics.Stage#PARSE} measure, may be <code>null</code>.
+     * @return parsed message.
+     * @throws MessageTooLargeException if the body exceeds the {@link MessageLimits}.
+     * @throws HttpMessageNotReadableException if the body can not be parsed.
+     */
+    public Message readMessage(Class<? extends Message> clazz, HttpInputMessage inputMessage, String serviceName)
+            throws IOException, HttpMessageNotReadableException {
         MediaType contentType = inputMessage.getHeaders().getContentType();
         contentType = contentType != null ? contentType : PROTOBUF;
 
+        ProtobufMetrics metrics = this.metrics;
+        MessageLimits limits = this.messageLimits;
+        long start = metrics.isEnabled() ? System.nanoTime() : 0;
+        InputStream body = null;
+        InputStream decoded = null;
         try {
-            Method m = getNewBuilderMessageMethod(clazz);
-            Message.Builder builder = (Message.Builder) m.invoke(clazz);
-            if (isJson(contentType)) {
-                String data = convertInputStreamToString(inputMessage.getBody());
+            ContentEncoding encoding = ContentEncoding.forValue(inputMessage.getHeaders().getFirst(ContentEncoding.CONTENT_ENCODING));
+            ProtobufFormat format = ProtobufFormat.forMediaType(contentType);
+            if (encoding == ContentEncoding.IDENTITY) {
+                long length = inputMessage.getHeaders().getContentLength();
+                limits.checkContentLength(length, clazz);
+                if (format == ProtobufFormat.PROTOBUF && length >= 0 && length <= pooledReadLimit) {
+                    Message message = readPooled(clazz, inputMessage.getBody(), (int) length, limits);
+                    if (metrics.isEnabled()) {
+                        metrics.record(ProtobufMetrics.Stage.PARSE, serviceName, contentType, clazz, System.nanoTime() - start, length);
+                    }
+                    return message;
+                }
+            }
+            body = inputMessage.getBody();
+            decoded = encoding.decode(body);
+            InputStream limited = limits.limit(decoded, clazz);
+            if (metrics.isEnabled()) {
+                limited = new CountingInputStream(limited);
+            }
+            Message.Builder builder = MessageDefaultInstanceRegistry.newBuilder(clazz);
+            if (format == ProtobufFormat.JSON) {
                 String serverHeader = inputMessage.getHeaders().getFirst("Server");
                 if (serverHeader != null && serverHeader.contains("CouchDB"))
-                    CouchDBFormat.merge(data, extensionRegistry, builder);
+                    CouchDBFormat.merge(createReader(limited, contentType), extensionRegistry, builder);
+                else if (isUtf8(contentType))
+                    ProtobufJsonCodec.merge(limited, extensionRegistry, builder, limits.getRecursionLimit());
                 else
-                    JsonFormat.merge(data, extensionRegistry, builder);
-                
-            } else if (isText(contentType)) {
-                String data = convertInputStreamToString(inputMessage.getBody());
-                TextFormat.merge(data, extensionRegistry, builder);
-            } else if (isXml(contentType)) {
-                String data = convertInputStreamToString(inputMessage.getBody());
-                XmlFormat.merge(data, extensionRegistry, builder);
+                    JsonFormat.merge(createReader(limited, contentType), extensionRegistry, builder);
+
+            } else if (format == ProtobufFormat.TEXT) {
+                TextFormat.merge(createReader(limited, contentType), extensionRegistry, builder);
+            } else if (format == ProtobufFormat.XML) {
+                XmlFormat.merge(createReader(limited, contentType), extensionRegistry, builder);
             } else {
-                InputStream is = inputMessage.getBody();
-                builder.mergeFrom(is, extensionRegistry);
+                CodedInputStream input = limits.configure(CodedInputStream.newInstance(limited), clazz);
+                builder.mergeFrom(input, extensionRegistry);
+                input.checkLastTagWas(0);
+            }
+            Message message = builder.build();
+            if (metrics.isEnabled()) {
+                metrics.record(ProtobufMetrics.Stage.PARSE, serviceName, contentType, clazz, System.nanoTime() - start,
+                        ((CountingInputStream) limited).getCount());
             }
-            return builder.build();
+            return message;
+        } catch (MessageTooLargeException e) {
+            metrics.recordError(ProtobufMetrics.Stage.PARSE, serviceName, contentType, clazz);
+            throw e;
         } catch (Exception e) {
+            metrics.recordError(ProtobufMetrics.Stage.PARSE, serviceName, contentType, clazz);
             throw new HttpMessageNotReadableException("Unable to convert inputMessage to Proto object", e);
+        } finally {
+            // Returns the pooled Inflater whether the body was parsed or not
+            if (decoded != null && decoded != body) {
+                decoded.close();
+            }
+        }
+    }
+
+    /**
+     * Reads a binary protobuf body of known <i>length</i> into the pooled buffer of the current thread and parses it
+     * from the array. Protobuf 2.4 copies <code>bytes</code> and <code>string</code> fields out of the input buffer,
+     * so the parsed message never refers to the buffer, which is reused by the next read on the thread.
+     */
+    private Message readPooled(Class<? extends Message> clazz, InputStream body, int length, MessageLimits limits) throws IOException {
+        byte[] buffer = readBuffer.get();
+        if (buffer == null || buffer.length < length) {
+            buffer = new byte[length];
+            readBuffer.set(buffer);
+        }
+        int read = 0;
+        while (read < length) {
+            int n = body.read(buffer, read, length - read);
+            if (n < 0) {
+                throw new EOFException("Request body ended after " + read + " of " + length + " bytes");
+            }
+            read += n;
         }
+        CodedInputStream input = limits.configure(CodedInputStream.newInstance(buffer, 0, length), clazz);
+        Message.Builder builder = MessageDefaultInstanceRegistry.newBuilder(clazz).mergeFrom(input, extensionRegistry);
+        input.checkLastTagWas(0);
+        return builder.build();
     }
 
     @Override
     protected void writeInternal(Message message, HttpOutputMessage outputMessage) throws IOException, HttpMessageNotWritableException {
+        ProtobufMetrics metrics = this.metrics;
+        if (!metrics.isEnabled()) {
+            writeMessage(message, outputMessage);
+            return;
+        }
         MediaType contentType = outputMessage.getHeaders().getContentType();
-        Charset charset = contentType.getCharSet() != null ? contentType.getCharSet() : DEFAULT_CHARSET;
+        long start = System.nanoTime();
+        long length;
+        try {
+            length = writeMessage(message, outputMessage);
+        } catch (IOException e) {
+            metrics.recordError(ProtobufMetrics.Stage.SERIALIZE, null, contentType, message.getClass());
+            throw e;
+        } catch (RuntimeException e) {
+            metrics.recordError(ProtobufMetrics.Stage.SERIALIZE, null, contentType, message.getClass());
+            throw e;
+        }
+        metrics.record(ProtobufMetrics.Stage.SERIALIZE, null, contentType, message.getClass(), System.nanoTime() - start, length);
+    }
 
-        if (isHtml(contentType)) {
-            String data = HtmlFormat.printToString(message);
-            FileCopyUtils.copy(data.getBytes(charset), outputMessage.getBody());
-        } else if (isJson(contentType)) {
-            String data = JsonFormat.printToString(message);
-            FileCopyUtils.copy(data.getBytes(charset), outputMessage.getBody());
-        } else if (isText(contentType)) {
-            String data = TextFormat.printToString(message);
-            FileCopyUtils.copy(data.getBytes(charset), outputMessage.getBody());
-        } else if (isXml(contentType)) {
-            String data = XmlFormat.printToString(message);
-            FileCopyUtils.copy(data.getBytes(charset), outputMessage.getBody());
+    /**
+     * @return uncompressed length of the written body, 0 if <code>304 Not Modified</code> was sent instead.
+     */
+    private long writeMessage(Message message, HttpOutputMessage outputMessage) throws IOException {
+        MediaType contentType = outputMessage.getHeaders().getContentType();
+        boolean textFormat = isTextFormat(contentType);
+        ContentEncoding acceptedEncoding = ContentEncoding.IDENTITY;
+        if (compressionThreshold >= 0 && outputMessage instanceof AcceptEncodingHttpOutputMessage) {
+            // Also sent with 304 Not Modified, which must carry the Vary header of the full response
+            outputMessage.getHeaders().add("Vary", ContentEncoding.ACCEPT_ENCODING);
+            acceptedEncoding = ((AcceptEncodingHttpOutputMessage) outputMessage).getAcceptedEncoding();
+        }
+        // The body is compressed only from the threshold on, text formats are rendered to learn their length
+        byte[] data = textFormat && acceptedEncoding != ContentEncoding.IDENTITY ?
+                retrieveRenderedMessage(message, contentType) : null;
+        long length = data != null ? data.length : message.getSerializedSize();
+        ContentEncoding encoding = length >= compressionThreshold ? acceptedEncoding : ContentEncoding.IDENTITY;
+
+        if (eTagGeneration && outputMessage instanceof ConditionalHttpOutputMessage) {
+            String eTag = generateETag(message, textFormat ? contentType : null, encoding);
+            outputMessage.getHeaders().setETag(eTag);
+            ConditionalHttpOutputMessage conditionalMessage = (ConditionalHttpOutputMessage) outputMessage;
+            if (conditionalMessage.isNotModified(eTag)) {
+                renderedMessage.remove();
+                conditionalMessage.sendNotModified();
+                return 0;
+            }
+        }
+
+        if (textFormat) {
+            if (data == null) {
+                data = retrieveRenderedMessage(message, contentType);
+            }
+            if (outputMessage.getHeaders().getContentLength() < 0) {
+                outputMessage.getHeaders().setContentLength(data.length);
+            }
+            OutputStream body = openBody(outputMessage, encoding);
+            try {
+                body.write(data);
+                finishBody(body);
+            } finally {
+                ContentEncoding.release(body);
+            }
+            return data.length;
         } else {
-            FileCopyUtils.copy(message.toByteArray(), outputMessage.getBody());
+            OutputStream body = openBody(outputMessage, encoding);
+            try {
+                writeProtobuf(message, body);
+                finishBody(body);
+            } finally {
+                ContentEncoding.release(body);
+            }
+            return message.getSerializedSize();
         }
     }
 
@@ -111,66 +408,207 @@ public class ProtobufHttpMessageConverter extends AbstractHttpMessageConverter<M
         return PROTOBUF;
     }
 
+    /**
+     * Computes the length of the response body without serializing the message twice.<br/>
+     * For the binary protobuf format the memoized <code>getSerializedSize()</code> is used, while
+     * the text formats are rendered once and the encoded bytes are kept until the following
+     * <code>writeInternal</code> call on the same thread. When ETags are generated, rendering is left to
+     * <code>writeInternal</code>, which may answer <code>304 Not Modified</code> without rendering.
+     */
     @Override
     protected Long getContentLength(Message message, MediaType contentType) {
-        Charset charset = contentType.getCharSet() != null ? contentType.getCharSet() : DEFAULT_CHARSET;
+        if (isTextFormat(contentType)) {
+            if (eTagGeneration) {
+                return null;
+            }
+            byte[] data = renderMessage(message, contentType);
+            renderedMessage.set(new RenderedMessage(message, contentType, data));
+            return (long) data.length;
+        } else {
+            return (long) message.getSerializedSize();
+        }
+    }
 
-        if (isHtml(contentType)) {
-            String data = HtmlFormat.printToString(message);
-            return (long) data.getBytes(charset).length;
-        } else if (isJson(contentType)) {
-            String data = JsonFormat.printToString(message);
-            return (long) data.getBytes(charset).length;
-        } else if (isText(contentType)) {
-            String data = TextFormat.printToString(message);
-            return (long) data.getBytes(charset).length;
-        } else if (isXml(contentType)) {
-            String data = XmlFormat.printToString(message);
-            return (long) data.getBytes(charset).length;
+    /**
+     * Renders the <i>message</i> into one of the text formats identified by <i>contentType</i>.
+     * @param message to be rendered.
+     * @param contentType identifying the text format.
+     * @return <code>String</code> representation of the message.
+     */
+    protected String printToString(Message message, MediaType contentType) {
+        ProtobufFormat format = ProtobufFormat.forMediaType(contentType);
+        if (format == ProtobufFormat.HTML) {
+            return HtmlFormat.printToString(message);
+        } else if (format == ProtobufFormat.JSON) {
+            return JsonFormat.printToString(message);
+        } else if (format == ProtobufFormat.XML) {
+            return XmlFormat.printToString(message);
         } else {
-            return (long) message.toByteArray().length;
+            return TextFormat.printToString(message);
+        }
+    }
+
+    /**
+     * Renders the <i>message</i> into the encoded bytes of the text format identified by <i>contentType</i>.<br/>
+     * UTF-8 JSON and text are streamed by the <code>ProtobufJsonCodec</code> and the <code>ProtobufTextPrinter</code>,
+     * the other formats and charsets are encoded from {@link #printToString(Message, MediaType)}.
+     * @param message to be rendered.
+     * @param contentType identifying the text format and charset.
+     * @return encoded representation of the message.
+     */
+    protected byte[] printToBytes(Message message, MediaType contentType) {
+        ProtobufFormat format = ProtobufFormat.forMediaType(contentType);
+        if (format == ProtobufFormat.JSON && isUtf8(contentType)) {
+            return ProtobufJsonCodec.printToByteArray(message);
+        } else if (format == ProtobufFormat.TEXT && isUtf8(contentType)) {
+            return ProtobufTextPrinter.printToByteArray(message);
+        }
+        Charset charset = contentType.getCharSet() != null ? contentType.getCharSet() : DEFAULT_CHARSET;
+        return printToString(message, contentType).getBytes(charset);
+    }
+
+    /**
+     * Opens the response body, compressed with the <i>encoding</i> unless it is the identity.
+     */
+    private OutputStream openBody(HttpOutputMessage outputMessage, ContentEncoding encoding) throws IOException {
+        if (encoding != ContentEncoding.IDENTITY) {
+            HttpHeaders headers = outputMessage.getHeaders();
+            headers.remove("Content-Length");
+            headers.set(ContentEncoding.CONTENT_ENCODING, encoding.getValue());
+        }
+        return encoding.encode(outputMessage.getBody());
+    }
+
+    private void finishBody(OutputStream body) throws IOException {
+        if (body instanceof DeflaterOutputStream) {
+            ((DeflaterOutputStream) body).finish();
+        }
+    }
+
+    private void writeProtobuf(Message message, OutputStream body) throws IOException {
+        int serializedSize = message.getSerializedSize();
+        if (serializedSize == 0) {
+            return;
         }
+        CodedOutputStream output = CodedOutputStream.newInstance(body, Math.min(bufferSize, serializedSize));
+        message.writeTo(output);
+        output.flush();
+    }
+
+    /**
+     * Computes a strong entity tag from an MD5 digest of the binary serialization of the <i>message</i>.<br/>
+     * The tag of a body which may be compressed names the content coding, e.g. <code>"&lt;md5&gt;-gzip"</code>, as
+     * the compressed and the uncompressed bodies are different representations.
+     * @param message to be tagged.
+     * @param textContentType text format the message is rendered into, <code>null</code> for the binary format.
+     * @param contentEncoding coding the body is sent with.
+     * @return quoted entity tag.
+     */
+    protected String generateETag(Message message, MediaType textContentType, ContentEncoding contentEncoding) throws IOException {
+        MessageDigest digest = eTagDigest.get();
+        if (digest == null) {
+            try {
+                digest = MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("MD5 digest is not available", e);
+            }
+            eTagDigest.set(digest);
+        }
+        int serializedSize = message.getSerializedSize();
+        if (serializedSize > 0) {
+            CodedOutputStream output = CodedOutputStream.newInstance(new DigestOutputStream(NULL_OUTPUT_STREAM, digest),
+                    Math.min(bufferSize, serializedSize));
+            message.writeTo(output);
+            output.flush();
+        }
+
+        StringBuilder eTag = new StringBuilder(48).append('"');
+        for (byte b : digest.digest()) {
+            eTag.append(HEX_DIGITS[(b >> 4) & 0xf]).append(HEX_DIGITS[b & 0xf]);
+        }
+        if (textContentType != null) {
+            // Each text format and charset is a different representation of the message, other parameters are not
+            Charset charset = textContentType.getCharSet();
+            int hash = 31 * textContentType.getType().hashCode() + textContentType.getSubtype().hashCode();
+            hash = 31 * hash + (charset != null ? charset.hashCode() : 0);
+            eTag.append('-').append(Integer.toHexString(hash));
+        }
+        if (contentEncoding != ContentEncoding.IDENTITY) {
+            eTag.append('-').append(contentEncoding.getValue());
+        }
+        return eTag.append('"').toString();
+    }
+
+    private byte[] renderMessage(Message message, MediaType contentType) {
+        RenderedOutputCache cache = renderedOutputCache;
+        byte[] data = cache != null ? cache.get(message, contentType) : null;
+        if (data == null) {
+            data = printToBytes(message, contentType);
+            if (cache != null) {
+                cache.put(message, contentType, data);
+            }
+        }
+        return data;
+    }
+
+    private byte[] retrieveRenderedMessage(Message message, MediaType contentType) {
+        RenderedMessage rendered = renderedMessage.get();
+        renderedMessage.remove();
+        if (rendered != null && rendered.matches(message, contentType)) {
+            return rendered.data;
+        }
+        return renderMessage(message, contentType);
     }
 
     protected boolean isJson(MediaType contentType) {
-        return JSON.getType().equals(contentType.getType()) && JSON.getSubtype().equals(contentType.getSubtype());
+        return ProtobufFormat.forMediaType(contentType) == ProtobufFormat.JSON;
     }
 
     protected boolean isText(MediaType contentType) {
-        return TEXT.getType().equals(contentType.getType()) && TEXT.getSubtype().equals(contentType.getSubtype());
+        return ProtobufFormat.forMediaType(contentType) == ProtobufFormat.TEXT;
     }
 
     protected boolean isXml(MediaType contentType) {
-        return XML.getType().equals(contentType.getType()) && XML.getSubtype().equals(contentType.getSubtype());
+        return ProtobufFormat.forMediaType(contentType) == ProtobufFormat.XML;
     }
 
     protected boolean isHtml(MediaType contentType) {
-        return HTML.getType().equals(contentType.getType()) && HTML.getSubtype().equals(contentType.getSubtype());
+        return ProtobufFormat.forMediaType(contentType) == ProtobufFormat.HTML;
     }
 
-    private Method getNewBuilderMessageMethod(Class<? extends Message> clazz) throws NoSuchMethodException {
-        Method m = newBuilderMethodCache.get(clazz);
-        if (m == null) {
-            m = clazz.getMethod("newBuilder");
-            newBuilderMethodCache.put(clazz, m);
-        }
-        return m;
+    private boolean isTextFormat(MediaType contentType) {
+        ProtobufFormat format = ProtobufFormat.forMediaType(contentType);
+        return format != null && format.isText();
     }
 
-    private void initializeExtentionRegistry(ExtensionRegistryInitializer registryInitializer) {
-        if (registryInitializer != null) {
-            registryInitializer.initializeExtensionRegistry(extensionRegistry);
-        }
+    private boolean isUtf8(MediaType contentType) {
+        return contentType.getCharSet() == null || DEFAULT_CHARSET.equals(contentType.getCharSet());
+    }
+
+    private Reader createReader(InputStream body, MediaType contentType) {
+        Charset charset = contentType.getCharSet() != null ? contentType.getCharSet() : DEFAULT_CHARSET;
+        return new InputStreamReader(body, charset);
     }
 
     public static String convertInputStreamToString(InputStream io) {
-        StringBuffer sb = new StringBuffer();
+        return convertInputStreamToString(io, DEFAULT_CHARSET);
+    }
+
+    /**
+     * Reads the whole <i>io</i> stream into a <code>String</code> using the given <i>charset</i>.<br/>
+     * The content is copied as is, line endings are not normalized.
+     * @param io stream to read from.
+     * @param charset used to decode the stream bytes.
+     * @return <code>String</code> with the stream content.
+     */
+    public static String convertInputStreamToString(InputStream io, Charset charset) {
+        StringBuilder sb = new StringBuilder();
         try {
-            BufferedReader reader = new BufferedReader(new InputStreamReader(io, "UTF-8"));
-            String line = reader.readLine();
-            while (line != null) {
-                sb.append(line).append(LS);
-                line = reader.readLine();
+            Reader reader = new InputStreamReader(io, charset);
+            char[] buffer = new char[DEFAULT_BUFFER_SIZE];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                sb.append(buffer, 0, read);
             }
         } catch (IOException e) {
             throw new RuntimeException("Unable to obtain an InputStream", e);
@@ -179,4 +617,19 @@ public class ProtobufHttpMessageConverter extends AbstractHttpMessageConverter<M
         return sb.toString();
     }
 
+    private static class RenderedMessage {
+        private final Message message;
+        private final MediaType contentType;
+        private final byte[] data;
+
+        private RenderedMessage(Message message, MediaType contentType, byte[] data) {
+            this.message = message;
+            this.contentType = contentType;
+            this.data = data;
+        }
+
+        private boolean matches(Message message, MediaType contentType) {
+            return this.message == message && this.contentType.equals(contentType);
+        }
+    }
 }
@@ -0,0 +1,905 @@
+package com.google.protobuf.spring.http;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Descriptors.EnumDescriptor;
+import com.google.protobuf.Descriptors.EnumValueDescriptor;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.ExtensionRegistry;
+import com.google.protobuf.Message;
+import com.google.protobuf.UnknownFieldSet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JSON codec for <code>Message</code> objects, streaming UTF-8 bytes to and from the HTTP bodies.<br/>
+ * The output is the same as the one of <code>JsonFormat</code> from protobuf-java-format, except for <code>bytes</code>
+ * values above <code>0x7f</code>, which are escaped as <code>&#92;u00XX</code> so they can be read back. Unknown
+ * fields are printed by field number, with their <code>fixed32</code> and <code>fixed64</code> values as hex literals
+ * such as <code>0x00000005</code>, which strict JSON parsers reject. The parser accepts the <code>JsonFormat</code>
+ * output as well as standard JSON, e.g. quoted 64-bit numbers, <code>null</code> values and <code>\/</code> escapes;
+ * unknown fields are skipped.<br/>
+ * Field names, enum names and their encoded forms are compiled once per <code>Descriptor</code>, so neither printing
+ * nor parsing builds intermediate <code>String</code> objects for them.
+ */
+public final class ProtobufJsonCodec {
+    private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+    private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+
+    private ProtobufJsonCodec() {
+    }
+
+    /**
+     * Writes the JSON representation of the <i>message</i> as UTF-8 bytes.
+     * @param message to be printed.
+     * @param out receiving the bytes, flushed but not closed.
+     * @throws IOException in case of I/O errors.
+     */
+    public static void print(Message message, OutputStream out) throws IOException {
+        JsonWriter writer = new JsonWriter(out);
+        printMessage(message, writer);
+        writer.flush();
+    }
+
+    public static byte[] printToByteArray(Message message) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(32, message.getSerializedSize() * 2));
+        try {
+            print(message, out);
+        } catch (IOException e) {
+            throw new RuntimeException("Writing to a byte array threw an IOException (should never happen).", e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Parses a JSON object from the UTF-8 encoded <i>in</i> into the <i>builder</i>.
+     * @param in stream positioned at the JSON object, it is read up to the end of the object.
+     * @param extensionRegistry used to resolve extension field names, may be <code>null</code>.
+     * @param builder receiving the fields.
+     * @throws ParseException if the input is not valid JSON or does not match the message type.
+     * @throws IOException in case of I/O errors.
+     */
+    public static void merge(InputStream in, ExtensionRegistry extensionRegistry, Message.Builder builder) throws IOException {
+        merge(in, extensionRegistry, builder, MessageLimits.DEFAULT_RECURSION_LIMIT);
+    }
+
+    /**
+     * Parses a JSON object from the UTF-8 encoded <i>in</i> into the <i>builder</i>, rejecting objects and arrays,
+     * including skipped ones, nested deeper than <i>recursionLimit</i>.
+     * @see #merge(InputStream, ExtensionRegistry, Message.Builder)
+     */
+    public static void merge(InputStream in, ExtensionRegistry extensionRegistry, Message.Builder builder,
+                             int recursionLimit) throws IOException {
+        JsonReader reader = new JsonReader(in, recursionLimit);
+        mergeMessage(reader, extensionRegistry, builder);
+    }
+
+    public static void merge(byte[] data, ExtensionRegistry extensionRegistry, Message.Builder builder) throws IOException {
+        merge(data, data.length, extensionRegistry, builder, MessageLimits.DEFAULT_RECURSION_LIMIT);
+    }
+
+    /**
+     * Parses a JSON object from the first <i>length</i> UTF-8 bytes of <i>data</i> into the <i>builder</i>, e.g. a
+     * line of newline delimited JSON read into a reused buffer.
+     * @see #merge(InputStream, ExtensionRegistry, Message.Builder, int)
+     */
+    public static void merge(byte[] data, int length, ExtensionRegistry extensionRegistry, Message.Builder builder,
+                             int recursionLimit) throws IOException {
+        JsonReader reader = new JsonReader(data, length, recursionLimit);
+        mergeMessage(reader, extensionRegistry, builder);
+    }
+
+    // Printing
+
+    private static void printMessage(Message message, JsonWriter writer) throws IOException {
+        MessageSchema schema = MessageSchema.forType(message.getDescriptorForType());
+        writer.write('{');
+        boolean first = true;
+        if (schema.extendable) {
+            // Extensions are interleaved with the regular fields by number
+            for (Map.Entry<FieldDescriptor, Object> entry : message.getAllFields().entrySet()) {
+                first = printField(schema.fieldSchema(entry.getKey()), entry.getValue(), writer, first);
+            }
+        } else {
+            for (FieldSchema field : schema.fields) {
+                if (field.repeated) {
+                    List<?> values = (List<?>) message.getField(field.descriptor);
+                    if (!values.isEmpty()) {
+                        first = printField(field, values, writer, first);
+                    }
+                } else if (message.hasField(field.descriptor)) {
+                    first = printField(field, message.getField(field.descriptor), writer, first);
+                }
+            }
+        }
+        printUnknownFields(message.getUnknownFields(), writer, first);
+        writer.write('}');
+    }
+
+    private static boolean printField(FieldSchema field, Object value, JsonWriter writer, boolean first) throws IOException {
+        if (!first) {
+            writer.write(',');
+        }
+        writer.write(field.jsonName);
+        if (field.repeated) {
+            writer.write('[');
+            List<?> values = (List<?>) value;
+            for (int i = 0; i < values.size(); i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                printValue(field, values.get(i), writer);
+            }
+            writer.write(']');
+        } else {
+            printValue(field, value, writer);
+        }
+        return false;
+    }
+
+    private static void printValue(FieldSchema field, Object value, JsonWriter writer) throws IOException {
+        switch (field.type) {
+            case INT32:
+            case SINT32:
+            case SFIXED32:
+                writer.writeLong((Integer) value);
+                break;
+            case INT64:
+            case SINT64:
+            case SFIXED64:
+                writer.writeLong((Long) value);
+                break;
+            case UINT32:
+            case FIXED32:
+                writer.writeLong(((Integer) value) & 0xffffffffL);
+                break;
+            case UINT64:
+            case FIXED64:
+                writer.writeUnsignedLong((Long) value);
+                break;
+            case FLOAT:
+                writer.writeAscii(value.toString());
+                break;
+            case DOUBLE:
+                writer.writeAscii(value.toString());
+                break;
+            case BOOL:
+                writer.write((Boolean) value ? TRUE : FALSE);
+                break;
+            case STRING:
+                writer.writeString((String) value);
+                break;
+            case BYTES:
+                writer.writeBytes((ByteString) value);
+                break;
+            case ENUM:
+                EnumValueDescriptor enumValue = (EnumValueDescriptor) value;
+                writer.write(EnumSchema.forType(enumValue.getType()).jsonNames[enumValue.getIndex()]);
+                break;
+            case MESSAGE:
+            case GROUP:
+                printMessage((Message) value, writer);
+                break;
+        }
+    }
+
+    private static void printUnknownFields(UnknownFieldSet unknownFields, JsonWriter writer, boolean first) throws IOException {
+        for (Map.Entry<Integer, UnknownFieldSet.Field> entry : unknownFields.asMap().entrySet()) {
+            if (!first) {
+                writer.write(',');
+                writer.write(' ');
+            }
+            first = false;
+            writer.write('"');
+            writer.writeLong(entry.getKey());
+            writer.write('"');
+            writer.write(':');
+            writer.write(' ');
+            writer.write('[');
+            boolean firstValue = true;
+            UnknownFieldSet.Field field = entry.getValue();
+            for (long value : field.getVarintList()) {
+                firstValue = writeValueSeparator(writer, firstValue);
+                writer.writeUnsignedLong(value);
+            }
+            for (int value : field.getFixed32List()) {
+                firstValue = writeValueSeparator(writer, firstValue);
+                writer.writeHex(value & 0xffffffffL, 8);
+            }
+            for (long value : field.getFixed64List()) {
+                firstValue = writeValueSeparator(writer, firstValue);
+                writer.writeHex(value, 16);
+            }
+            for (ByteString value : field.getLengthDelimitedList()) {
+                firstValue = writeValueSeparator(writer, firstValue);
+                writer.writeBytes(value);
+            }
+            for (UnknownFieldSet value : field.getGroupList()) {
+                firstValue = writeValueSeparator(writer, firstValue);
+                writer.write('{');
+                printUnknownFields(value, writer, true);
+                writer.write('}');
+            }
+            writer.write(']');
+        }
+    }
+
+    private static boolean writeValueSeparator(JsonWriter writer, boolean first) throws IOException {
+        if (!first) {
+            writer.write(',');
+            writer.write(' ');
+        }
+        return false;
+    }
+
+    // Parsing
+
+    private static void mergeMessage(JsonReader reader, ExtensionRegistry extensionRegistry, Message.Builder builder) throws IOException {
+        MessageSchema schema = MessageSchema.forType(builder.getDescriptorForType());
+        reader.expect('{');
+        reader.enter();
+        if (reader.peek() == '}') {
+            reader.next();
+            reader.leave();
+            return;
+        }
+        while (true) {
+            int nameLength = reader.readName();
+            reader.expect(':');
+            FieldDescriptor field = schema.names.get(reader.chars, nameLength);
+            ExtensionRegistry.ExtensionInfo extension = null;
+            if (field == null && extensionRegistry != null) {
+                extension = extensionRegistry.findExtensionByName(new String(reader.chars, 0, nameLength));
+                if (extension != null && extension.descriptor.getContainingType() == schema.descriptor) {
+                    field = extension.descriptor;
+                } else {
+                    extension = null;
+                }
+            }
+            if (field == null) {
+                reader.skipValue();
+            } else {
+                mergeField(reader, extensionRegistry, builder, field, extension);
+            }
+
+            int c = reader.next();
+            if (c == '}') {
+                reader.leave();
+                return;
+            } else if (c != ',') {
+                throw reader.error("Expected \",\" or \"}\"");
+            }
+        }
+    }
+
+    private static void mergeField(JsonReader reader, ExtensionRegistry extensionRegistry, Message.Builder builder,
+                                   FieldDescriptor field, ExtensionRegistry.ExtensionInfo extension) throws IOException {
+        if (reader.skipNull()) {
+            return;
+        }
+        if (!field.isRepeated()) {
+            builder.setField(field, readValue(reader, extensionRegistry, builder, field, extension));
+        } else if (reader.peek() == '[') {
+            reader.next();
+            if (reader.peek() == ']') {
+                reader.next();
+                return;
+            }
+            while (true) {
+                builder.addRepeatedField(field, readValue(reader, extensionRegistry, builder, field, extension));
+                int c = reader.next();
+                if (c == ']') {
+                    return;
+                } else if (c != ',') {
+                    throw reader.error("Expected \",\" or \"]\"");
+                }
+            }
+        } else {
+            builder.addRepeatedField(field, readValue(reader, extensionRegistry, builder, field, extension));
+        }
+    }
+
+    private static Object readValue(JsonReader reader, ExtensionRegistry extensionRegistry, Message.Builder builder,
+                                    FieldDescriptor field, ExtensionRegistry.ExtensionInfo extension) throws IOException {
+        switch (field.getType()) {
+            case INT32:
+            case SINT32:
+            case SFIXED32:
+                return (int) reader.readInteger(true, false);
+            case INT64:
+            case SINT64:
+            case SFIXED64:
+                return reader.readInteger(true, true);
+            case UINT32:
+            case FIXED32:
+                return (int) reader.readInteger(false, false);
+            case UINT64:
+            case FIXED64:
+                return reader.readInteger(false, true);
+            case FLOAT:
+                return Float.parseFloat(reader.readNumberToken());
+            case DOUBLE:
+                return Double.parseDouble(reader.readNumberToken());
+            case BOOL:
+                return reader.readBoolean();
+            case STRING:
+                return reader.readString();
+            case BYTES:
+                return reader.readBytes();
+            case ENUM:
+                return readEnum(reader, field);
+            case MESSAGE:
+            case GROUP:
+                Message.Builder fieldBuilder = extension != null ?
+                        extension.defaultInstance.newBuilderForType() : builder.newBuilderForField(field);
+                mergeMessage(reader, extensionRegistry, fieldBuilder);
+                return fieldBuilder.buildPartial();
+        }
+        throw reader.error("Unsupported field type " + field.getType());
+    }
+
+    private static EnumValueDescriptor readEnum(JsonReader reader, FieldDescriptor field) throws IOException {
+        EnumDescriptor enumType = field.getEnumType();
+        EnumValueDescriptor value;
+        int c = reader.peek();
+        int length = c == '"' || c == '\'' ? reader.readQuoted() : reader.readToken();
+        char first = length > 0 ? reader.chars[0] : 0;
+        if (first == '-' || (first >= '0' && first <= '9')) {
+            value = enumType.findValueByNumber((int) reader.parseInteger(length, true, false));
+        } else {
+            value = EnumSchema.forType(enumType).names.get(reader.chars, length);
+        }
+        if (value == null) {
+            throw reader.error("Enum type \"" + enumType.getFullName() + "\" has no value named \"" +
+                    new String(reader.chars, 0, length) + "\"");
+        }
+        return value;
+    }
+
+    /**
+     * Buffered UTF-8 JSON output.
+     */
+    private static final class JsonWriter extends ByteWriter {
+        private JsonWriter(OutputStream out) {
+            super(out);
+        }
+
+        private void writeString(String s) throws IOException {
+            write('"');
+            int length = s.length();
+            for (int i = 0; i < length; i++) {
+                char c = s.charAt(i);
+                if (c >= 0x20 && c < 0x80) {
+                    if (c == '"' || c == '\\') {
+                        write('\\');
+                    }
+                    write(c);
+                } else if (c < 0x20) {
+                    writeControl(c);
+                } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    writeUnicodeEscape(c);
+                    writeUnicodeEscape(s.charAt(++i));
+                } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                    writeUnicodeEscape(c);
+                } else if (c < 0x800) {
+                    write(0xc0 | (c >> 6));
+                    write(0x80 | (c & 0x3f));
+                } else {
+                    write(0xe0 | (c >> 12));
+                    write(0x80 | ((c >> 6) & 0x3f));
+                    write(0x80 | (c & 0x3f));
+                }
+            }
+            write('"');
+        }
+
+        private void writeBytes(ByteString bytes) throws IOException {
+            write('"');
+            int size = bytes.size();
+            for (int i = 0; i < size; i++) {
+                int b = bytes.byteAt(i) & 0xff;
+                switch (b) {
+                    case 0x07:
+                        write('\\');
+                        write('a');
+                        break;
+                    case 0x0b:
+                        write('\\');
+                        write('v');
+                        break;
+                    case '\'':
+                    case '"':
+                    case '\\':
+                        write('\\');
+                        write(b);
+                        break;
+                    default:
+                        if (b < 0x20) {
+                            writeControl(b);
+                        } else if (b < 0x80) {
+                            write(b);
+                        } else {
+                            writeUnicodeEscape(b);
+                        }
+                }
+            }
+            write('"');
+        }
+
+        private void writeControl(int c) throws IOException {
+            switch (c) {
+                case '\b':
+                    write('\\');
+                    write('b');
+                    break;
+                case '\t':
+                    write('\\');
+                    write('t');
+                    break;
+                case '\n':
+                    write('\\');
+                    write('n');
+                    break;
+                case '\f':
+                    write('\\');
+                    write('f');
+                    break;
+                case '\r':
+                    write('\\');
+                    write('r');
+                    break;
+                default:
+                    writeUnicodeEscape(c);
+            }
+        }
+
+        private void writeUnicodeEscape(int c) throws IOException {
+            write('\\');
+            write('u');
+            write(HEX_DIGITS[(c >> 12) & 0xf]);
+            write(HEX_DIGITS[(c >> 8) & 0xf]);
+            write(HEX_DIGITS[(c >> 4) & 0xf]);
+            write(HEX_DIGITS[c & 0xf]);
+        }
+    }
+
+    /**
+     * Buffered UTF-8 JSON input, decoding names and values into a reusable <code>char</code> buffer.
+     */
+    private static final class JsonReader {
+        private final InputStream in;
+        private final byte[] buffer;
+        private int position;
+        private int limit;
+        private int line = 1;
+        private char[] chars = new char[64];
+        private final int recursionLimit;
+        private int depth;
+
+        private JsonReader(InputStream in, int recursionLimit) {
+            this.in = in;
+            this.buffer = new byte[ByteWriter.BUFFER_SIZE];
+            this.recursionLimit = recursionLimit;
+        }
+
+        private JsonReader(byte[] data, int length, int recursionLimit) {
+            this.in = null;
+            this.buffer = data;
+            this.limit = length;
+            this.recursionLimit = recursionLimit;
+        }
+
+        private void enter() throws ParseException {
+            if (++depth > recursionLimit) {
+                throw error("Nested deeper than " + recursionLimit + " levels");
+            }
+        }
+
+        private void leave() {
+            depth--;
+        }
+
+        private int read() throws IOException {
+            if (position == limit) {
+                if (in == null) {
+                    return -1;
+                }
+                limit = in.read(buffer, 0, buffer.length);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return -1;
+                }
+            }
+            return buffer[position++] & 0xff;
+        }
+
+        private void unread() {
+            position--;
+        }
+
+        /**
+         * @return next non whitespace byte, without consuming it.
+         */
+        private int peek() throws IOException {
+            int c = next();
+            if (c != -1) {
+                unread();
+            }
+            return c;
+        }
+
+        /**
+         * @return next non whitespace byte.
+         */
+        private int next() throws IOException {
+            int c;
+            do {
+                c = read();
+                if (c == '\n') {
+                    line++;
+                }
+            } while (c == ' ' || c == '\n' || c == '\r' || c == '\t');
+            return c;
+        }
+
+        private void expect(char expected) throws IOException {
+            if (next() != expected) {
+                throw error("Expected \"" + expected + "\"");
+            }
+        }
+
+        private boolean skipNull() throws IOException {
+            if (peek() != 'n') {
+                return false;
+            }
+            int length = readToken();
+            if (length != 4 || chars[0] != 'n' || chars[1] != 'u' || chars[2] != 'l' || chars[3] != 'l') {
+                throw error("Unexpected value \"" + new String(chars, 0, length) + "\"");
+            }
+            return true;
+        }
+
+        /**
+         * Reads a quoted or bare field name into <code>chars</code>.
+         * @return length of the name.
+         */
+        private int readName() throws IOException {
+            int c = peek();
+            if (c == '"' || c == '\'') {
+                return readQuoted();
+            }
+            int length = readToken();
+            if (length == 0) {
+                throw error("Expected identifier");
+            }
+            return length;
+        }
+
+        /**
+         * Reads a bare token made of letters, digits and <code>_ . + -</code> into <code>chars</code>.
+         * @return length of the token.
+         */
+        private int readToken() throws IOException {
+            next();
+            unread();
+            int length = 0;
+            int c;
+            while ((c = read()) != -1) {
+                if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') ||
+                        c == '_' || c == '.' || c == '+' || c == '-') {
+                    ensureCapacity(length + 1);
+                    chars[length++] = (char) c;
+                } else {
+                    unread();
+                    break;
+                }
+            }
+            return length;
+        }
+
+        /**
+         * Reads a quoted or bare numeric token, as found in <code>JsonFormat</code> output and standard JSON.
+         */
+        private int readNumber() throws IOException {
+            int c = peek();
+            int length = c == '"' || c == '\'' ? readQuoted() : readToken();
+            if (length == 0) {
+                throw error("Expected number");
+            }
+            return length;
+        }
+
+        private String readNumberToken() throws IOException {
+            int length = readNumber();
+            return new String(chars, 0, length);
+        }
+
+        private long readInteger(boolean signed, boolean is64) throws IOException {
+            return parseInteger(readNumber(), signed, is64);
+        }
+
+        private long parseInteger(int length, boolean signed, boolean is64) throws IOException {
+            int start = chars[0] == '-' ? 1 : 0;
+            boolean negative = start == 1;
+            if (negative && !signed) {
+                throw error("Number must be positive: " + new String(chars, 0, length));
+            }
+            boolean plainDecimal = length - start > 0 && length - start <= 18 && (chars[start] != '0' || length - start == 1);
+            long result = 0;
+            for (int i = start; plainDecimal && i < length; i++) {
+                char c = chars[i];
+                if (c < '0' || c > '9') {
+                    plainDecimal = false;
+                }
+                result = result * 10 + (c - '0');
+            }
+            if (!plainDecimal) {
+                result = parseNonDecimal(new String(chars, start, length - start), negative, is64, signed);
+            } else if (negative) {
+                result = -result;
+            }
+            if (!is64) {
+                if (signed ? result < Integer.MIN_VALUE || result > Integer.MAX_VALUE : result < 0 || result > 0xffffffffL) {
+                    throw error("Number out of range for 32-bit " + (signed ? "signed" : "unsigned") + " integer: " +
+                            new String(chars, 0, length));
+                }
+            }
+            return result;
+        }
+
+        private long parseNonDecimal(String digits, boolean negative, boolean is64, boolean signed) throws IOException {
+            int radix = 10;
+            if (digits.startsWith("0x") || digits.startsWith("0X")) {
+                digits = digits.substring(2);
+                radix = 16;
+            } else if (digits.length() > 1 && digits.startsWith("0")) {
+                radix = 8;
+            }
+            BigInteger value;
+            try {
+                value = new BigInteger(digits, radix);
+            } catch (NumberFormatException e) {
+                throw error("Couldn't parse integer: " + (negative ? "-" : "") + digits);
+            }
+            if (negative) {
+                value = value.negate();
+            }
+            int bits = is64 ? 64 : 32;
+            boolean inRange = signed ? value.bitLength() <= bits - 1 : value.signum() >= 0 && value.bitLength() <= bits;
+            if (!inRange) {
+                throw error("Number out of range for " + bits + "-bit " + (signed ? "signed" : "unsigned") + " integer: " + value);
+            }
+            return value.longValue();
+        }
+
+        private boolean readBoolean() throws IOException {
+            int c = peek();
+            int length = c == '"' || c == '\'' ? readQuoted() : readToken();
+            if (length == 4 && chars[0] == 't' && chars[1] == 'r' && chars[2] == 'u' && chars[3] == 'e') {
+                return true;
+            } else if (length == 5 && chars[0] == 'f' && chars[1] == 'a' && chars[2] == 'l' && chars[3] == 's' && chars[4] == 'e') {
+                return false;
+            }
+            throw error("Expected \"true\" or \"false\"");
+        }
+
+        private String readString() throws IOException {
+            int c = peek();
+            if (c != '"' && c != '\'') {
+                throw error("Expected string");
+            }
+            int length = readQuoted();
+            return new String(chars, 0, length);
+        }
+
+        private ByteString readBytes() throws IOException {
+            int c = peek();
+            if (c != '"' && c != '\'') {
+                throw error("Expected string");
+            }
+            int length = readQuoted();
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) {
+                bytes[i] = (byte) chars[i];
+            }
+            return ByteString.copyFrom(bytes);
+        }
+
+        /**
+         * Reads a quoted string into <code>chars</code>, decoding UTF-8 and escape sequences. Octal and hex escapes
+         * are read as character values, which are the byte values of a <code>bytes</code> field.
+         * @return length of the unquoted string.
+         */
+        private int readQuoted() throws IOException {
+            int quote = next();
+            int length = 0;
+            while (true) {
+                int c = read();
+                if (c == -1) {
+                    throw error("String missing ending quote");
+                }
+                if (c == quote) {
+                    return length;
+                }
+                ensureCapacity(length + 2);
+                if (c == '\\') {
+                    chars[length++] = readEscape();
+                } else if (c < 0x80) {
+                    if (c == '\n') {
+                        throw error("String missing ending quote");
+                    }
+                    chars[length++] = (char) c;
+                } else if (c < 0xc2 || c > 0xf4) {
+                    // Continuation bytes, overlong 2 byte sequences and code points beyond U+10FFFF
+                    throw error("Invalid UTF-8");
+                } else if (c < 0xe0) {
+                    chars[length++] = (char) (((c & 0x1f) << 6) | continuation());
+                } else if (c < 0xf0) {
+                    // Overlong 3 byte sequences and UTF-16 surrogates
+                    int second = continuation(c == 0xe0 ? 0xa0 : 0x80, c == 0xed ? 0x9f : 0xbf);
+                    chars[length++] = (char) (((c & 0x0f) << 12) | (second << 6) | continuation());
+                } else {
+                    // Overlong 4 byte sequences and code points beyond U+10FFFF
+                    int second = continuation(c == 0xf0 ? 0x90 : 0x80, c == 0xf4 ? 0x8f : 0xbf);
+                    int codePoint = ((c & 0x07) << 18) | (second << 12) | (continuation() << 6) | continuation();
+                    length += Character.toChars(codePoint, chars, length);
+                }
+            }
+        }
+
+        private int continuation() throws IOException {
+            int c = read();
+            if ((c & 0xc0) != 0x80) {
+                throw error("Invalid UTF-8 sequence");
+            }
+            return c & 0x3f;
+        }
+
+        /**
+         * Reads the second byte of a sequence, whose range depends on the lead byte.
+         */
+        private int continuation(int min, int max) throws IOException {
+            int c = read();
+            if (c < min || c > max) {
+                throw error("Invalid UTF-8");
+            }
+            return c & 0x3f;
+        }
+
+        private char readEscape() throws IOException {
+            int c = read();
+            switch (c) {
+                case 'b':
+                    return '\b';
+                case 't':
+                    return '\t';
+                case 'n':
+                    return '\n';
+                case 'f':
+                    return '\f';
+                case 'r':
+                    return '\r';
+                case 'a':
+                    return 0x07;
+                case 'v':
+                    return 0x0b;
+                case '"':
+                case '\'':
+                case '\\':
+                case '/':
+                case '?':
+                    return (char) c;
+                case 'u':
+                    return (char) readHex(4, 4);
+                case 'x':
+                    return (char) readHex(1, 2);
+                default:
+                    if (c >= '0' && c <= '7') {
+                        int value = c - '0';
+                        for (int i = 0; i < 2; i++) {
+                            int d = read();
+                            if (d < '0' || d > '7') {
+                                if (d != -1) {
+                                    unread();
+                                }
+                                break;
+                            }
+                            value = value * 8 + (d - '0');
+                        }
+                        return (char) value;
+                    }
+                    throw error("Invalid escape sequence: '\\" + (char) c + "'");
+            }
+        }
+
+        private int readHex(int minDigits, int maxDigits) throws IOException {
+            int value = 0;
+            int digits = 0;
+            while (digits < maxDigits) {
+                int c = read();
+                int digit = Character.digit(c, 16);
+                if (c == -1 || digit < 0) {
+                    if (c != -1) {
+                        unread();
+                    }
+                    break;
+                }
+                value = value * 16 + digit;
+                digits++;
+            }
+            if (digits < minDigits) {
+                throw error("Invalid hex escape sequence");
+            }
+            return value;
+        }
+
+        private void skipValue() throws IOException {
+            int c = peek();
+            if (c == '{') {
+                next();
+                if (peek() == '}') {
+                    next();
+                    return;
+                }
+                enter();
+                do {
+                    readName();
+                    expect(':');
+                    skipValue();
+                    c = next();
+                } while (c == ',');
+                if (c != '}') {
+                    throw error("Expected \",\" or \"}\"");
+                }
+                leave();
+            } else if (c == '[') {
+                next();
+                if (peek() == ']') {
+                    next();
+                    return;
+                }
+                enter();
+                do {
+                    skipValue();
+                    c = next();
+                } while (c == ',');
+                if (c != ']') {
+                    throw error("Expected \",\" or \"]\"");
+                }
+                leave();
+            } else if (c == '"' || c == '\'') {
+                readQuoted();
+            } else if (readToken() == 0) {
+                throw error("Expected value");
+            }
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > chars.length) {
+                chars = Arrays.copyOf(chars, Math.max(capacity, chars.length * 2));
+            }
+        }
+
+        private ParseException error(String message) {
+            return new ParseException(line, message);
+        }
+    }
+
+    /**
+     * Thrown when the JSON input is not valid or does not match the message type.
+     */
+    public static class ParseException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public ParseException(int line, String message) {
+            super("Line " + line + ": " + message);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.google.protobuf.spring.http;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.Message;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+
+import com.googlecode.protobuf.format.JsonFormat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+
+/**
+ * Companion of the {@link ProtobufHttpMessageConverter} which streams the messages of a {@link MessageStream} one
+ * message at a time, so the response never has to be built as a single wrapper message in memory.<br/>
+ * Messages are written as length-delimited protobuf (the format produced by <code>writeDelimitedTo</code>) for
+ * <code>application/x-protobuf</code> and as newline delimited JSON for <code>application/json</code>; an empty
+ * stream is written as an empty body.
+ * Use {@link com.google.protobuf.spring.http.client.DelimitedMessageIterator} to read such a response on the client side.
+ */
+public class ProtobufStreamingHttpMessageConverter extends AbstractHttpMessageConverter<MessageStream<?>> {
+    private int bufferSize = ProtobufHttpMessageConverter.DEFAULT_BUFFER_SIZE;
+
+    public ProtobufStreamingHttpMessageConverter() {
+        super(ProtobufHttpMessageConverter.PROTOBUF, ProtobufHttpMessageConverter.JSON);
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public void setBufferSize(int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be positive, but was " + bufferSize);
+        }
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * The element type of a plain <code>Iterable</code> or <code>Iterator</code> can not be determined from its class,
+     * so only a {@link MessageStream} naming its message type is written.
+     */
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return MessageStream.class.isAssignableFrom(clazz);
+    }
+
+    /**
+     * The element type of a stream can not be determined from the requested class, so this converter is write only.
+     */
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected MessageStream<?> readInternal(Class<? extends MessageStream<?>> clazz, HttpInputMessage inputMessage)
+            throws IOException, HttpMessageNotReadableException {
+        throw new HttpMessageNotReadableException("Reading a stream of messages is not supported by " + getClass().getName());
+    }
+
+    @Override
+    protected MediaType getDefaultContentType(MessageStream<?> messages) {
+        return ProtobufHttpMessageConverter.PROTOBUF;
+    }
+
+    @Override
+    protected void writeInternal(MessageStream<?> messages, HttpOutputMessage outputMessage) throws IOException, HttpMessageNotWritableException {
+        MediaType contentType = outputMessage.getHeaders().getContentType();
+        Class<?> messageType = messages.getMessageType();
+        Iterator<?> iterator = messages.iterator();
+
+        if (isJson(contentType) && (contentType.getCharSet() == null ||
+                ProtobufHttpMessageConverter.DEFAULT_CHARSET.equals(contentType.getCharSet()))) {
+            OutputStream body = outputMessage.getBody();
+            while (iterator.hasNext()) {
+                ProtobufJsonCodec.print(toMessage(iterator.next(), messageType), body);
+                body.write('\n');
+            }
+            body.flush();
+        } else if (isJson(contentType)) {
+            Charset charset = contentType.getCharSet() != null ? contentType.getCharSet() : ProtobufHttpMessageConverter.DEFAULT_CHARSET;
+            Writer writer = new OutputStreamWriter(outputMessage.getBody(), charset);
+            while (iterator.hasNext()) {
+                JsonFormat.print(toMessage(iterator.next(), messageType), writer);
+                writer.write('\n');
+            }
+            writer.flush();
+        } else {
+            CodedOutputStream output = CodedOutputStream.newInstance(outputMessage.getBody(), bufferSize);
+            while (iterator.hasNext()) {
+                Message message = toMessage(iterator.next(), messageType);
+                output.writeRawVarint32(message.getSerializedSize());
+                message.writeTo(output);
+            }
+            output.flush();
+        }
+    }
+
+    protected boolean isJson(MediaType contentType) {
+        return ProtobufFormat.forMediaType(contentType) == ProtobufFormat.JSON;
+    }
+
+    private Message toMessage(Object element, Class<?> messageType) {
+        if (!messageType.isInstance(element)) {
+            throw new HttpMessageNotWritableException("Only " + messageType.getName() + " elements can be streamed, but got " +
+                    (element == null ? null : element.getClass().getName()));
+        }
+        return (Message) element;
+    }
+}
@@ -0,0 +1,264 @@
+package com.google.protobuf.spring.http;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Descriptors.EnumValueDescriptor;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.Message;
+import com.google.protobuf.UnknownFieldSet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Prints <code>Message</code> objects in the protobuf text format, streaming ASCII bytes from the compiled
+ * message schemas shared with the {@link ProtobufJsonCodec}.<br/>
+ * The output is the same as the one of <code>TextFormat.print()</code>; parsing is left to <code>TextFormat</code>.
+ */
+public final class ProtobufTextPrinter {
+    private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+    private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+
+    private ProtobufTextPrinter() {
+    }
+
+    /**
+     * Writes the text format representation of the <i>message</i>.
+     * @param message to be printed.
+     * @param out receiving the bytes, flushed but not closed.
+     * @throws IOException in case of I/O errors.
+     */
+    public static void print(Message message, OutputStream out) throws IOException {
+        ByteWriter writer = new ByteWriter(out);
+        printMessage(message, writer, 0);
+        writer.flush();
+    }
+
+    public static byte[] printToByteArray(Message message) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(32, message.getSerializedSize() * 2));
+        try {
+            print(message, out);
+        } catch (IOException e) {
+            throw new RuntimeException("Writing to a byte array threw an IOException (should never happen).", e);
+        }
+        return out.toByteArray();
+    }
+
+    private static void printMessage(Message message, ByteWriter writer, int indent) throws IOException {
+        MessageSchema schema = MessageSchema.forType(message.getDescriptorForType());
+        if (schema.extendable) {
+            for (Map.Entry<FieldDescriptor, Object> entry : message.getAllFields().entrySet()) {
+                printField(schema.fieldSchema(entry.getKey()), entry.getValue(), writer, indent);
+            }
+        } else {
+            for (FieldSchema field : schema.fields) {
+                if (field.repeated ? message.getRepeatedFieldCount(field.descriptor) > 0 : message.hasField(field.descriptor)) {
+                    printField(field, message.getField(field.descriptor), writer, indent);
+                }
+            }
+        }
+        printUnknownFields(message.getUnknownFields(), writer, indent);
+    }
+
+    private static void printField(FieldSchema field, Object value, ByteWriter writer, int indent) throws IOException {
+        if (field.repeated) {
+            for (Object element : (List<?>) value) {
+                printSingleField(field, element, writer, indent);
+            }
+        } else {
+            printSingleField(field, value, writer, indent);
+        }
+    }
+
+    private static void printSingleField(FieldSchema field, Object value, ByteWriter writer, int indent) throws IOException {
+        writeIndent(writer, indent);
+        writer.write(field.textName);
+        switch (field.type) {
+            case INT32:
+            case SINT32:
+            case SFIXED32:
+                writer.writeLong((Integer) value);
+                break;
+            case INT64:
+            case SINT64:
+            case SFIXED64:
+                writer.writeLong((Long) value);
+                break;
+            case UINT32:
+            case FIXED32:
+                writer.writeLong(((Integer) value) & 0xffffffffL);
+                break;
+            case UINT64:
+            case FIXED64:
+                writer.writeUnsignedLong((Long) value);
+                break;
+            case FLOAT:
+            case DOUBLE:
+                writer.writeAscii(value.toString());
+                break;
+            case BOOL:
+                writer.write((Boolean) value ? TRUE : FALSE);
+                break;
+            case STRING:
+                writeString((String) value, writer);
+                break;
+            case BYTES:
+                writer.write('"');
+                ByteString bytes = (ByteString) value;
+                for (int i = 0; i < bytes.size(); i++) {
+                    writeEscaped(bytes.byteAt(i), writer);
+                }
+                writer.write('"');
+                break;
+            case ENUM:
+                EnumValueDescriptor enumValue = (EnumValueDescriptor) value;
+                writer.write(EnumSchema.forType(enumValue.getType()).textNames[enumValue.getIndex()]);
+                break;
+            case MESSAGE:
+            case GROUP:
+                printMessage((Message) value, writer, indent + 1);
+                writeIndent(writer, indent);
+                writer.write('}');
+                break;
+        }
+        writer.write('\n');
+    }
+
+    private static void printUnknownFields(UnknownFieldSet unknownFields, ByteWriter writer, int indent) throws IOException {
+        for (Map.Entry<Integer, UnknownFieldSet.Field> entry : unknownFields.asMap().entrySet()) {
+            int number = entry.getKey();
+            UnknownFieldSet.Field field = entry.getValue();
+            for (long value : field.getVarintList()) {
+                writeUnknownFieldName(number, writer, indent);
+                writer.writeUnsignedLong(value);
+                writer.write('\n');
+            }
+            for (int value : field.getFixed32List()) {
+                writeUnknownFieldName(number, writer, indent);
+                writer.writeHex(value & 0xffffffffL, 8);
+                writer.write('\n');
+            }
+            for (long value : field.getFixed64List()) {
+                writeUnknownFieldName(number, writer, indent);
+                writer.writeHex(value, 16);
+                writer.write('\n');
+            }
+            for (ByteString value : field.getLengthDelimitedList()) {
+                writeUnknownFieldName(number, writer, indent);
+                writer.write('"');
+                for (int i = 0; i < value.size(); i++) {
+                    writeEscaped(value.byteAt(i), writer);
+                }
+                writer.write('"');
+                writer.write('\n');
+            }
+            for (UnknownFieldSet value : field.getGroupList()) {
+                writeIndent(writer, indent);
+                writer.writeLong(number);
+                writer.write(' ');
+                writer.write('{');
+                writer.write('\n');
+                printUnknownFields(value, writer, indent + 1);
+                writeIndent(writer, indent);
+                writer.write('}');
+                writer.write('\n');
+            }
+        }
+    }
+
+    private static void writeUnknownFieldName(int number, ByteWriter writer, int indent) throws IOException {
+        writeIndent(writer, indent);
+        writer.writeLong(number);
+        writer.write(':');
+        writer.write(' ');
+    }
+
+    private static void writeIndent(ByteWriter writer, int indent) throws IOException {
+        for (int i = 0; i < indent; i++) {
+            writer.write(' ');
+            writer.write(' ');
+        }
+    }
+
+    /**
+     * Writes the UTF-8 encoding of <i>s</i> with every byte escaped, as <code>TextFormat.escapeText()</code> does.
+     */
+    private static void writeString(String s, ByteWriter writer) throws IOException {
+        writer.write('"');
+        int length = s.length();
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                writeEscaped(c, writer);
+            } else if (c < 0x800) {
+                writeEscaped(0xc0 | (c >> 6), writer);
+                writeEscaped(0x80 | (c & 0x3f), writer);
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                writeEscaped(0xf0 | (codePoint >> 18), writer);
+                writeEscaped(0x80 | ((codePoint >> 12) & 0x3f), writer);
+                writeEscaped(0x80 | ((codePoint >> 6) & 0x3f), writer);
+                writeEscaped(0x80 | (codePoint & 0x3f), writer);
+            } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                // Unpaired surrogates are replaced, as String.getBytes() does
+                writer.write('?');
+            } else {
+                writeEscaped(0xe0 | (c >> 12), writer);
+                writeEscaped(0x80 | ((c >> 6) & 0x3f), writer);
+                writeEscaped(0x80 | (c & 0x3f), writer);
+            }
+        }
+        writer.write('"');
+    }
+
+    private static void writeEscaped(int b, ByteWriter writer) throws IOException {
+        b &= 0xff;
+        switch (b) {
+            case 0x07:
+                writer.write('\\');
+                writer.write('a');
+                break;
+            case '\b':
+                writer.write('\\');
+                writer.write('b');
+                break;
+            case '\f':
+                writer.write('\\');
+                writer.write('f');
+                break;
+            case '\n':
+                writer.write('\\');
+                writer.write('n');
+                break;
+            case '\r':
+                writer.write('\\');
+                writer.write('r');
+                break;
+            case '\t':
+                writer.write('\\');
+                writer.write('t');
+                break;
+            case 0x0b:
+                writer.write('\\');
+                writer.write('v');
+                break;
+            case '\\':
+            case '\'':
+            case '"':
+                writer.write('\\');
+                writer.write(b);
+                break;
+            default:
+                if (b >= 0x20 && b < 0x80) {
+                    writer.write(b);
+                } else {
+                    writer.write('\\');
+                    writer.write('0' + ((b >>> 6) & 3));
+                    writer.write('0' + ((b >>> 3) & 7));
+                    writer.write('0' + (b & 7));
+                }
+        }
+    }
+}
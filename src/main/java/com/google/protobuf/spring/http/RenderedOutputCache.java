@@ -0,0 +1,76 @@
+package com.google.protobuf.spring.http;
+
+import com.google.protobuf.Message;
+import org.springframework.http.MediaType;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Encoded text renderings of <code>Message</code> instances, keyed by message identity and media type
+ * (including the charset), bounded by the total size of the cached bytes and evicted in LRU order.<br/>
+ * Since messages are immutable, a rendering stays valid as long as the same instance is written again;
+ * equal but distinct instances are rendered anew.
+ */
+class RenderedOutputCache {
+    private final long maxWeight;
+    private final LinkedHashMap<Key, byte[]> entries = new LinkedHashMap<Key, byte[]>(64, 0.75f, true);
+    private long weight;
+
+    RenderedOutputCache(long maxWeight) {
+        if (maxWeight <= 0) {
+            throw new IllegalArgumentException("Maximum weight must be positive, but was " + maxWeight);
+        }
+        this.maxWeight = maxWeight;
+    }
+
+    synchronized byte[] get(Message message, MediaType contentType) {
+        return entries.get(new Key(message, contentType));
+    }
+
+    synchronized void put(Message message, MediaType contentType, byte[] data) {
+        if (data.length > maxWeight) {
+            return;
+        }
+        byte[] previous = entries.put(new Key(message, contentType), data);
+        weight += data.length - (previous != null ? previous.length : 0);
+        Iterator<Map.Entry<Key, byte[]>> eldest = entries.entrySet().iterator();
+        while (weight > maxWeight && eldest.hasNext()) {
+            weight -= eldest.next().getValue().length;
+            eldest.remove();
+        }
+    }
+
+    synchronized long getWeight() {
+        return weight;
+    }
+
+    long getMaxWeight() {
+        return maxWeight;
+    }
+
+    private static final class Key {
+        private final Message message;
+        private final MediaType contentType;
+
+        private Key(Message message, MediaType contentType) {
+            this.message = message;
+            this.contentType = contentType;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return message == other.message && contentType.equals(other.contentType);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(message) + contentType.hashCode();
+        }
+    }
+}
@@ -2,48 +2,80 @@ package com.google.protobuf.spring.http.client;
 
 import com.google.protobuf.ExtensionRegistry;
 import com.google.protobuf.Message;
+import com.google.protobuf.spring.ExtensionRegistryCache;
 import com.google.protobuf.spring.ExtensionRegistryInitializer;
+import com.google.protobuf.spring.http.ContentEncoding;
+import com.google.protobuf.spring.http.MessageLimits;
+import com.google.protobuf.spring.http.MessageTooLargeException;
 import com.google.protobuf.spring.http.ProtobufHttpMessageConverter;
+import com.google.protobuf.spring.http.metrics.NoOpProtobufMetrics;
+import com.google.protobuf.spring.http.metrics.ProtobufMetrics;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpRequest;
 import org.springframework.http.client.ClientHttpRequestFactory;
 import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.client.HttpMessageConverterExtractor;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.ResponseExtractor;
 import org.springframework.web.client.RestTemplate;
 
 
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.lang.annotation.Annotation;
-import java.lang.reflect.Array;
 import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
 import java.net.*;
+import java.util.Collections;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  *
  */
-public abstract class AbstractClientHttpInvocationHandler implements ClientHttpInvocationHandler {
+public abstract class AbstractClientHttpInvocationHandler implements ClientHttpInvocationHandler, DisposableBean {
     private static final Logger log = Logger.getLogger(AbstractClientHttpInvocationHandler.class.getName());
 
     private RestTemplate restTemplate;
+    private ProtobufHttpMessageConverter messageConverter;
     private ClientHttpInvocationHandlerServiceConfigurator config;
+    private ExecutorService executor;
+    private PooledClientHttpRequestFactory sharedRequestFactory;
+    private RequestCoalescer requestCoalescer;
+    private ResponseCache responseCache;
+    private ProtobufMetrics metrics = NoOpProtobufMetrics.INSTANCE;
+    private String batchPath = DEFAULT_BATCH_PATH;
+    private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+    private final ThreadLocal<ServiceBatch> currentBatch = new ThreadLocal<ServiceBatch>();
 
-    private ExtensionRegistry extensionRegistry = ExtensionRegistry.newInstance();
-    private static final ConcurrentHashMap<Method, Class> methodReturnTypeCache = new ConcurrentHashMap<Method, Class>();
+    private final ExtensionRegistry extensionRegistry;
+    private static final ConcurrentHashMap<Method, Class<?>> methodReturnTypeCache = new ConcurrentHashMap<Method, Class<?>>();
+    private final ConcurrentHashMap<Method, ServiceInvocationPlan> invocationPlanCache = new ConcurrentHashMap<Method, ServiceInvocationPlan>();
+    private final ConcurrentHashMap<String, ServiceBulkhead> serviceBulkheads = new ConcurrentHashMap<String, ServiceBulkhead>();
 
     public static final TimeUnit DEFAULT_TIMEOUT_UNIT = TimeUnit.SECONDS;
+    public static final String DEFAULT_BATCH_PATH = "/batch";
+    public static final int DEFAULT_MAX_BATCH_SIZE = 200;
+    private static final String ACCEPTED_ENCODINGS = ContentEncoding.GZIP.getValue() + ", " + ContentEncoding.DEFLATE.getValue();
 
     static {
         try {
@@ -71,17 +103,189 @@ public abstract class AbstractClientHttpInvocationHandler implements ClientHttpI
                                                ClientHttpInvocationHandlerServiceConfigurator config,
                                                ExtensionRegistryInitializer registryInitializer) {
         if (factory == null) {
-            this.restTemplate = new RestTemplate();
+            this.sharedRequestFactory = SharedRequestFactory.acquire();
+            this.restTemplate = new RestTemplate(sharedRequestFactory);
         } else {
             this.restTemplate = new RestTemplate(factory);
         }
-        this.restTemplate.getMessageConverters().add(new ProtobufHttpMessageConverter(registryInitializer));
+        this.messageConverter = new ProtobufHttpMessageConverter(registryInitializer);
+        this.restTemplate.getMessageConverters().add(messageConverter);
         this.config = config;
-        if (registryInitializer != null) {
-            registryInitializer.initializeExtensionRegistry(extensionRegistry);
+        this.extensionRegistry = ExtensionRegistryCache.getExtensionRegistry(registryInitializer);
+    }
+
+    public ExecutorService getExecutor() {
+        return executor != null ? executor : DefaultExecutorHolder.EXECUTOR;
+    }
+
+    /**
+     * Sets the executor running the HTTP requests of service methods returning
+     * <code>ClientHttpResponseObjectFuture</code> or <code>Future</code>.<br/>
+     * By default a shared cached thread pool of daemon threads is used.
+     * @param executor executing the asynchronous requests.
+     * @see #newVirtualThreadPerTaskExecutor()
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Creates an executor starting a new virtual thread for each request, which suits
+     * fan-out callers issuing many concurrent blocking service calls.
+     * @return virtual thread per task executor.
+     * @throws IllegalStateException if the running JVM does not support virtual threads.
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("Virtual threads are not supported by the running JVM", e);
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to create a virtual thread per task executor", e);
         }
     }
 
+    /**
+     * Enables single-flight execution of identical concurrent calls to synchronous <code>GET</code> service methods
+     * returning a <code>Message</code>: calls with the same method, request URL and accepted content type made while
+     * such a call is in flight share its request and the parsed response.
+     * @param requestCoalescing <code>true</code> to coalesce identical calls, disabled by default.
+     */
+    public void setRequestCoalescing(boolean requestCoalescing) {
+        this.requestCoalescer = requestCoalescing ? new RequestCoalescer() : null;
+    }
+
+    /**
+     * @return coalescer of identical <code>GET</code> calls, <code>null</code> if request coalescing is disabled.
+     */
+    public RequestCoalescer getRequestCoalescer() {
+        return requestCoalescer;
+    }
+
+    /**
+     * Caches the responses of synchronous <code>GET</code> service methods returning a <code>Message</code>.<br/>
+     * Responses are kept for the <code>Cache-Control: max-age</code> of the service response; once expired, a
+     * response carrying an <code>ETag</code> is revalidated with <code>If-None-Match</code> and reused if the service
+     * answers <code>304 Not Modified</code>. Responses with <code>no-store</code>, or with neither <code>max-age</code>
+     * nor <code>ETag</code>, are not cached.
+     * @param responseCache storing the responses, <code>null</code> to disable caching, which is the default.
+     * @see LruResponseCache
+     */
+    public void setResponseCache(ResponseCache responseCache) {
+        this.responseCache = responseCache;
+    }
+
+    public ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    public ProtobufMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Reports per service the duration, errors and in-flight count of the service calls, as the
+     * {@link ProtobufMetrics.Stage#EXCHANGE} stage, the parsing and callbacks of future responses, and the
+     * messages read and written by the <code>ProtobufHttpMessageConverter</code> of the handler.<br/>
+     * Calls rejected by a bulkhead are counted as failed exchanges, calls answered from a fresh cached response
+     * are not measured.
+     * @param metrics receiving the measures, <code>null</code> to record nothing, which is the default.
+     * @see com.google.protobuf.spring.http.metrics.JmxProtobufMetrics
+     */
+    public void setMetrics(ProtobufMetrics metrics) {
+        this.metrics = metrics != null ? metrics : NoOpProtobufMetrics.INSTANCE;
+        messageConverter.setMetrics(metrics);
+    }
+
+    public MessageLimits getMessageLimits() {
+        return messageConverter.getMessageLimits();
+    }
+
+    /**
+     * Bounds the size and nesting of the response messages, whether converted by the
+     * <code>ProtobufHttpMessageConverter</code> of the handler or by {@link ClientHttpResponseObjectFuture#getObject()}.
+     * Larger responses fail with a {@link MessageTooLargeException}.
+     * @param messageLimits applied to every response, <code>null</code> for the defaults, which only limit nesting.
+     */
+    public void setMessageLimits(MessageLimits messageLimits) {
+        messageConverter.setMessageLimits(messageLimits);
+    }
+
+    ProtobufHttpMessageConverter getMessageConverter() {
+        return messageConverter;
+    }
+
+    public String getBatchPath() {
+        return batchPath;
+    }
+
+    /**
+     * @param batchPath appended to the service base URL to send the calls of a {@link ServiceBatch},
+     * <code>/batch</code> by default.
+     */
+    public void setBatchPath(String batchPath) {
+        this.batchPath = batchPath;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * @param maxBatchSize number of pending calls to a service after which a {@link ServiceBatch} sends them,
+     * 200 by default.
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("Maximum batch size must be positive, but was " + maxBatchSize);
+        }
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Opens a batch on the current thread: until it is executed, calls to service methods returning
+     * <code>ClientHttpResponseObjectFuture</code> or <code>Future</code> are collected and sent together, one
+     * HTTP request per service. Other calls are made right away.
+     * @return batch to be executed by the caller, typically in a <code>finally</code> block.
+     * @throws IllegalStateException if a batch is already open on the current thread.
+     */
+    public ServiceBatch beginBatch() {
+        if (currentBatch.get() != null) {
+            throw new IllegalStateException("A batch is already open on the current thread");
+        }
+        ServiceBatch batch = new ServiceBatch(this, maxBatchSize);
+        currentBatch.set(batch);
+        return batch;
+    }
+
+    void endBatch(ServiceBatch batch) {
+        if (currentBatch.get() == batch) {
+            currentBatch.remove();
+        }
+    }
+
+    ClientHttpRequestFactory getRequestFactory() {
+        return restTemplate.getRequestFactory();
+    }
+
+    /**
+     * Stops using the default {@link PooledClientHttpRequestFactory} shared by the handlers built without a
+     * <code>ClientHttpRequestFactory</code>, which closes its pooled connections and stops its idle connection
+     * evictor once the last of them is destroyed; a handler built afterwards creates a new one. A factory passed to
+     * the constructor is left to its owner.<br/>
+     * Handlers that are never destroyed keep the default factory alive, whose evictor runs on a daemon thread.
+     */
+    public synchronized void destroy() {
+        if (sharedRequestFactory != null) {
+            SharedRequestFactory.release(sharedRequestFactory);
+            sharedRequestFactory = null;
+        }
+    }
+
+    /**
+     * @return unmodifiable registry shared by all handlers and converters built with the same initializer.
+     * @see ExtensionRegistryCache
+     */
     protected ExtensionRegistry getExtensionRegistry() {
         return extensionRegistry;
     }
@@ -147,27 +351,136 @@ public abstract class AbstractClientHttpInvocationHandler implements ClientHttpI
      * @see ServiceRequest
      */
     public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-        ClientHttpRequestContext requestContext = createRequestContext(method, args);
+        ServiceInvocationPlan plan = getInvocationPlan(method);
+        ClientHttpRequestContext requestContext = createRequestContext(plan, args);
 
-        boolean returnResponseFuture = (Future.class.isAssignableFrom(method.getReturnType()));
-        boolean returnHttpResponseMessage = (ClientHttpResponse.class.isAssignableFrom(method.getReturnType()));
-        boolean returnHttpResponseObjectFuture = (ClientHttpResponseObjectFuture.class.isAssignableFrom(method.getReturnType()));
+        ServiceBatch batch = currentBatch.get();
+        if (batch != null && (plan.isReturnHttpResponseObjectFuture() || plan.isReturnResponseFuture())) {
+            return batch.add(plan, requestContext);
+        }
 
         // Special check, must be done before the result is available, to provide async behavior
-        if (returnHttpResponseObjectFuture) {
-            //return this.doHttpResponseObjectFuture(requestContext);
+        if (plan.isReturnHttpResponseObjectFuture()) {
+            return this.doHttpResponseObjectFuture(requestContext);
+        }
+
+        if (plan.isReturnResponseFuture()) {
+            return this.doResponseFuture(requestContext);
+        }
+
+        if (plan.isCacheable() && requestContext.getInputMessage() == null) {
+            return doCacheableObject(plan, requestContext);
+        }
+        return doInvoke(plan, requestContext, null, null, null);
+    }
+
+    /**
+     * Answers a cacheable call from the response cache if it holds a fresh response, otherwise requests it,
+     * sharing the request with identical in-flight calls if request coalescing is enabled.
+     */
+    private Object doCacheableObject(final ServiceInvocationPlan plan, final ClientHttpRequestContext requestContext) throws Exception {
+        final ResponseCache cache = responseCache;
+        final String cacheKey = cache != null ? createCacheKey(requestContext) : null;
+        final CachedResponse cached = cache != null ? cache.get(cacheKey) : null;
+        if (cached != null && cached.isFresh(System.currentTimeMillis())) {
+            return cached.getMessage();
         }
+        Callable<Object> call = new Callable<Object>() {
+            public Object call() throws Exception {
+                return doInvoke(plan, requestContext, cache, cacheKey, cached);
+            }
+        };
+        RequestCoalescer coalescer = requestCoalescer;
+        if (coalescer != null) {
+            return coalescer.execute(plan.getMethod(), requestContext.getRequestUrl(),
+                    requestContext.getResponseDesiredContentType(), call);
+        }
+        return call.call();
+    }
 
-        if (returnResponseFuture) {
-            //return this.doResponseFeature(requestContext);
+    private Object doInvoke(ServiceInvocationPlan plan, ClientHttpRequestContext requestContext,
+                            ResponseCache cache, String cacheKey, CachedResponse cached) throws URISyntaxException {
+        ProtobufMetrics metrics = this.metrics;
+        if (!metrics.isEnabled()) {
+            return doExchange(plan, requestContext, cache, cacheKey, cached);
         }
+        metrics.requestStarted(retrieveServiceName(requestContext));
+        long start = System.nanoTime();
+        try {
+            Object result = doExchange(plan, requestContext, cache, cacheKey, cached);
+            recordExchange(metrics, requestContext, start);
+            return result;
+        } catch (URISyntaxException e) {
+            recordExchangeError(metrics, requestContext);
+            throw e;
+        } catch (RuntimeException e) {
+            recordExchangeError(metrics, requestContext);
+            throw e;
+        } finally {
+            metrics.requestFinished(retrieveServiceName(requestContext));
+        }
+    }
 
-        // Special check, must be done before callback is invoked, to provide native response processing behavior
-        if (returnHttpResponseMessage) {
-            return this.doHttpResponse(requestContext);
+    private Object doExchange(ServiceInvocationPlan plan, ClientHttpRequestContext requestContext,
+                              ResponseCache cache, String cacheKey, CachedResponse cached) throws URISyntaxException {
+        ServiceBulkhead bulkhead = acquireBulkhead(requestContext);
+        try {
+            // Special check, must be done before callback is invoked, to provide native response processing behavior
+            if (plan.isReturnHttpResponseMessage()) {
+                return this.doHttpResponse(requestContext);
+            }
+
+            if (cache != null) {
+                return restTemplate.execute(new URI(requestContext.getRequestUrl()), requestContext.getRequestMethod(),
+                        new MessageRequestCallback(requestContext, cached != null ? cached.getETag() : null),
+                        new CachingResponseExtractor(requestContext, cache, cacheKey, cached));
+            }
+            return this.doObject(requestContext);
+        } finally {
+            releaseBulkhead(bulkhead);
         }
+    }
+
+    private static void recordExchange(ProtobufMetrics metrics, ClientHttpRequestContext requestContext, long start) {
+        metrics.record(ProtobufMetrics.Stage.EXCHANGE, retrieveServiceName(requestContext),
+                requestContext.getResponseDesiredContentType(), requestContext.getReturnObjectType(),
+                System.nanoTime() - start, -1);
+    }
 
-        return this.doObject(requestContext);
+    private static void recordExchangeError(ProtobufMetrics metrics, ClientHttpRequestContext requestContext) {
+        metrics.recordError(ProtobufMetrics.Stage.EXCHANGE, retrieveServiceName(requestContext),
+                requestContext.getResponseDesiredContentType(), requestContext.getReturnObjectType());
+    }
+
+    protected String createCacheKey(ClientHttpRequestContext requestContext) {
+        return requestContext.getReturnObjectType().getName() + ' ' + requestContext.getResponseDesiredContentType() +
+                ' ' + requestContext.getRequestUrl();
+    }
+
+    /**
+     * @param headers of the service response.
+     * @return seconds the response may be cached for, 0 if it must be revalidated, -1 if it must not be stored.
+     */
+    static long retrieveMaxAge(HttpHeaders headers) {
+        String cacheControl = headers.getCacheControl();
+        if (!StringUtils.hasText(cacheControl)) {
+            return 0;
+        }
+        long maxAge = 0;
+        for (String directive : StringUtils.tokenizeToStringArray(cacheControl, ",")) {
+            if ("no-store".equalsIgnoreCase(directive)) {
+                return -1;
+            } else if ("no-cache".equalsIgnoreCase(directive)) {
+                return 0;
+            } else if (directive.regionMatches(true, 0, "max-age=", 0, 8)) {
+                try {
+                    maxAge = Math.max(0, Long.parseLong(directive.substring(8).trim()));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return maxAge;
     }
 
     public ClientHttpInvocationHandlerServiceConfigurator getHttpInvocationHandlerServiceConfigurator() {
@@ -249,18 +562,28 @@ public abstract class AbstractClientHttpInvocationHandler implements ClientHttpI
         }
     }
 
-    public static Class retrieveHttpResponseObjectFutureGenericsType(Method method) {
+    /**
+     * @param requestContext of a service call.
+     * @return <code>ServiceRequest.name</code> of the invoked method, <code>null</code> if the context is not a
+     * {@link ServiceClientHttpRequestContext}.
+     */
+    static String retrieveServiceName(ClientHttpRequestContext requestContext) {
+        return requestContext instanceof ServiceClientHttpRequestContext ?
+                ((ServiceClientHttpRequestContext) requestContext).getServiceName() : null;
+    }
+
+    public static Class<?> retrieveHttpResponseObjectFutureGenericsType(Method method) {
         if (ClientHttpResponseObjectFuture.class != method.getReturnType()) {
             throw new IllegalArgumentException("Method return type MUST be of " +
                     ClientHttpResponseObjectFuture.class.getName() + ", instead it is " + method.getReturnType().getName());
         }
-        Class returnTypeClass = methodReturnTypeCache.get(method);
+        Class<?> returnTypeClass = methodReturnTypeCache.get(method);
         if (returnTypeClass == null) {
             Assert.isInstanceOf(ParameterizedType.class, method.getGenericReturnType());
             ParameterizedType returnType = ((ParameterizedType) method.getGenericReturnType());
             Assert.state(returnType.getActualTypeArguments().length == 1);
 
-            returnTypeClass = (Class) returnType.getActualTypeArguments()[0];
+            returnTypeClass = (Class<?>) returnType.getActualTypeArguments()[0];
             methodReturnTypeCache.put(method, returnTypeClass);
         }
         return returnTypeClass;
@@ -279,34 +602,183 @@ public abstract class AbstractClientHttpInvocationHandler implements ClientHttpI
         return null;
         */
     	
-    	HttpHeaders requestHeaders = new HttpHeaders();
-    	java.util.List<MediaType> mediaTypes = java.util.Arrays.asList(new MediaType[] {requestContext.getResponseDesiredContentType()});
-    	requestHeaders.setAccept(mediaTypes);
-//    	requestHeaders.set("Connection", "close");
-    	HttpEntity<?> requestEntity = new HttpEntity<Object>(requestHeaders);
+    	if (requestContext.getInputMessage() != null) {
+    		Class<?> returnType = requestContext.getReturnObjectType();
+    		ResponseExtractor<?> responseExtractor = (Void.TYPE == returnType || Void.class == returnType) ? null :
+    				createResponseExtractor(returnType);
+    		return restTemplate.execute(new URI(requestContext.getRequestUrl()), requestContext.getRequestMethod(),
+    				new MessageRequestCallback(requestContext), responseExtractor);
+    	}
+
+    	HttpEntity<?> requestEntity = new HttpEntity<Object>(createRequestHeaders(requestContext));
     	ResponseEntity<?> response = restTemplate.exchange(new URI(requestContext.getRequestUrl()), requestContext.getRequestMethod(), requestEntity, requestContext.getReturnObjectType());
     	return response.getBody();
         
         
     }
 
+    /**
+     * Submits the HTTP request to the executor and returns immediately.<br/>
+     * The slot of the service bulkhead is taken by the submitted task, so callers never wait for a slot; a call
+     * rejected by the bulkhead fails its future with a {@link ServiceBulkheadRejectedException}.
+     * The response is converted into the generic type of the returned future by
+     * {@link ClientHttpResponseObjectFuture#getObject()}.
+     * @param requestContext describing the request.
+     * @return future completing with the <code>ClientHttpResponse</code>.
+     */
+    public ClientHttpResponseObjectFuture<?> doHttpResponseObjectFuture(final ClientHttpRequestContext requestContext) {
+        final ProtobufMetrics metrics = this.metrics;
+        ResponseFutureTask responseFuture = new ResponseFutureTask(new Callable<ClientHttpResponse>() {
+            public ClientHttpResponse call() throws Exception {
+                ServiceBulkhead bulkhead;
+                try {
+                    bulkhead = acquireBulkhead(requestContext);
+                } catch (ServiceBulkheadRejectedException e) {
+                    recordExchangeError(metrics, requestContext);
+                    throw e;
+                }
+                if (!metrics.isEnabled()) {
+                    try {
+                        return executeRequest(requestContext);
+                    } finally {
+                        releaseBulkhead(bulkhead);
+                    }
+                }
+                metrics.requestStarted(retrieveServiceName(requestContext));
+                long start = System.nanoTime();
+                try {
+                    ClientHttpResponse response = executeRequest(requestContext);
+                    recordExchange(metrics, requestContext, start);
+                    return response;
+                } catch (Exception e) {
+                    recordExchangeError(metrics, requestContext);
+                    throw e;
+                } finally {
+                    metrics.requestFinished(retrieveServiceName(requestContext));
+                    releaseBulkhead(bulkhead);
+                }
+            }
+        });
+        getExecutor().execute(responseFuture);
+        return new ExecutorClientHttpResponseObjectFuture<Object>(requestContext.getReturnObjectType(),
+                responseFuture, requestContext, messageConverter);
+    }
+
+    public Future<ClientHttpResponse> doResponseFuture(ClientHttpRequestContext requestContext) {
+        return doHttpResponseObjectFuture(requestContext);
+    }
+
+    /**
+     * Executes the HTTP request on the calling thread, without converting the response.
+     * @param requestContext describing the request.
+     * @return opened <code>ClientHttpResponse</code>.
+     * @throws IOException in case of I/O errors.
+     * @throws URISyntaxException if the request URL is not valid.
+     */
+    protected ClientHttpResponse executeRequest(ClientHttpRequestContext requestContext) throws IOException, URISyntaxException {
+        ClientHttpRequest request = restTemplate.getRequestFactory().createRequest(
+                new URI(requestContext.getRequestUrl()), requestContext.getRequestMethod());
+        new MessageRequestCallback(requestContext).doWithRequest(request);
+        return request.execute();
+    }
+
+    protected HttpHeaders createRequestHeaders(ClientHttpRequestContext requestContext) {
+    	HttpHeaders requestHeaders = new HttpHeaders();
+    	requestHeaders.setAccept(Collections.singletonList(requestContext.getResponseDesiredContentType()));
+    	if (Message.class.isAssignableFrom(requestContext.getReturnObjectType())) {
+    		// ProtobufHttpMessageConverter and ClientHttpResponseObjectFuture decode compressed responses
+    		requestHeaders.set(ContentEncoding.ACCEPT_ENCODING, ACCEPTED_ENCODINGS);
+    	}
+    	return requestHeaders;
+    }
+
+    private <T> ResponseExtractor<T> createResponseExtractor(Class<T> returnType) {
+        return new HttpMessageConverterExtractor<T>(returnType, restTemplate.getMessageConverters());
+    }
+
     public ClientHttpResponse doHttpResponse(ClientHttpRequestContext requestContext) throws URISyntaxException {
        return restTemplate.getForEntity(new URI(requestContext.getRequestUrl()),
                ClientHttpResponse.class).getBody();
     }
 
     protected ClientHttpRequestContext createRequestContext(Method method, Object[] args) throws MalformedURLException {
-        return new RequestContext(method, args, getExtensionRegistry(),
-                getHttpInvocationHandlerServiceConfigurator());
+        return createRequestContext(getInvocationPlan(method), args);
+    }
+
+    ClientHttpRequestContext createRequestContext(ServiceInvocationPlan plan, Object[] args) {
+        return new RequestContext(plan, args, getExtensionRegistry(), messageConverter.getMessageLimits());
     }
 
-    private void validateRequestConditions(Method method, MediaType contentType) {
-        if (method.getReturnType() == String.class &&
-                contentType == ProtobufHttpMessageConverter.PROTOBUF) {
-            throw new IllegalArgumentException("Only text content types can be used when the return type is String, but not " + contentType);
+    /**
+     * Builds the invocation plans of all <code>ServiceRequest</code> annotated methods of the <i>serviceInterface</i>
+     * up front, typically right after the proxy has been created, so the first calls do not pay for the
+     * annotation scanning and configuration lookups.
+     * @param serviceInterface interface implemented by the service proxy.
+     * @throws MalformedURLException if a configured service base URL is not valid.
+     */
+    public void prepareInvocationPlans(Class<?> serviceInterface) throws MalformedURLException {
+        for (Method method : serviceInterface.getMethods()) {
+            if (method.isAnnotationPresent(ServiceRequest.class)) {
+                getInvocationPlan(method);
+            }
+        }
+    }
+
+    /**
+     * @param serviceName <code>ServiceRequest.name</code> of the service.
+     * @return bulkhead of the service, or <code>null</code> if the service calls are not limited.
+     */
+    public ServiceBulkhead getServiceBulkhead(String serviceName) {
+        return serviceBulkheads.get(serviceName);
+    }
+
+    /**
+     * Takes an in-flight slot of the bulkhead of the service being called, if the service has one.
+     * @param requestContext of the service call.
+     * @return the bulkhead the slot was taken from, <code>null</code> if the service calls are not limited.
+     * @throws ServiceBulkheadRejectedException if the call is rejected by the bulkhead.
+     */
+    protected ServiceBulkhead acquireBulkhead(ClientHttpRequestContext requestContext) {
+        String serviceName = retrieveServiceName(requestContext);
+        ServiceBulkhead bulkhead = serviceName != null ? serviceBulkheads.get(serviceName) : null;
+        if (bulkhead != null) {
+            bulkhead.acquire(requestContext.getTimeout(), DEFAULT_TIMEOUT_UNIT);
+        }
+        return bulkhead;
+    }
+
+    protected void releaseBulkhead(ServiceBulkhead bulkhead) {
+        if (bulkhead != null) {
+            bulkhead.release();
         }
     }
 
+    private void registerBulkhead(String serviceName) {
+        if (serviceBulkheads.containsKey(serviceName) || !(config instanceof ServiceBulkheadConfigurator)) {
+            return;
+        }
+        ServiceBulkheadConfigurator bulkheadConfig = (ServiceBulkheadConfigurator) config;
+        int maxConcurrentRequests = bulkheadConfig.getServiceMaxConcurrentRequests(serviceName);
+        if (maxConcurrentRequests > 0) {
+            serviceBulkheads.putIfAbsent(serviceName, new ServiceBulkhead(serviceName, maxConcurrentRequests,
+                    bulkheadConfig.getServiceMaxQueuedRequests(serviceName)));
+        }
+    }
+
+    ServiceInvocationPlan getInvocationPlan(Method method) throws MalformedURLException {
+        ServiceInvocationPlan plan = invocationPlanCache.get(method);
+        if (plan == null) {
+            plan = new ServiceInvocationPlan(method, getHttpInvocationHandlerServiceConfigurator());
+            if (restTemplate.getRequestFactory() instanceof PooledClientHttpRequestFactory) {
+                ((PooledClientHttpRequestFactory) restTemplate.getRequestFactory()).registerService(
+                        plan.getServiceName(), plan.getBaseUrl(), plan.getTimeout());
+            }
+            registerBulkhead(plan.getServiceName());
+            invocationPlanCache.put(method, plan);
+        }
+        return plan;
+    }
+
     private ResponseCallback retrieveCallback(Object[] args) {
         if (args == null)
             return null;
@@ -321,121 +793,186 @@ public abstract class AbstractClientHttpInvocationHandler implements ClientHttpI
 //        return new String(Base64.encodeBase64(msg.toByteArray()), "UTF-8");
 //    }
 
-    private String generateRequestUrl(Object[] args, RequestParam[] paramNames, String pattern) {
-        return generateRequestUrl(args, paramNames, pattern, false);
+    /**
+     * Writes the request headers and the <code>Message</code> payload, if any, in the format of
+     * <code>ServiceRequest.contentType</code>. Binary protobuf payloads are streamed straight into the connection by a
+     * {@link MessageClientHttpRequest}, other requests are written through the <code>ProtobufHttpMessageConverter</code>.
+     */
+    private class MessageRequestCallback implements RequestCallback {
+        private final ClientHttpRequestContext requestContext;
+        private final String ifNoneMatch;
+
+        private MessageRequestCallback(ClientHttpRequestContext requestContext) {
+            this(requestContext, null);
+        }
+
+        private MessageRequestCallback(ClientHttpRequestContext requestContext, String ifNoneMatch) {
+            this.requestContext = requestContext;
+            this.ifNoneMatch = ifNoneMatch;
+        }
+
+        public void doWithRequest(ClientHttpRequest request) throws IOException {
+            request.getHeaders().putAll(createRequestHeaders(requestContext));
+            if (ifNoneMatch != null) {
+                request.getHeaders().setIfNoneMatch(ifNoneMatch);
+            }
+            Message msg = requestContext.getInputMessage();
+            if (msg == null) {
+                return;
+            }
+            MediaType contentType = requestContext.getResponseDesiredContentType();
+            if (request instanceof MessageClientHttpRequest &&
+                    ProtobufHttpMessageConverter.PROTOBUF.getType().equals(contentType.getType()) &&
+                    ProtobufHttpMessageConverter.PROTOBUF.getSubtype().equals(contentType.getSubtype())) {
+                request.getHeaders().setContentType(contentType);
+                ((MessageClientHttpRequest) request).setMessageBody(msg, contentType);
+            } else {
+                messageConverter.write(msg, contentType, request);
+            }
+        }
     }
-    private String generateRequestUrl(Object[] args, RequestParam[] paramNames, String pattern, boolean patternOnly) {
-        if (pattern == null)
-            pattern = "";
-        if (args == null)
-            return pattern;
-        if (!patternOnly)
-            pattern = pattern + "?";
-        for (int i = 0; i < args.length; i++) {
-            if (paramNames[i] == null) {
-                if (args[i] == null || !Message.class.isAssignableFrom(args[i].getClass())) {
-                    // TODO: Possibly throw an exception instead!
-                    log.log(Level.WARNING, "Argument at index " + i + " does not have a ParamName annotation and will be ignored!");
-                    continue;
+
+    /**
+     * Converts the response of a cacheable call, storing it into the response cache, or reuses the cached
+     * <code>Message</code> when the service answered <code>304 Not Modified</code>.
+     */
+    private class CachingResponseExtractor implements ResponseExtractor<Object> {
+        private final ResponseCache cache;
+        private final String cacheKey;
+        private final CachedResponse cached;
+        private final ResponseExtractor<?> delegate;
+
+        private CachingResponseExtractor(ClientHttpRequestContext requestContext, ResponseCache cache,
+                                         String cacheKey, CachedResponse cached) {
+            this.cache = cache;
+            this.cacheKey = cacheKey;
+            this.cached = cached;
+            this.delegate = createResponseExtractor(requestContext.getReturnObjectType());
+        }
+
+        public Object extractData(ClientHttpResponse response) throws IOException {
+            HttpHeaders headers = response.getHeaders();
+            long maxAge = retrieveMaxAge(headers);
+            long expiresAt = System.currentTimeMillis() + maxAge * 1000;
+            if (cached != null && response.getStatusCode() == HttpStatus.NOT_MODIFIED) {
+                if (maxAge >= 0) {
+                    cache.put(cacheKey, cached.refresh(headers.getETag(), expiresAt));
+                } else {
+                    cache.remove(cacheKey);
                 }
+                return cached.getMessage();
             }
-            if (args[i] == null && paramNames[i].required()) {
-                throw new IllegalArgumentException(paramNames[i].value() + " is a required parameter!!!");
+
+            Object body = delegate.extractData(response);
+            String eTag = headers.getETag();
+            if (body instanceof Message && maxAge >= 0 && (maxAge > 0 || eTag != null)) {
+                cache.put(cacheKey, new CachedResponse((Message) body, eTag, expiresAt));
+            } else if (cached != null) {
+                cache.remove(cacheKey);
             }
-            if (args[i] != null) {
-                if (ResponseCallback.class.isAssignableFrom(args[i].getClass())) {
-                    continue;
-                }
-                String token = "${" + paramNames[i].value() + "}";
-                if (pattern.contains(token)) {
-                    if (args[i].getClass().isArray()) {
-                        throw new IllegalArgumentException("An array can not be used as an argument for " + token + " as spart of the URL path");
-                    }
-                    pattern = pattern.replace(token, urlEncode(args[i].toString()));
-                } else if (!patternOnly && args[i].getClass().isArray()) {
-                    for (int j = 0; j < Array.getLength(args[i]); j++) {
-                        if (Array.get(args[i], j) == null) {
-                            continue;
-                        }
-                        pattern = pattern + "&" + paramNames[i].value() + "=" + urlEncode(Array.get(args[i], j).toString());
-                    }
-                } else if (!patternOnly) {
-                    pattern = pattern + "&" + paramNames[i].value() + "=" + urlEncode(args[i].toString());
-                }
+            return body;
+        }
+    }
+
+    /**
+     * Runs an asynchronous request, closing the response arriving after the future was cancelled, as nobody is
+     * left to read and close it.
+     */
+    private static class ResponseFutureTask extends FutureTask<ClientHttpResponse> {
+
+        private ResponseFutureTask(Callable<ClientHttpResponse> callable) {
+            super(callable);
+        }
+
+        @Override
+        protected void set(ClientHttpResponse response) {
+            super.set(response);
+            // Setting the result and cancelling exclude each other, once cancelled the response is not set
+            if (isCancelled() && response != null) {
+                response.close();
             }
         }
-        return pattern;
     }
 
-    private String urlEncode(String string) {
-        try {
-            return URLEncoder.encode(string, "UTF-8");
-        } catch (UnsupportedEncodingException e) {
-            throw new RuntimeException("Unable to convert " + string + " to UTF-8", e);
+    /**
+     * Default request factory of the handlers built without one, created by the first of them and destroyed with the
+     * last one.
+     */
+    private static class SharedRequestFactory {
+        private static PooledClientHttpRequestFactory factory;
+        private static int users;
+
+        private static synchronized PooledClientHttpRequestFactory acquire() {
+            if (factory == null) {
+                factory = new PooledClientHttpRequestFactory();
+            }
+            users++;
+            return factory;
         }
+
+        private static synchronized void release(PooledClientHttpRequestFactory released) {
+            if (released == factory && --users == 0) {
+                factory.destroy();
+                factory = null;
+            }
+        }
+    }
+
+    private static class DefaultExecutorHolder {
+        private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger();
+
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "protobuf-http-client-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
     }
 
-    public class RequestContext implements ClientHttpRequestContext {
-        private Class returnType;
+    public class RequestContext implements ServiceClientHttpRequestContext {
+        private Class<?> returnType;
         private String url;
         private MediaType responseDesiredContentType;
         private HttpMethod requestMethod;
         private Message msg;
+        private String serviceName;
         private String serviceIdentifier;
         private String serviceIdentifierHeaderName;
         private int timeout = 30;
         private ResponseCallback callback;
         private ExtensionRegistry extensionRegistry;
+        private MessageLimits messageLimits;
 
-        private RequestContext(Method method, Object[] args, ExtensionRegistry extensionRegistry,
-                               ClientHttpInvocationHandlerServiceConfigurator config) throws MalformedURLException {
+        private RequestContext(ServiceInvocationPlan plan, Object[] args, ExtensionRegistry extensionRegistry,
+                               MessageLimits messageLimits) {
             this.extensionRegistry = extensionRegistry;
-            RequestParam[] paramNames = retrieveRequestParams(method);
-            ServiceRequest service = method.getAnnotation(ServiceRequest.class);
+            this.messageLimits = messageLimits;
             callback = retrieveCallback(args);
-
-            if (service == null)
-                throw new RuntimeException("ServiceName annotation must be present on the method!");
-
-            String serviceName = service.name();
-
-            String baseUrl = config.getServiceBaseUrl(serviceName);
-            Assert.notNull(baseUrl, "Base URL for the Service " + serviceName + " is not found in config!");
-            String pattern = service.pattern();
-            if (config.getServiceTimeoutInSeconds(serviceName) > 0) {
-                timeout = config.getServiceTimeoutInSeconds(serviceName);
-            }
-
-            requestMethod = retrieveMethodType(method.getName());
-            if (service.method() != null) {
-                requestMethod = service.method();
-            }
-            msg = retrieveRequestBody(method, args);
-            url = baseUrl;
+            timeout = plan.getTimeout();
+            requestMethod = plan.getRequestMethod();
+            msg = plan.retrieveRequestBody(args);
             if (msg != null) {
-                if (StringUtils.hasText(pattern)) {
+                if (StringUtils.hasText(plan.getPattern())) {
                     // TODO: Convert MSG to patternized URL
                     // log.warn("A Message argument can't be converted into an Absolute URL Path Pattern: " + pattern);
                     // log.debug("Message Object: " + args[0]);
-                    url = url + generateRequestUrl(args, paramNames, pattern, true);
+                    url = plan.getUrlTemplate().expand(args, true);
+                } else {
+                    url = plan.getBaseUrl();
                 }
             } else {
-                url = url + generateRequestUrl(args, paramNames, pattern);
+                url = plan.getUrlTemplate().expand(args, false);
             }
 
-            responseDesiredContentType = MediaType.parseMediaType(service.contentType());
-            serviceIdentifier = new URL(baseUrl).getPath();
+            responseDesiredContentType = plan.getResponseDesiredContentType();
+            serviceName = plan.getServiceName();
+            serviceIdentifier = plan.getServiceIdentifier();
             serviceIdentifierHeaderName = "REST" + "NAME"; //TODO: Come up with a header name
-            validateRequestConditions(method, responseDesiredContentType);
-
-            if (ClientHttpResponseObjectFuture.class.isAssignableFrom(method.getReturnType())) {
-                returnType = retrieveHttpResponseObjectFutureGenericsType(method);
-            } else {
-                returnType = method.getReturnType();
-            }
+            returnType = plan.getReturnType();
         }
 
-        public Class getReturnObjectType() {
+        public Class<?> getReturnObjectType() {
             return returnType;
         }
 
@@ -459,6 +996,10 @@ public abstract class AbstractClientHttpInvocationHandler implements ClientHttpI
             return serviceIdentifier;
         }
 
+        public String getServiceName() {
+            return serviceName;
+        }
+
         public String getServiceIdentifierHeaderName() {
             return serviceIdentifierHeaderName;
         }
@@ -482,6 +1023,10 @@ public abstract class AbstractClientHttpInvocationHandler implements ClientHttpI
             return extensionRegistry;
         }
 
+        public MessageLimits getMessageLimits() {
+            return messageLimits;
+        }
+
         private class CallbackChain implements ResponseCallback {
             private ResponseCallback currentCallback;
             private ResponseCallback nextCallback;
@@ -0,0 +1,48 @@
+package com.google.protobuf.spring.http.client;
+
+import com.google.protobuf.spring.http.BatchProtos.BatchResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * <code>ClientHttpResponse</code> of a single call of a {@link ServiceBatch}, read from its <code>BatchResponse</code>.
+ */
+final class BatchClientHttpResponse implements ClientHttpResponse {
+    private final BatchResponse response;
+    private HttpHeaders headers;
+
+    BatchClientHttpResponse(BatchResponse response) {
+        this.response = response;
+    }
+
+    public HttpStatus getStatusCode() throws IOException {
+        return HttpStatus.valueOf(response.getStatus());
+    }
+
+    public String getStatusText() throws IOException {
+        return getStatusCode().name();
+    }
+
+    public HttpHeaders getHeaders() {
+        if (headers == null) {
+            headers = new HttpHeaders();
+            if (response.hasContentType()) {
+                headers.setContentType(MediaType.parseMediaType(response.getContentType()));
+            }
+            headers.setContentLength(response.getBody().size());
+        }
+        return headers;
+    }
+
+    public InputStream getBody() throws IOException {
+        return response.getBody().newInput();
+    }
+
+    public void close() {
+    }
+}
@@ -0,0 +1,56 @@
+package com.google.protobuf.spring.http.client;
+
+import com.google.protobuf.Message;
+
+/**
+ * Immutable <code>Message</code> response held by a {@link ResponseCache}, with the validator and expiry
+ * time taken from the response headers.
+ */
+public final class CachedResponse {
+    private final Message message;
+    private final String eTag;
+    private final long expiresAt;
+    private final int weight;
+
+    /**
+     * @param message response body.
+     * @param eTag <code>ETag</code> header value, <code>null</code> if the response cannot be revalidated.
+     * @param expiresAt time in milliseconds after which the response must be revalidated.
+     */
+    public CachedResponse(Message message, String eTag, long expiresAt) {
+        this.message = message;
+        this.eTag = eTag;
+        this.expiresAt = expiresAt;
+        this.weight = message.getSerializedSize();
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    public String getETag() {
+        return eTag;
+    }
+
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    /**
+     * @return size of the binary serialization of the message, the cost of keeping the response in the cache.
+     */
+    public int getWeight() {
+        return weight;
+    }
+
+    public boolean isFresh(long now) {
+        return now < expiresAt;
+    }
+
+    /**
+     * @return a copy of this response valid until <i>expiresAt</i>, used when a revalidation returned 304.
+     */
+    public CachedResponse refresh(String eTag, long expiresAt) {
+        return new CachedResponse(message, eTag != null ? eTag : this.eTag, expiresAt);
+    }
+}
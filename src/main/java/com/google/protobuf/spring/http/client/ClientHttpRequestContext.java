@@ -11,7 +11,7 @@ import org.springframework.http.MediaType;
  *  service interface call into an http request
  */
 public interface ClientHttpRequestContext {
-    Class getReturnObjectType();
+    Class<?> getReturnObjectType();
 
     String getRequestUrl();
 
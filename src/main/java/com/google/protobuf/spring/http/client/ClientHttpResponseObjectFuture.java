@@ -1,15 +1,23 @@
 package com.google.protobuf.spring.http.client;
 
-import com.google.protobuf.ExtensionRegistry;
+import com.google.protobuf.spring.MessageDefaultInstanceRegistry;
+import com.google.protobuf.spring.http.ContentEncoding;
+import com.google.protobuf.spring.http.MessageTooLargeException;
 import com.google.protobuf.spring.http.ProtobufHttpMessageConverter;
+import com.google.protobuf.spring.http.metrics.NoOpProtobufMetrics;
+import com.google.protobuf.spring.http.metrics.ProtobufMetrics;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpInputMessage;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.client.ClientHttpResponse;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.lang.reflect.Method;
+import java.io.PushbackInputStream;
+import java.nio.charset.Charset;
 import java.util.concurrent.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -23,37 +31,55 @@ public abstract class ClientHttpResponseObjectFuture<T> implements Future<Client
     private ResponseCallback responseCallback;
     private final Future responseFuture;
     private int timeout;
-
-    private ExtensionRegistry extensionRegistry = ExtensionRegistry.newInstance();
-
-    private static final ConcurrentHashMap<Class, Method> parseFromMethodCache = new ConcurrentHashMap<Class, Method>();
-    private static final ConcurrentHashMap<Class, Method> defaultInstanceMethodCache = new ConcurrentHashMap<Class, Method>();
+    private final String serviceName;
+    private final ProtobufMetrics metrics;
+    private final ProtobufHttpMessageConverter messageConverter;
 
     private Object convertedObject;
 
-    private static boolean isProtobuf23;
-    private static Class extensionRegistryClass;
+    public ClientHttpResponseObjectFuture(Class<? extends T> type,
+                                    Future responseFuture,
+                                    ClientHttpRequestContext requestContext) {
+        this(type, responseFuture, requestContext, (ProtobufMetrics) null);
+    }
 
-    static {
-        try {
-            extensionRegistryClass = Class.forName("com.google.protobuf.ExtensionRegistryLite");
-            isProtobuf23 = true;
-        } catch (ClassNotFoundException e) {
-            extensionRegistryClass = com.google.protobuf.ExtensionRegistry.class;
-            isProtobuf23 = false;
-        }
+    /**
+     * @param metrics receiving the duration of the response callback and of the response parsing,
+     * <code>null</code> to record nothing.
+     */
+    public ClientHttpResponseObjectFuture(Class<? extends T> type,
+                                    Future responseFuture,
+                                    ClientHttpRequestContext requestContext,
+                                    ProtobufMetrics metrics) {
+        this(type, responseFuture, requestContext, createMessageConverter(requestContext, metrics));
     }
 
+    /**
+     * @param messageConverter reading the response in the format given by its <code>Content-Type</code>, like the
+     * synchronous calls do; its metrics also receive the duration of the response callback.
+     */
     public ClientHttpResponseObjectFuture(Class<? extends T> type,
                                     Future responseFuture,
-                                    ClientHttpRequestContext requestContext) {
+                                    ClientHttpRequestContext requestContext,
+                                    ProtobufHttpMessageConverter messageConverter) {
         this.type = type;
+        this.serviceName = AbstractClientHttpInvocationHandler.retrieveServiceName(requestContext);
+        this.messageConverter = messageConverter;
+        this.metrics = messageConverter.getMetrics();
         this.responseCallback = requestContext.getResponseCallback();
         this.responseFuture = responseFuture;
         this.timeout = requestContext.getTimeout();
-        if (requestContext.getExtensionRegistry() != null) {
-            this.extensionRegistry = requestContext.getExtensionRegistry();
+    }
+
+    private static ProtobufHttpMessageConverter createMessageConverter(ClientHttpRequestContext requestContext,
+                                                                       ProtobufMetrics metrics) {
+        ProtobufHttpMessageConverter messageConverter =
+                ProtobufHttpMessageConverter.forExtensionRegistry(requestContext.getExtensionRegistry());
+        messageConverter.setMetrics(metrics);
+        if (requestContext instanceof ServiceClientHttpRequestContext) {
+            messageConverter.setMessageLimits(((ServiceClientHttpRequestContext) requestContext).getMessageLimits());
         }
+        return messageConverter;
     }
 
     public boolean cancel(boolean mayInterruptIfRunning) {
@@ -85,23 +111,56 @@ public abstract class ClientHttpResponseObjectFuture<T> implements Future<Client
         return getObject(getTimeout(), AbstractClientHttpInvocationHandler.DEFAULT_TIMEOUT_UNIT);
     }
 
+    /**
+     * Waits for the response and converts it, closing the response once done.<br/>
+     * A call not answered within the <i>timeout</i> is cancelled, closing its response if it arrives later.
+     */
     @SuppressWarnings({"unchecked"})
     public T getObject(long timeout, TimeUnit unit) throws ExecutionException, TimeoutException, InterruptedException, IOException {
-        ClientHttpResponse response = get(timeout, unit);
-        if (responseCallback != null)
-            responseCallback.doWithResponse(response);
+        ClientHttpResponse response;
+        try {
+            response = get(timeout, unit);
+        } catch (TimeoutException e) {
+            cancel(true);
+            throw e;
+        }
+        try {
+            if (responseCallback != null)
+                doWithResponse(response);
 
-        if (response.getStatusCode().compareTo(HttpStatus.MULTIPLE_CHOICES) >= 0) {
-            throw new HttpClientInvocationResponseException(response);
-        } else {
-            return (T) convertResponseToObject(type, response);
+            if (response.getStatusCode().compareTo(HttpStatus.MULTIPLE_CHOICES) >= 0) {
+                throw new HttpClientInvocationResponseException(response);
+            } else {
+                return (T) convertResponseToObject(type, response);
+            }
+        } finally {
+            response.close();
         }
     }
 
+    private void doWithResponse(ClientHttpResponse response) throws IOException {
+        if (!metrics.isEnabled()) {
+            responseCallback.doWithResponse(response);
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            responseCallback.doWithResponse(response);
+        } catch (IOException e) {
+            metrics.recordError(ProtobufMetrics.Stage.CALLBACK, serviceName, null, type);
+            throw e;
+        } catch (RuntimeException e) {
+            metrics.recordError(ProtobufMetrics.Stage.CALLBACK, serviceName, null, type);
+            throw e;
+        }
+        metrics.record(ProtobufMetrics.Stage.CALLBACK, serviceName, null, type, System.nanoTime() - start, -1);
+    }
+
     protected Future getInnerFuture() {
         return responseFuture;
     }
 
+    @SuppressWarnings({"unchecked"})
     private Object convertResponseToObject(Class returnType, ClientHttpResponse response) {
         if (log.isLoggable(Level.FINE)) {
             log.log(Level.FINE, "Converting response to " + returnType);
@@ -115,33 +174,81 @@ public abstract class ClientHttpResponseObjectFuture<T> implements Future<Client
         }
         try {
             if (String.class == returnType) {
-                convertedObject = ProtobufHttpMessageConverter.convertInputStreamToString(response.getBody());
+                MediaType contentType = response.getHeaders().getContentType();
+                Charset charset = contentType != null && contentType.getCharSet() != null ?
+                        contentType.getCharSet() : ProtobufHttpMessageConverter.DEFAULT_CHARSET;
+                InputStream body = response.getBody();
+                InputStream decoded = decodeBody(response, body, returnType);
+                try {
+                    convertedObject = ProtobufHttpMessageConverter.convertInputStreamToString(
+                            messageConverter.getMessageLimits().limit(decoded, returnType), charset);
+                } finally {
+                    // Returns the pooled Inflater whether the body was read or not
+                    if (decoded != null && decoded != body) {
+                        decoded.close();
+                    }
+                }
                 return convertedObject;
             }
+        } catch (MessageTooLargeException e) {
+            throw e;
         } catch (Exception e) {
             throw new RuntimeException("Unable to convert response to String object", e);
         }
 
         try {
+            // Emptiness is checked by reading ahead one byte, available() can not tell an empty body from one
+            // whose bytes have not arrived yet
             InputStream body = response.getBody();
-            if (body != null && body.available() > 0) {
-                Method m = parseFromMethodCache.get(returnType);
-                if (m == null) {
-                    m = returnType.getMethod("parseFrom", InputStream.class, extensionRegistryClass);
-                    parseFromMethodCache.put(returnType, m);
-                }
-                convertedObject = m.invoke(returnType, body, extensionRegistry);
+            PushbackInputStream pushback = body != null ? new PushbackInputStream(body) : null;
+            int first = pushback != null ? pushback.read() : -1;
+            if (first != -1) {
+                pushback.unread(first);
+                convertedObject = messageConverter.readMessage(returnType,
+                        new ResponseInputMessage(response.getHeaders(), pushback), serviceName);
             } else {
-                Method m = defaultInstanceMethodCache.get(returnType);
-                if (m == null) {
-                    m = returnType.getMethod("getDefaultInstance");
-                    defaultInstanceMethodCache.put(returnType, m);
-                }
-                convertedObject = m.invoke(returnType);
+                convertedObject = MessageDefaultInstanceRegistry.getDefaultInstance(returnType);
             }
             return convertedObject;
-        } catch (Exception e) {
+        } catch (IOException e) {
+            metrics.recordError(ProtobufMetrics.Stage.PARSE, serviceName, null, returnType);
             throw new RuntimeException("Unable to convert response to Proto object", e);
         }
     }
+
+    /**
+     * Decodes the response body, whose size limit is checked against the <code>Content-Length</code> of uncompressed
+     * bodies before anything is read.
+     */
+    private InputStream decodeBody(ClientHttpResponse response, InputStream body, Class type) throws IOException {
+        if (body == null) {
+            return null;
+        }
+        ContentEncoding encoding = ContentEncoding.forValue(response.getHeaders().getFirst(ContentEncoding.CONTENT_ENCODING));
+        if (encoding == ContentEncoding.IDENTITY) {
+            messageConverter.getMessageLimits().checkContentLength(response.getHeaders().getContentLength(), type);
+        }
+        return encoding.decode(body);
+    }
+
+    /**
+     * Response body positioned back at its first byte, read by the <code>ProtobufHttpMessageConverter</code>.
+     */
+    private static class ResponseInputMessage implements HttpInputMessage {
+        private final HttpHeaders headers;
+        private final InputStream body;
+
+        private ResponseInputMessage(HttpHeaders headers, InputStream body) {
+            this.headers = headers;
+            this.body = body;
+        }
+
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        public InputStream getBody() {
+            return body;
+        }
+    }
 }
@@ -0,0 +1,164 @@
+package com.google.protobuf.spring.http.client;
+
+import com.google.protobuf.ExtensionRegistry;
+import com.google.protobuf.Message;
+import com.google.protobuf.spring.MessageDefaultInstanceRegistry;
+import com.google.protobuf.spring.http.ContentEncoding;
+import com.google.protobuf.spring.http.MessageLimits;
+import com.google.protobuf.spring.http.ProtobufHttpMessageConverter;
+import com.google.protobuf.spring.http.ProtobufJsonCodec;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpResponse;
+
+import com.googlecode.protobuf.format.JsonFormat;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Lazily reads a stream of messages written by the
+ * {@link com.google.protobuf.spring.http.ProtobufStreamingHttpMessageConverter}.<br/>
+ * Only one message is held in memory at a time: length-delimited protobuf is read for
+ * <code>application/x-protobuf</code> and newline delimited JSON for <code>application/json</code>, UTF-8 lines being
+ * parsed by the <code>ProtobufJsonCodec</code>. Responses are decoded according to their <code>Content-Encoding</code>.
+ * The underlying stream is closed once the last message has been read, or by calling {@link #close()}.
+ */
+public class DelimitedMessageIterator<T extends Message> implements Iterator<T> {
+    private final Class<T> type;
+    private final InputStream body;
+    private final BufferedReader reader;
+    private final boolean utf8Json;
+    private final ExtensionRegistry extensionRegistry;
+    private byte[] line;
+
+    private T next;
+    private boolean finished;
+
+    public DelimitedMessageIterator(Class<T> type, ClientHttpResponse response, ExtensionRegistry extensionRegistry) throws IOException {
+        this(type, ContentEncoding.forValue(response.getHeaders().getFirst(ContentEncoding.CONTENT_ENCODING)).decode(response.getBody()),
+                response.getHeaders().getContentType(), extensionRegistry);
+    }
+
+    /**
+     * @param body stream of messages, already decoded.
+     */
+    public DelimitedMessageIterator(Class<T> type, InputStream body, MediaType contentType, ExtensionRegistry extensionRegistry) {
+        this.type = type;
+        this.extensionRegistry = extensionRegistry != null ? extensionRegistry : ExtensionRegistry.getEmptyRegistry();
+        boolean json = contentType != null && ProtobufHttpMessageConverter.JSON.getType().equals(contentType.getType()) &&
+                ProtobufHttpMessageConverter.JSON.getSubtype().equals(contentType.getSubtype());
+        Charset charset = contentType != null && contentType.getCharSet() != null ? contentType.getCharSet() : ProtobufHttpMessageConverter.DEFAULT_CHARSET;
+        this.utf8Json = json && ProtobufHttpMessageConverter.DEFAULT_CHARSET.equals(charset);
+        if (utf8Json) {
+            this.body = new BufferedInputStream(body);
+            this.reader = null;
+            this.line = new byte[256];
+        } else if (json) {
+            this.body = body;
+            this.reader = new BufferedReader(new InputStreamReader(body, charset));
+        } else {
+            this.body = body;
+            this.reader = null;
+        }
+    }
+
+    public boolean hasNext() {
+        if (next == null && !finished) {
+            try {
+                next = readNext();
+            } catch (IOException e) {
+                close();
+                throw new RuntimeException("Unable to read the next " + type.getName() + " from the response", e);
+            }
+            if (next == null) {
+                close();
+            }
+        }
+        return next != null;
+    }
+
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        T message = next;
+        next = null;
+        return message;
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Stops reading and closes the underlying stream.
+     */
+    public void close() {
+        finished = true;
+        next = null;
+        try {
+            body.close();
+        } catch (IOException e) {
+            // Nothing left to read from the stream
+        }
+    }
+
+    @SuppressWarnings({"unchecked"})
+    private T readNext() throws IOException {
+        Message.Builder builder = MessageDefaultInstanceRegistry.newBuilder(type);
+        if (utf8Json) {
+            int length = readLine();
+            while (length >= 0 && isBlank(length)) {
+                length = readLine();
+            }
+            if (length < 0) {
+                return null;
+            }
+            ProtobufJsonCodec.merge(line, length, extensionRegistry, builder, MessageLimits.DEFAULT_RECURSION_LIMIT);
+        } else if (reader != null) {
+            String line = reader.readLine();
+            while (line != null && line.trim().length() == 0) {
+                line = reader.readLine();
+            }
+            if (line == null) {
+                return null;
+            }
+            JsonFormat.merge(line, extensionRegistry, builder);
+        } else if (!builder.mergeDelimitedFrom(body, extensionRegistry)) {
+            return null;
+        }
+        return (T) builder.build();
+    }
+
+    /**
+     * Reads the next line of the body into <code>line</code>.
+     * @return length of the line without its line feed, -1 at the end of the body.
+     */
+    private int readLine() throws IOException {
+        int length = 0;
+        int b;
+        while ((b = body.read()) != -1 && b != '\n') {
+            if (length == line.length) {
+                line = Arrays.copyOf(line, length * 2);
+            }
+            line[length++] = (byte) b;
+        }
+        return b == -1 && length == 0 ? -1 : length;
+    }
+
+    private boolean isBlank(int length) {
+        for (int i = 0; i < length; i++) {
+            if (line[i] > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
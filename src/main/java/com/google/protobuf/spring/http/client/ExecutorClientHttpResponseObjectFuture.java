@@ -0,0 +1,47 @@
+package com.google.protobuf.spring.http.client;
+
+import com.google.protobuf.spring.http.ProtobufHttpMessageConverter;
+import com.google.protobuf.spring.http.metrics.ProtobufMetrics;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * <code>ClientHttpResponseObjectFuture</code> backed by a <code>Future</code> obtained from an
+ * <code>ExecutorService</code> running the HTTP request.
+ */
+public class ExecutorClientHttpResponseObjectFuture<T> extends ClientHttpResponseObjectFuture<T> {
+
+    public ExecutorClientHttpResponseObjectFuture(Class<? extends T> type,
+                                                  Future<ClientHttpResponse> responseFuture,
+                                                  ClientHttpRequestContext requestContext) {
+        super(type, responseFuture, requestContext);
+    }
+
+    public ExecutorClientHttpResponseObjectFuture(Class<? extends T> type,
+                                                  Future<ClientHttpResponse> responseFuture,
+                                                  ClientHttpRequestContext requestContext,
+                                                  ProtobufMetrics metrics) {
+        super(type, responseFuture, requestContext, metrics);
+    }
+
+    public ExecutorClientHttpResponseObjectFuture(Class<? extends T> type,
+                                                  Future<ClientHttpResponse> responseFuture,
+                                                  ClientHttpRequestContext requestContext,
+                                                  ProtobufHttpMessageConverter messageConverter) {
+        super(type, responseFuture, requestContext, messageConverter);
+    }
+
+    @SuppressWarnings({"unchecked"})
+    public ClientHttpResponse get() throws InterruptedException, ExecutionException {
+        return ((Future<ClientHttpResponse>) getInnerFuture()).get();
+    }
+
+    @SuppressWarnings({"unchecked"})
+    public ClientHttpResponse get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        return ((Future<ClientHttpResponse>) getInnerFuture()).get(timeout, unit);
+    }
+}
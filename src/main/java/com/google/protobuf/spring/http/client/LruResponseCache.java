@@ -0,0 +1,126 @@
+package com.google.protobuf.spring.http.client;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link ResponseCache} bounded by the total serialized size of the cached messages, evicting the least
+ * recently used responses first.<br/>
+ * Responses heavier than the whole capacity are not stored.
+ */
+public class LruResponseCache implements ResponseCache {
+    public static final long DEFAULT_MAX_WEIGHT = 16 * 1024 * 1024;
+
+    private final long maxWeight;
+    private final LinkedHashMap<String, CachedResponse> entries = new LinkedHashMap<String, CachedResponse>(64, 0.75f, true);
+    private long weight;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong staleCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    public LruResponseCache() {
+        this(DEFAULT_MAX_WEIGHT);
+    }
+
+    /**
+     * @param maxWeight maximum total serialized size in bytes of the cached messages.
+     */
+    public LruResponseCache(long maxWeight) {
+        if (maxWeight <= 0) {
+            throw new IllegalArgumentException("Maximum weight must be positive, but was " + maxWeight);
+        }
+        this.maxWeight = maxWeight;
+    }
+
+    public CachedResponse get(String key) {
+        CachedResponse response;
+        synchronized (entries) {
+            response = entries.get(key);
+        }
+        if (response == null) {
+            missCount.incrementAndGet();
+        } else if (response.isFresh(System.currentTimeMillis())) {
+            hitCount.incrementAndGet();
+        } else {
+            staleCount.incrementAndGet();
+        }
+        return response;
+    }
+
+    public void put(String key, CachedResponse response) {
+        synchronized (entries) {
+            CachedResponse previous = entries.remove(key);
+            if (previous != null) {
+                weight -= previous.getWeight();
+            }
+            if (response.getWeight() > maxWeight) {
+                return;
+            }
+            entries.put(key, response);
+            weight += response.getWeight();
+            Iterator<Map.Entry<String, CachedResponse>> eldest = entries.entrySet().iterator();
+            while (weight > maxWeight && eldest.hasNext()) {
+                weight -= eldest.next().getValue().getWeight();
+                eldest.remove();
+                evictionCount.incrementAndGet();
+            }
+        }
+    }
+
+    public void remove(String key) {
+        synchronized (entries) {
+            CachedResponse previous = entries.remove(key);
+            if (previous != null) {
+                weight -= previous.getWeight();
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            weight = 0;
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getWeight() {
+        synchronized (entries) {
+            return weight;
+        }
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    /**
+     * @return number of lookups answered by a fresh response.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return number of lookups finding a stale response, which is revalidated with the service.
+     */
+    public long getStaleCount() {
+        return staleCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+}
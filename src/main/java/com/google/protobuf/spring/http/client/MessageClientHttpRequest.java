@@ -0,0 +1,19 @@
+package com.google.protobuf.spring.http.client;
+
+import com.google.protobuf.Message;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpRequest;
+
+/**
+ * <code>ClientHttpRequest</code> able to serialize a protobuf <code>Message</code> body straight into the
+ * connection output stream when the request is executed, instead of buffering it through {@link #getBody()}.
+ */
+public interface MessageClientHttpRequest extends ClientHttpRequest {
+    /**
+     * Sets the binary protobuf body of the request, replacing anything written to {@link #getBody()}.
+     * The <code>Content-Length</code> is taken from <code>Message.getSerializedSize()</code>.
+     * @param message request body.
+     * @param contentType of the request body.
+     */
+    void setMessageBody(Message message, MediaType contentType);
+}
@@ -0,0 +1,47 @@
+package com.google.protobuf.spring.http.client;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.Message;
+import org.apache.commons.httpclient.methods.RequestEntity;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * commons-httpclient <code>RequestEntity</code> writing a binary protobuf <code>Message</code> through a bounded
+ * <code>CodedOutputStream</code> directly into the connection output stream.
+ */
+final class MessageRequestEntity implements RequestEntity {
+    private final Message message;
+    private final MediaType contentType;
+    private final int bufferSize;
+
+    MessageRequestEntity(Message message, MediaType contentType, int bufferSize) {
+        this.message = message;
+        this.contentType = contentType;
+        this.bufferSize = bufferSize;
+    }
+
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    public void writeRequest(OutputStream out) throws IOException {
+        int serializedSize = message.getSerializedSize();
+        if (serializedSize == 0) {
+            return;
+        }
+        CodedOutputStream output = CodedOutputStream.newInstance(out, Math.min(bufferSize, serializedSize));
+        message.writeTo(output);
+        output.flush();
+    }
+
+    public long getContentLength() {
+        return message.getSerializedSize();
+    }
+
+    public String getContentType() {
+        return contentType != null ? contentType.toString() : null;
+    }
+}
@@ -0,0 +1,93 @@
+package com.google.protobuf.spring.http.client;
+
+import com.google.protobuf.Message;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpMethodBase;
+import org.apache.commons.httpclient.methods.ByteArrayRequestEntity;
+import org.apache.commons.httpclient.methods.EntityEnclosingMethod;
+import org.apache.commons.httpclient.methods.RequestEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.util.Assert;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link MessageClientHttpRequest} executed through the pooled commons-httpclient of a
+ * {@link PooledClientHttpRequestFactory}.
+ */
+final class PooledClientHttpRequest implements MessageClientHttpRequest {
+    private final HttpClient httpClient;
+    private final HttpMethodBase httpMethod;
+    private final int bufferSize;
+    private final HttpHeaders headers = new HttpHeaders();
+    private ByteArrayOutputStream bufferedBody;
+    private Message messageBody;
+    private MediaType messageContentType;
+    private boolean executed;
+
+    PooledClientHttpRequest(HttpClient httpClient, HttpMethodBase httpMethod, int bufferSize) {
+        this.httpClient = httpClient;
+        this.httpMethod = httpMethod;
+        this.bufferSize = bufferSize;
+    }
+
+    public HttpMethod getMethod() {
+        return HttpMethod.valueOf(httpMethod.getName());
+    }
+
+    public HttpHeaders getHeaders() {
+        return executed ? HttpHeaders.readOnlyHttpHeaders(headers) : headers;
+    }
+
+    public OutputStream getBody() throws IOException {
+        Assert.state(!executed, "ClientHttpRequest already executed");
+        if (bufferedBody == null) {
+            bufferedBody = new ByteArrayOutputStream();
+        }
+        return bufferedBody;
+    }
+
+    public void setMessageBody(Message message, MediaType contentType) {
+        Assert.state(!executed, "ClientHttpRequest already executed");
+        this.messageBody = message;
+        this.messageContentType = contentType;
+        this.bufferedBody = null;
+    }
+
+    public ClientHttpResponse execute() throws IOException {
+        Assert.state(!executed, "ClientHttpRequest already executed");
+        executed = true;
+        for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+            String headerName = entry.getKey();
+            // Derived by commons-httpclient from the request entity
+            if ("Content-Length".equalsIgnoreCase(headerName) || "Transfer-Encoding".equalsIgnoreCase(headerName)) {
+                continue;
+            }
+            for (String headerValue : entry.getValue()) {
+                httpMethod.addRequestHeader(headerName, headerValue);
+            }
+        }
+        if (httpMethod instanceof EntityEnclosingMethod) {
+            ((EntityEnclosingMethod) httpMethod).setRequestEntity(createRequestEntity());
+        }
+        httpClient.executeMethod(httpMethod);
+        return new PooledClientHttpResponse(httpMethod);
+    }
+
+    private RequestEntity createRequestEntity() {
+        if (messageBody != null) {
+            return new MessageRequestEntity(messageBody,
+                    messageContentType != null ? messageContentType : headers.getContentType(), bufferSize);
+        }
+        MediaType contentType = headers.getContentType();
+        byte[] body = bufferedBody != null ? bufferedBody.toByteArray() : new byte[0];
+        return new ByteArrayRequestEntity(body, contentType != null ? contentType.toString() : null);
+    }
+}
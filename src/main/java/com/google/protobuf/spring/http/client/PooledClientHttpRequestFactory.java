@@ -0,0 +1,215 @@
+package com.google.protobuf.spring.http.client;
+
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpMethodBase;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.URIException;
+import org.apache.commons.httpclient.params.HttpClientParams;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.apache.commons.httpclient.util.IdleConnectionTimeoutThread;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.CommonsClientHttpRequestFactory;
+
+import com.google.protobuf.spring.http.ProtobufHttpMessageConverter;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * <code>ClientHttpRequestFactory</code> keeping persistent connections to the services in a
+ * commons-httpclient <code>MultiThreadedHttpConnectionManager</code>, so calls do not pay for a new TCP connection.<br/>
+ * Services are registered by the {@link AbstractClientHttpInvocationHandler} with their base URL and timeout; requests
+ * to a registered base URL use the service timeout as socket read timeout, and the connections to the service host are
+ * limited to its configured maximum. A request waits for a free connection of the pool no longer than the connection
+ * manager timeout, or the service timeout if shorter, before failing with a <code>ConnectionPoolTimeoutException</code>.
+ * Connections idle for longer than the idle timeout are closed by a background thread.
+ * Since the connection limit applies per host, services sharing a host and port share the limit of the last one registered.
+ */
+public class PooledClientHttpRequestFactory extends CommonsClientHttpRequestFactory {
+    public static final int DEFAULT_MAX_TOTAL_CONNECTIONS = 200;
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_SERVICE = 20;
+    public static final int DEFAULT_CONNECTION_TIMEOUT_MILLISECONDS = 5 * 1000;
+    public static final long DEFAULT_CONNECTION_MANAGER_TIMEOUT_MILLISECONDS = 5 * 1000;
+    public static final long DEFAULT_IDLE_CONNECTION_TIMEOUT_MILLISECONDS = 60 * 1000;
+
+    private final MultiThreadedHttpConnectionManager connectionManager;
+    private final IdleConnectionTimeoutThread idleConnectionTimeoutThread;
+    private final Map<String, Integer> maxConnectionsPerService = new ConcurrentHashMap<String, Integer>();
+    private final CopyOnWriteArrayList<ServiceEndpoint> endpoints = new CopyOnWriteArrayList<ServiceEndpoint>();
+    private int defaultMaxConnectionsPerService = DEFAULT_MAX_CONNECTIONS_PER_SERVICE;
+    private int bufferSize = ProtobufHttpMessageConverter.DEFAULT_BUFFER_SIZE;
+    private volatile long connectionManagerTimeout = DEFAULT_CONNECTION_MANAGER_TIMEOUT_MILLISECONDS;
+
+    public PooledClientHttpRequestFactory() {
+        this(new MultiThreadedHttpConnectionManager());
+    }
+
+    private PooledClientHttpRequestFactory(MultiThreadedHttpConnectionManager connectionManager) {
+        super(new HttpClient(connectionManager));
+        this.connectionManager = connectionManager;
+        HttpConnectionManagerParams params = connectionManager.getParams();
+        params.setMaxTotalConnections(DEFAULT_MAX_TOTAL_CONNECTIONS);
+        params.setDefaultMaxConnectionsPerHost(DEFAULT_MAX_CONNECTIONS_PER_SERVICE);
+        params.setConnectionTimeout(DEFAULT_CONNECTION_TIMEOUT_MILLISECONDS);
+        params.setStaleCheckingEnabled(true);
+        getHttpClient().getParams().setConnectionManagerTimeout(connectionManagerTimeout);
+
+        idleConnectionTimeoutThread = new IdleConnectionTimeoutThread();
+        idleConnectionTimeoutThread.setName("protobuf-http-client-idle-connection-evictor");
+        idleConnectionTimeoutThread.addConnectionManager(connectionManager);
+        setIdleConnectionTimeout(DEFAULT_IDLE_CONNECTION_TIMEOUT_MILLISECONDS);
+        idleConnectionTimeoutThread.start();
+    }
+
+    public void setMaxTotalConnections(int maxTotalConnections) {
+        connectionManager.getParams().setMaxTotalConnections(maxTotalConnections);
+    }
+
+    public void setDefaultMaxConnectionsPerService(int defaultMaxConnectionsPerService) {
+        this.defaultMaxConnectionsPerService = defaultMaxConnectionsPerService;
+        connectionManager.getParams().setDefaultMaxConnectionsPerHost(defaultMaxConnectionsPerService);
+    }
+
+    /**
+     * @param maxConnectionsPerService maximum number of pooled connections keyed by <code>ServiceRequest.name</code>.
+     */
+    public void setMaxConnectionsPerService(Map<String, Integer> maxConnectionsPerService) {
+        this.maxConnectionsPerService.putAll(maxConnectionsPerService);
+    }
+
+    public void setConnectionTimeout(int connectionTimeoutInMilliseconds) {
+        connectionManager.getParams().setConnectionTimeout(connectionTimeoutInMilliseconds);
+    }
+
+    /**
+     * @param connectionManagerTimeoutInMilliseconds longest wait for a free pooled connection, 5 seconds by default.
+     * Requests to a registered service wait no longer than the service timeout.
+     */
+    public void setConnectionManagerTimeout(long connectionManagerTimeoutInMilliseconds) {
+        if (connectionManagerTimeoutInMilliseconds <= 0) {
+            throw new IllegalArgumentException("Connection manager timeout must be positive, but was " + connectionManagerTimeoutInMilliseconds);
+        }
+        this.connectionManagerTimeout = connectionManagerTimeoutInMilliseconds;
+        getHttpClient().getParams().setConnectionManagerTimeout(connectionManagerTimeoutInMilliseconds);
+        for (ServiceEndpoint endpoint : endpoints) {
+            endpoint.applyConnectionManagerTimeout(connectionManagerTimeoutInMilliseconds);
+        }
+    }
+
+    /**
+     * @param idleConnectionTimeoutInMilliseconds time after which an unused pooled connection is closed.
+     */
+    public void setIdleConnectionTimeout(long idleConnectionTimeoutInMilliseconds) {
+        idleConnectionTimeoutThread.setConnectionTimeout(idleConnectionTimeoutInMilliseconds);
+        idleConnectionTimeoutThread.setTimeoutInterval(Math.max(1000, idleConnectionTimeoutInMilliseconds / 2));
+    }
+
+    /**
+     * @param bufferSize size of the <code>CodedOutputStream</code> buffer used to stream <code>Message</code> request bodies.
+     */
+    public void setBufferSize(int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be positive, but was " + bufferSize);
+        }
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Applies the connection limit and timeout of a service to the requests made to its base URL.
+     * @param serviceName <code>ServiceRequest.name</code> of the service.
+     * @param baseUrl configured base URL of the service.
+     * @param timeoutInSeconds socket read timeout and longest wait for a pooled connection of the service requests,
+     * ignored if not positive.
+     */
+    public void registerService(String serviceName, String baseUrl, int timeoutInSeconds) {
+        for (ServiceEndpoint endpoint : endpoints) {
+            if (endpoint.serviceName.equals(serviceName) && endpoint.baseUrl.equals(baseUrl)) {
+                return;
+            }
+        }
+        try {
+            HostConfiguration hostConfiguration = new HostConfiguration();
+            hostConfiguration.setHost(new org.apache.commons.httpclient.URI(baseUrl, false));
+            Integer maxConnections = maxConnectionsPerService.get(serviceName);
+            connectionManager.getParams().setMaxConnectionsPerHost(hostConfiguration,
+                    maxConnections != null ? maxConnections : defaultMaxConnectionsPerService);
+        } catch (URIException e) {
+            throw new IllegalArgumentException("Base URL for the Service " + serviceName + " is not valid: " + baseUrl, e);
+        }
+        ServiceEndpoint endpoint = new ServiceEndpoint(serviceName, baseUrl, timeoutInSeconds * 1000, getHttpClient());
+        endpoint.applyConnectionManagerTimeout(connectionManagerTimeout);
+        endpoints.add(endpoint);
+    }
+
+    public MultiThreadedHttpConnectionManager getConnectionManager() {
+        return connectionManager;
+    }
+
+    /**
+     * Creates a {@link MessageClientHttpRequest}, which streams <code>Message</code> bodies into the connection.
+     */
+    @Override
+    public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) throws IOException {
+        HttpMethodBase commonsHttpMethod = createCommonsHttpMethod(httpMethod, uri.toString());
+        postProcessCommonsHttpMethod(commonsHttpMethod);
+        ServiceEndpoint endpoint = findEndpoint(uri.toString());
+        return new PooledClientHttpRequest(endpoint != null ? endpoint.httpClient : getHttpClient(),
+                commonsHttpMethod, bufferSize);
+    }
+
+    @Override
+    protected HttpMethodBase createCommonsHttpMethod(HttpMethod httpMethod, String uri) {
+        HttpMethodBase commonsHttpMethod = super.createCommonsHttpMethod(httpMethod, uri);
+        ServiceEndpoint endpoint = findEndpoint(uri);
+        if (endpoint != null && endpoint.timeoutInMilliseconds > 0) {
+            commonsHttpMethod.getParams().setSoTimeout(endpoint.timeoutInMilliseconds);
+        }
+        return commonsHttpMethod;
+    }
+
+    @Override
+    public void destroy() {
+        idleConnectionTimeoutThread.shutdown();
+        super.destroy();
+    }
+
+    private ServiceEndpoint findEndpoint(String uri) {
+        ServiceEndpoint match = null;
+        for (ServiceEndpoint endpoint : endpoints) {
+            if (uri.startsWith(endpoint.baseUrl) && (match == null || endpoint.baseUrl.length() > match.baseUrl.length())) {
+                match = endpoint;
+            }
+        }
+        return match;
+    }
+
+    private static class ServiceEndpoint {
+        private final String serviceName;
+        private final String baseUrl;
+        private final int timeoutInMilliseconds;
+        private final HttpClient httpClient;
+
+        /**
+         * @param sharedHttpClient of the factory, whose connection manager and state are shared. The service has its
+         * own client parameters, since commons-httpclient reads the connection manager timeout from them.
+         */
+        private ServiceEndpoint(String serviceName, String baseUrl, int timeoutInMilliseconds, HttpClient sharedHttpClient) {
+            this.serviceName = serviceName;
+            this.baseUrl = baseUrl;
+            this.timeoutInMilliseconds = timeoutInMilliseconds;
+            this.httpClient = new HttpClient(new HttpClientParams(sharedHttpClient.getParams()),
+                    sharedHttpClient.getHttpConnectionManager());
+            this.httpClient.setState(sharedHttpClient.getState());
+        }
+
+        private void applyConnectionManagerTimeout(long connectionManagerTimeout) {
+            httpClient.getParams().setConnectionManagerTimeout(timeoutInMilliseconds > 0 ?
+                    Math.min(connectionManagerTimeout, timeoutInMilliseconds) : connectionManagerTimeout);
+        }
+    }
+}
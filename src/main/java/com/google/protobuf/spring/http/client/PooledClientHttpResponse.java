@@ -0,0 +1,50 @@
+package com.google.protobuf.spring.http.client;
+
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HttpMethod;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * <code>ClientHttpResponse</code> of a {@link PooledClientHttpRequest}; closing it returns the connection to the pool.
+ */
+final class PooledClientHttpResponse implements ClientHttpResponse {
+    private final HttpMethod httpMethod;
+    private HttpHeaders headers;
+
+    PooledClientHttpResponse(HttpMethod httpMethod) {
+        this.httpMethod = httpMethod;
+    }
+
+    public HttpStatus getStatusCode() throws IOException {
+        return HttpStatus.valueOf(httpMethod.getStatusCode());
+    }
+
+    public String getStatusText() throws IOException {
+        return httpMethod.getStatusText();
+    }
+
+    public HttpHeaders getHeaders() {
+        if (headers == null) {
+            headers = new HttpHeaders();
+            for (Header header : httpMethod.getResponseHeaders()) {
+                headers.add(header.getName(), header.getValue());
+            }
+        }
+        return headers;
+    }
+
+    public InputStream getBody() throws IOException {
+        InputStream body = httpMethod.getResponseBodyAsStream();
+        return body != null ? body : new ByteArrayInputStream(new byte[0]);
+    }
+
+    public void close() {
+        httpMethod.releaseConnection();
+    }
+}
@@ -0,0 +1,108 @@
+package com.google.protobuf.spring.http.client;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single-flight execution of identical concurrent service calls.<br/>
+ * The first caller for a key executes the call, callers arriving while it is in flight wait for it and share its
+ * result or exception. The key is forgotten as soon as the call completes, so nothing is cached beyond the
+ * in-flight window; results must therefore be immutable, like <code>Message</code> objects.
+ */
+public class RequestCoalescer {
+    private final ConcurrentHashMap<Key, FutureTask<Object>> inFlight = new ConcurrentHashMap<Key, FutureTask<Object>>();
+    private final AtomicLong executedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+
+    /**
+     * Executes <i>call</i>, unless an identical call is already in flight, in which case its outcome is shared.
+     * @param method invoked service method.
+     * @param url resolved request URL.
+     * @param accept content type requested from the service.
+     * @param call performing the HTTP request.
+     * @return result of the call.
+     * @throws Exception thrown by the call.
+     */
+    public Object execute(Method method, String url, Object accept, Callable<Object> call) throws Exception {
+        Key key = new Key(method, url, accept);
+        FutureTask<Object> task = new FutureTask<Object>(call);
+        FutureTask<Object> running = inFlight.putIfAbsent(key, task);
+        if (running == null) {
+            executedCount.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                inFlight.remove(key, task);
+            }
+            running = task;
+        } else {
+            coalescedCount.incrementAndGet();
+        }
+        try {
+            return running.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return number of calls that performed an HTTP request.
+     */
+    public long getExecutedCount() {
+        return executedCount.get();
+    }
+
+    /**
+     * @return number of calls that shared the outcome of an in-flight identical call.
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    private static final class Key {
+        private final Method method;
+        private final String url;
+        private final Object accept;
+        private final int hash;
+
+        private Key(Method method, String url, Object accept) {
+            this.method = method;
+            this.url = url;
+            this.accept = accept;
+            this.hash = 31 * (31 * method.hashCode() + url.hashCode()) + (accept != null ? accept.hashCode() : 0);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash && method.equals(other.method) && url.equals(other.url) &&
+                    (accept != null ? accept.equals(other.accept) : other.accept == null);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.google.protobuf.spring.http.client;
+
+/**
+ * Storage of the <code>Message</code> responses of cacheable service calls, plugged into an
+ * {@link AbstractClientHttpInvocationHandler}.<br/>
+ * Implementations must be thread safe. Freshness and revalidation are decided by the handler from the
+ * {@link CachedResponse} expiry and ETag, so a cache only needs to store, bound and evict entries.
+ * @see LruResponseCache
+ */
+public interface ResponseCache {
+
+    /**
+     * @param key identifying the request.
+     * @return cached response, fresh or stale, or <code>null</code> if none is stored.
+     */
+    CachedResponse get(String key);
+
+    void put(String key, CachedResponse response);
+
+    void remove(String key);
+}
@@ -0,0 +1,270 @@
+package com.google.protobuf.spring.http.client;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.Message;
+import com.google.protobuf.spring.http.BatchProtos.BatchRequest;
+import com.google.protobuf.spring.http.BatchProtos.BatchResponse;
+import com.google.protobuf.spring.http.MessageLimits;
+import com.google.protobuf.spring.http.MessageTooLargeException;
+import com.google.protobuf.spring.http.ProtobufHttpMessageConverter;
+import com.google.protobuf.spring.http.metrics.ProtobufMetrics;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Collects the calls to service methods returning <code>ClientHttpResponseObjectFuture</code> or <code>Future</code>
+ * made on the thread that opened it with {@link AbstractClientHttpInvocationHandler#beginBatch()}, and sends the
+ * calls to each service as a single <code>POST</code> of length-delimited <code>BatchRequest</code> messages to the
+ * batch path of the service, answered by a <code>ProtobufBatchDispatcher</code>.<br/>
+ * Calls are sent when the batch is executed, when the calls pending for a service reach the maximum batch size, or
+ * when the response of a pending call is requested, so waiting on a future inside the batch scope does not block.
+ * Request bodies are sent in the binary protobuf format, whatever the requested response content type.
+ * <pre>
+ * ServiceBatch batch = handler.beginBatch();
+ * try {
+ *     for (long id : ids) {
+ *         futures.add(orderService.getOrderFuture(id));
+ *     }
+ * } finally {
+ *     batch.execute();
+ * }
+ * </pre>
+ */
+public class ServiceBatch {
+    private final AbstractClientHttpInvocationHandler handler;
+    private final int maxBatchSize;
+    private final Map<String, List<Call>> pendingCalls = new LinkedHashMap<String, List<Call>>();
+    private boolean closed;
+
+    ServiceBatch(AbstractClientHttpInvocationHandler handler, int maxBatchSize) {
+        this.handler = handler;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Closes the batch and sends the pending calls.
+     */
+    public void execute() {
+        handler.endBatch(this);
+        synchronized (this) {
+            closed = true;
+        }
+        flush();
+    }
+
+    /**
+     * Sends the pending calls, leaving the batch open.
+     */
+    public void flush() {
+        List<List<Call>> batches;
+        synchronized (this) {
+            batches = new ArrayList<List<Call>>(pendingCalls.values());
+            pendingCalls.clear();
+        }
+        for (List<Call> calls : batches) {
+            send(calls);
+        }
+    }
+
+    public synchronized int getPendingCount() {
+        int count = 0;
+        for (List<Call> calls : pendingCalls.values()) {
+            count += calls.size();
+        }
+        return count;
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    ClientHttpResponseObjectFuture<Object> add(ServiceInvocationPlan plan, ClientHttpRequestContext requestContext) {
+        Call call = new Call(plan, requestContext);
+        String serviceName = AbstractClientHttpInvocationHandler.retrieveServiceName(requestContext);
+        List<Call> full = null;
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("The batch has already been executed");
+            }
+            List<Call> calls = pendingCalls.get(serviceName);
+            if (calls == null) {
+                calls = new ArrayList<Call>();
+                pendingCalls.put(serviceName, calls);
+            }
+            calls.add(call);
+            if (calls.size() >= maxBatchSize) {
+                full = pendingCalls.remove(serviceName);
+            }
+        }
+        if (full != null) {
+            send(full);
+        }
+        return new ExecutorClientHttpResponseObjectFuture<Object>(requestContext.getReturnObjectType(), call,
+                requestContext, handler.getMessageConverter());
+    }
+
+    /**
+     * Sends the <i>calls</i>, all made to the same service, and completes them in order with the responses of the
+     * batch, or with the failure of the batch request.
+     */
+    private void send(List<Call> calls) {
+        String serviceName = AbstractClientHttpInvocationHandler.retrieveServiceName(calls.get(0).requestContext);
+        ProtobufMetrics metrics = handler.getMetrics();
+        long start = metrics.isEnabled() ? System.nanoTime() : 0;
+        metrics.requestStarted(serviceName);
+        ServiceBulkhead bulkhead = null;
+        ClientHttpResponse response = null;
+        int completed = 0;
+        try {
+            bulkhead = handler.acquireBulkhead(calls.get(0).requestContext);
+            URI uri = new URI(StringUtils.trimTrailingCharacter(calls.get(0).plan.getBaseUrl(), '/') + handler.getBatchPath());
+            ClientHttpRequest request = handler.getRequestFactory().createRequest(uri, HttpMethod.POST);
+            request.getHeaders().setContentType(ProtobufHttpMessageConverter.BATCH);
+            request.getHeaders().setAccept(Collections.singletonList(ProtobufHttpMessageConverter.BATCH));
+            OutputStream body = request.getBody();
+            for (Call call : calls) {
+                call.toBatchRequest().writeDelimitedTo(body);
+            }
+            response = request.execute();
+            if (response.getStatusCode() != HttpStatus.OK) {
+                throw new HttpClientInvocationResponseException(response);
+            }
+            MessageLimits limits = handler.getMessageLimits();
+            CodedInputStream input = CodedInputStream.newInstance(response.getBody());
+            // Each response is bounded by the size limit of BatchResponse instead
+            input.setSizeLimit(Integer.MAX_VALUE);
+            input.setRecursionLimit(limits.getRecursionLimit());
+            int maxResponseSize = limits.getMaxMessageSize(BatchResponse.class);
+            for (Call call : calls) {
+                if (input.isAtEnd()) {
+                    throw new IOException("The batch response ended after " + completed + " of " + calls.size() + " responses");
+                }
+                int length = input.readRawVarint32();
+                if (maxResponseSize >= 0 && length > maxResponseSize) {
+                    input.skipRawBytes(length);
+                    call.fail(new MessageTooLargeException(BatchResponse.class, maxResponseSize));
+                } else {
+                    int limit = input.pushLimit(length);
+                    BatchResponse.Builder batchResponse = BatchResponse.newBuilder().mergeFrom(input);
+                    input.checkLastTagWas(0);
+                    input.popLimit(limit);
+                    call.complete(batchResponse.build());
+                }
+                completed++;
+            }
+            if (metrics.isEnabled()) {
+                metrics.record(ProtobufMetrics.Stage.EXCHANGE, serviceName, ProtobufHttpMessageConverter.BATCH,
+                        null, System.nanoTime() - start, -1);
+            }
+        } catch (Exception e) {
+            metrics.recordError(ProtobufMetrics.Stage.EXCHANGE, serviceName, ProtobufHttpMessageConverter.BATCH, null);
+            for (int i = completed; i < calls.size(); i++) {
+                calls.get(i).fail(e);
+            }
+        } finally {
+            if (response != null) {
+                response.close();
+            }
+            handler.releaseBulkhead(bulkhead);
+            metrics.requestFinished(serviceName);
+        }
+    }
+
+    /**
+     * Pending call of the batch, completed with its own response once the batch is sent: the batch hands the outcome
+     * of the call to its task, then runs it.
+     */
+    private class Call extends FutureTask<ClientHttpResponse> {
+        private final ServiceInvocationPlan plan;
+        private final ClientHttpRequestContext requestContext;
+        private final Outcome outcome;
+
+        private Call(ServiceInvocationPlan plan, ClientHttpRequestContext requestContext) {
+            this(plan, requestContext, new Outcome());
+        }
+
+        private Call(ServiceInvocationPlan plan, ClientHttpRequestContext requestContext, Outcome outcome) {
+            super(outcome);
+            this.plan = plan;
+            this.requestContext = requestContext;
+            this.outcome = outcome;
+        }
+
+        @Override
+        public void run() {
+            // Completed by the batch only, once the outcome is known
+        }
+
+        @Override
+        public ClientHttpResponse get() throws InterruptedException, ExecutionException {
+            if (!isDone()) {
+                flush();
+            }
+            return super.get();
+        }
+
+        @Override
+        public ClientHttpResponse get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            if (!isDone()) {
+                flush();
+            }
+            return super.get(timeout, unit);
+        }
+
+        private BatchRequest toBatchRequest() throws URISyntaxException {
+            URI uri = new URI(requestContext.getRequestUrl());
+            BatchRequest.Builder request = BatchRequest.newBuilder()
+                    .setMethod(requestContext.getRequestMethod().name())
+                    .setPath(uri.getRawQuery() != null ? uri.getRawPath() + '?' + uri.getRawQuery() : uri.getRawPath())
+                    .setAccept(requestContext.getResponseDesiredContentType().toString());
+            Message msg = requestContext.getInputMessage();
+            if (msg != null) {
+                request.setContentType(ProtobufHttpMessageConverter.PROTOBUF.toString()).setBody(msg.toByteString());
+            }
+            return request.build();
+        }
+
+        private void complete(BatchResponse response) {
+            outcome.response = new BatchClientHttpResponse(response);
+            super.run();
+        }
+
+        private void fail(Exception cause) {
+            outcome.failure = cause;
+            super.run();
+        }
+    }
+
+    /**
+     * Task of a {@link Call}, returning the response the batch got for it or throwing the failure of the batch.
+     */
+    private static class Outcome implements Callable<ClientHttpResponse> {
+        private ClientHttpResponse response;
+        private Exception failure;
+
+        public ClientHttpResponse call() throws Exception {
+            if (failure != null) {
+                throw failure;
+            }
+            return response;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.google.protobuf.spring.http.client;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the number of concurrent in-flight requests to a single service and the number of callers
+ * waiting for a slot.<br/>
+ * Callers beyond the queue depth, or waiting longer than the timeout, are rejected with a
+ * {@link ServiceBulkheadRejectedException}.
+ */
+public class ServiceBulkhead {
+    private final String serviceName;
+    private final int maxConcurrentRequests;
+    private final int maxQueuedRequests;
+    private final Semaphore permits;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    public ServiceBulkhead(String serviceName, int maxConcurrentRequests, int maxQueuedRequests) {
+        if (maxConcurrentRequests <= 0) {
+            throw new IllegalArgumentException("Maximum concurrent requests must be positive, but was " + maxConcurrentRequests);
+        }
+        this.serviceName = serviceName;
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.maxQueuedRequests = Math.max(0, maxQueuedRequests);
+        this.permits = new Semaphore(maxConcurrentRequests, true);
+    }
+
+    /**
+     * Takes an in-flight slot, waiting in the queue if all slots are taken.
+     * @param timeout maximum time to wait for a slot.
+     * @param unit of the <i>timeout</i>.
+     * @throws ServiceBulkheadRejectedException if the queue is full, the wait timed out or was interrupted.
+     */
+    public void acquire(long timeout, TimeUnit unit) {
+        if (permits.tryAcquire()) {
+            return;
+        }
+        if (queued.incrementAndGet() > maxQueuedRequests) {
+            queued.decrementAndGet();
+            throw reject("all " + maxConcurrentRequests + " in-flight slots and " + maxQueuedRequests + " queue slots are taken");
+        }
+        try {
+            if (!permits.tryAcquire(timeout, unit)) {
+                throw reject("no in-flight slot became available within " + timeout + " " + unit);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw reject("interrupted while waiting for an in-flight slot");
+        } finally {
+            queued.decrementAndGet();
+        }
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    public int getMaxQueuedRequests() {
+        return maxQueuedRequests;
+    }
+
+    public int getInFlightCount() {
+        return maxConcurrentRequests - permits.availablePermits();
+    }
+
+    public int getQueuedCount() {
+        return queued.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    private ServiceBulkheadRejectedException reject(String reason) {
+        rejectedCount.incrementAndGet();
+        return new ServiceBulkheadRejectedException(serviceName, reason);
+    }
+}
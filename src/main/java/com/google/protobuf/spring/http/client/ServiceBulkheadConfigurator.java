@@ -0,0 +1,19 @@
+package com.google.protobuf.spring.http.client;
+
+/**
+ * Extends the service configuration with per-service bulkhead limits, which keep one slow service from
+ * tying up the threads calling every other service behind the same {@link AbstractClientHttpInvocationHandler}.
+ */
+public interface ServiceBulkheadConfigurator extends ClientHttpInvocationHandlerServiceConfigurator {
+    /**
+     * @param serviceName <code>ServiceRequest.name</code> of the service.
+     * @return maximum number of concurrent in-flight requests to the service, a value &lt;= 0 disables the bulkhead.
+     */
+    public int getServiceMaxConcurrentRequests(String serviceName);
+
+    /**
+     * @param serviceName <code>ServiceRequest.name</code> of the service.
+     * @return maximum number of callers waiting for an in-flight slot, further callers are rejected immediately.
+     */
+    public int getServiceMaxQueuedRequests(String serviceName);
+}
@@ -0,0 +1,18 @@
+package com.google.protobuf.spring.http.client;
+
+/**
+ * Thrown when a service call is rejected by the service bulkhead, either because its wait queue is full
+ * or because no in-flight slot became available within the service timeout.
+ */
+public class ServiceBulkheadRejectedException extends RuntimeException {
+    private final String serviceName;
+
+    public ServiceBulkheadRejectedException(String serviceName, String message) {
+        super("Service " + serviceName + " rejected the call: " + message);
+        this.serviceName = serviceName;
+    }
+
+    public String getServiceName() {
+        return serviceName;
+    }
+}
@@ -0,0 +1,21 @@
+package com.google.protobuf.spring.http.client;
+
+import com.google.protobuf.spring.http.MessageLimits;
+
+/**
+ * Extends the request context with the service the call is made to, which keys the bulkheads, batches and metrics
+ * of the {@link AbstractClientHttpInvocationHandler}, and with the limits of its response. Calls with a plain
+ * <code>ClientHttpRequestContext</code> are not limited by a bulkhead, are reported without a service name and
+ * parse their response with the default limits.
+ */
+public interface ServiceClientHttpRequestContext extends ClientHttpRequestContext {
+    /**
+     * @return <code>ServiceRequest.name</code> of the invoked service method.
+     */
+    String getServiceName();
+
+    /**
+     * @return size and nesting limits of the response message, <code>null</code> for the defaults.
+     */
+    MessageLimits getMessageLimits();
+}
@@ -0,0 +1,187 @@
+package com.google.protobuf.spring.http.client;
+
+import com.google.protobuf.Message;
+import com.google.protobuf.spring.http.ProtobufHttpMessageConverter;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.util.Assert;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+/**
+ * Immutable description of everything a service <code>Method</code> invocation needs that does not depend on
+ * the invocation arguments.<br/>
+ * A plan is built once per <code>Method</code> by the {@link AbstractClientHttpInvocationHandler}, so the per-call
+ * work is reduced to binding the arguments into the request URL and body.
+ */
+final class ServiceInvocationPlan {
+    private static final int DEFAULT_TIMEOUT = 30;
+
+    private final Method method;
+    private final String serviceName;
+    private final String baseUrl;
+    private final String pattern;
+    private final int timeout;
+    private final HttpMethod requestMethod;
+    private final MediaType responseDesiredContentType;
+    private final String serviceIdentifier;
+    private final RequestParam[] paramNames;
+    private final UrlTemplate urlTemplate;
+    private final int[] requestBodyIndexes;
+    private final Class<?> returnType;
+    private final boolean returnHttpResponseObjectFuture;
+    private final boolean returnResponseFuture;
+    private final boolean returnHttpResponseMessage;
+    private final boolean cacheable;
+
+    ServiceInvocationPlan(Method method, ClientHttpInvocationHandlerServiceConfigurator config) throws MalformedURLException {
+        ServiceRequest service = method.getAnnotation(ServiceRequest.class);
+        if (service == null)
+            throw new RuntimeException("ServiceName annotation must be present on the method!");
+
+        this.method = method;
+        this.serviceName = service.name();
+        this.baseUrl = config.getServiceBaseUrl(serviceName);
+        Assert.notNull(baseUrl, "Base URL for the Service " + serviceName + " is not found in config!");
+        this.pattern = service.pattern();
+
+        int serviceTimeout = config.getServiceTimeoutInSeconds(serviceName);
+        this.timeout = serviceTimeout > 0 ? serviceTimeout : DEFAULT_TIMEOUT;
+
+        this.requestMethod = service.method() != null ? service.method() :
+                AbstractClientHttpInvocationHandler.retrieveMethodType(method.getName());
+        this.responseDesiredContentType = MediaType.parseMediaType(service.contentType());
+        this.serviceIdentifier = new URL(baseUrl).getPath();
+        this.paramNames = AbstractClientHttpInvocationHandler.retrieveRequestParams(method);
+        this.requestBodyIndexes = retrieveRequestBodyIndexes(method);
+        this.urlTemplate = new UrlTemplate(baseUrl, pattern, paramNames);
+        validateRequestConditions(method, responseDesiredContentType);
+
+        this.returnHttpResponseObjectFuture = ClientHttpResponseObjectFuture.class.isAssignableFrom(method.getReturnType());
+        this.returnResponseFuture = Future.class.isAssignableFrom(method.getReturnType());
+        this.returnHttpResponseMessage = ClientHttpResponse.class.isAssignableFrom(method.getReturnType());
+        if (returnHttpResponseObjectFuture) {
+            this.returnType = AbstractClientHttpInvocationHandler.retrieveHttpResponseObjectFutureGenericsType(method);
+        } else {
+            this.returnType = method.getReturnType();
+        }
+        this.cacheable = requestMethod == HttpMethod.GET && requestBodyIndexes.length == 0 &&
+                !returnResponseFuture && !returnHttpResponseMessage && Message.class.isAssignableFrom(returnType);
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    public int getTimeout() {
+        return timeout;
+    }
+
+    public HttpMethod getRequestMethod() {
+        return requestMethod;
+    }
+
+    public MediaType getResponseDesiredContentType() {
+        return responseDesiredContentType;
+    }
+
+    public String getServiceIdentifier() {
+        return serviceIdentifier;
+    }
+
+    public RequestParam[] getParamNames() {
+        return paramNames;
+    }
+
+    public UrlTemplate getUrlTemplate() {
+        return urlTemplate;
+    }
+
+    public Class<?> getReturnType() {
+        return returnType;
+    }
+
+    public boolean isReturnHttpResponseObjectFuture() {
+        return returnHttpResponseObjectFuture;
+    }
+
+    public boolean isReturnResponseFuture() {
+        return returnResponseFuture;
+    }
+
+    public boolean isReturnHttpResponseMessage() {
+        return returnHttpResponseMessage;
+    }
+
+    /**
+     * @return <code>true</code> if calls may share one request or a cached response, i.e. the method is a synchronous
+     * <code>GET</code> returning an immutable <code>Message</code>.
+     */
+    public boolean isCacheable() {
+        return cacheable;
+    }
+
+    /**
+     * Same contract as {@link AbstractClientHttpInvocationHandler#retrieveRequestBody(Method, Object[])}, using the
+     * precomputed positions of the <code>RequestBody</code> annotated parameters.
+     * @param args array with method invocation arguments.
+     * @return <code>Message</code> payload or null.
+     */
+    public Message retrieveRequestBody(Object[] args) {
+        if (args == null)
+            return null;
+        if (args.length == 1 && args[0] instanceof Message)
+            return (Message) args[0];
+        for (int index : requestBodyIndexes) {
+            if (args[index] instanceof Message)
+                return (Message) args[index];
+        }
+        return null;
+    }
+
+    private static int[] retrieveRequestBodyIndexes(Method method) {
+        Annotation[][] annotations = method.getParameterAnnotations();
+        List<Integer> indexes = new ArrayList<Integer>();
+        for (int i = 0; i < annotations.length; i++) {
+            for (Annotation ann : annotations[i]) {
+                if (RequestBody.class.isInstance(ann)) {
+                    indexes.add(i);
+                    break;
+                }
+            }
+        }
+        int[] result = new int[indexes.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = indexes.get(i);
+        }
+        return result;
+    }
+
+    private static void validateRequestConditions(Method method, MediaType contentType) {
+        if (method.getReturnType() == String.class &&
+                contentType == ProtobufHttpMessageConverter.PROTOBUF) {
+            throw new IllegalArgumentException("Only text content types can be used when the return type is String, but not " + contentType);
+        }
+    }
+}
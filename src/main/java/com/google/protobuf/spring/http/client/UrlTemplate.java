@@ -0,0 +1,192 @@
+package com.google.protobuf.spring.http.client;
+
+import com.google.protobuf.Message;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Array;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <code>ServiceRequest.pattern</code> compiled into literal and <code>${name}</code> variable segments, bound to the
+ * <code>RequestParam</code> annotated arguments of a service method.<br/>
+ * The pattern is parsed once per method; expanding it renders the base URL, the path and the query string into a
+ * single <code>StringBuilder</code>. Arguments whose name appears in the pattern are substituted into the path, all
+ * others are appended as query parameters.
+ */
+final class UrlTemplate {
+    private static final Logger log = Logger.getLogger(UrlTemplate.class.getName());
+    private static final String VARIABLE_PREFIX = "${";
+    private static final String VARIABLE_SUFFIX = "}";
+
+    private final String baseUrl;
+    private final RequestParam[] paramNames;
+    /** Literal text of the pattern, with <code>null</code> in place of each variable. */
+    private final String[] literals;
+    /** Variable slot rendered at each position of <code>literals</code> that is <code>null</code>. */
+    private final int[] segmentSlots;
+    private final String[] slotNames;
+    /** Variable slot bound to each method argument, or -1 if the argument is a query parameter. */
+    private final int[] argumentSlots;
+    private final int estimatedLength;
+
+    UrlTemplate(String baseUrl, String pattern, RequestParam[] paramNames) {
+        this.baseUrl = baseUrl;
+        this.paramNames = paramNames;
+        if (pattern == null)
+            pattern = "";
+
+        List<String> literalList = new ArrayList<String>();
+        List<Integer> slotList = new ArrayList<Integer>();
+        List<String> slotNameList = new ArrayList<String>();
+        int position = 0;
+        while (position < pattern.length()) {
+            int start = pattern.indexOf(VARIABLE_PREFIX, position);
+            int end = start < 0 ? -1 : pattern.indexOf(VARIABLE_SUFFIX, start + VARIABLE_PREFIX.length());
+            if (end < 0) {
+                literalList.add(pattern.substring(position));
+                slotList.add(-1);
+                break;
+            }
+            if (start > position) {
+                literalList.add(pattern.substring(position, start));
+                slotList.add(-1);
+            }
+            String name = pattern.substring(start + VARIABLE_PREFIX.length(), end);
+            int slot = slotNameList.indexOf(name);
+            if (slot < 0) {
+                slot = slotNameList.size();
+                slotNameList.add(name);
+            }
+            literalList.add(null);
+            slotList.add(slot);
+            position = end + VARIABLE_SUFFIX.length();
+        }
+
+        this.literals = literalList.toArray(new String[literalList.size()]);
+        this.segmentSlots = new int[slotList.size()];
+        for (int i = 0; i < segmentSlots.length; i++) {
+            segmentSlots[i] = slotList.get(i);
+        }
+        this.slotNames = slotNameList.toArray(new String[slotNameList.size()]);
+        this.argumentSlots = new int[paramNames.length];
+        for (int i = 0; i < paramNames.length; i++) {
+            argumentSlots[i] = paramNames[i] == null ? -1 : slotNameList.indexOf(paramNames[i].value());
+        }
+        this.estimatedLength = baseUrl.length() + pattern.length() + 16 * paramNames.length;
+    }
+
+    /**
+     * Renders the request URL for the given invocation arguments.
+     * @param args method invocation arguments, may be <code>null</code>.
+     * @param patternOnly if <code>true</code>, arguments which are not part of the pattern are not added as query parameters.
+     * @return base URL followed by the expanded pattern and query string.
+     */
+    public String expand(Object[] args, boolean patternOnly) {
+        StringBuilder url = new StringBuilder(estimatedLength);
+        url.append(baseUrl);
+        if (args == null) {
+            appendPath(url, null);
+            return url.toString();
+        }
+
+        String[] slotValues = new String[slotNames.length];
+        for (int i = 0; i < args.length; i++) {
+            if (isBound(args, i) && argumentSlots[i] >= 0) {
+                if (args[i].getClass().isArray()) {
+                    throw new IllegalArgumentException("An array can not be used as an argument for " +
+                            VARIABLE_PREFIX + paramNames[i].value() + VARIABLE_SUFFIX + " as spart of the URL path");
+                }
+                slotValues[argumentSlots[i]] = args[i].toString();
+            }
+        }
+        appendPath(url, slotValues);
+        if (patternOnly) {
+            return url.toString();
+        }
+
+        int queryStart = url.length();
+        for (int i = 0; i < args.length; i++) {
+            if (!isBound(args, i) || argumentSlots[i] >= 0) {
+                continue;
+            }
+            if (args[i].getClass().isArray()) {
+                for (int j = 0; j < Array.getLength(args[i]); j++) {
+                    Object element = Array.get(args[i], j);
+                    if (element != null) {
+                        appendQueryParameter(url, queryStart, paramNames[i].value(), element.toString());
+                    }
+                }
+            } else {
+                appendQueryParameter(url, queryStart, paramNames[i].value(), args[i].toString());
+            }
+        }
+        return url.toString();
+    }
+
+    /**
+     * Appends <i>value</i> to <i>url</i> in <code>application/x-www-form-urlencoded</code> form, as
+     * <code>URLEncoder</code> would, copying it as is when no character needs escaping.
+     */
+    static void appendEncoded(StringBuilder url, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (!isUnreserved(value.charAt(i))) {
+                try {
+                    url.append(URLEncoder.encode(value, "UTF-8"));
+                } catch (UnsupportedEncodingException e) {
+                    throw new RuntimeException("Unable to convert " + value + " to UTF-8", e);
+                }
+                return;
+            }
+        }
+        url.append(value);
+    }
+
+    private static boolean isUnreserved(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') ||
+                c == '.' || c == '-' || c == '*' || c == '_';
+    }
+
+    /**
+     * Checks whether the argument at <i>index</i> has a value to bind, validating required parameters.
+     */
+    private boolean isBound(Object[] args, int index) {
+        if (paramNames[index] == null) {
+            if (args[index] == null || !(args[index] instanceof Message)) {
+                // TODO: Possibly throw an exception instead!
+                log.log(Level.WARNING, "Argument at index " + index + " does not have a ParamName annotation and will be ignored!");
+            }
+            return false;
+        }
+        if (args[index] == null) {
+            if (paramNames[index].required()) {
+                throw new IllegalArgumentException(paramNames[index].value() + " is a required parameter!!!");
+            }
+            return false;
+        }
+        return !(args[index] instanceof ResponseCallback);
+    }
+
+    private void appendPath(StringBuilder url, String[] slotValues) {
+        for (int i = 0; i < literals.length; i++) {
+            if (literals[i] != null) {
+                url.append(literals[i]);
+            } else if (slotValues != null && slotValues[segmentSlots[i]] != null) {
+                appendEncoded(url, slotValues[segmentSlots[i]]);
+            } else {
+                url.append(VARIABLE_PREFIX).append(slotNames[segmentSlots[i]]).append(VARIABLE_SUFFIX);
+            }
+        }
+    }
+
+    private void appendQueryParameter(StringBuilder url, int queryStart, String name, String value) {
+        url.append(url.length() == queryStart ? '?' : '&');
+        appendEncoded(url, name);
+        url.append('=');
+        appendEncoded(url, value);
+    }
+}
@@ -0,0 +1,138 @@
+package com.google.protobuf.spring.http.metrics;
+
+import org.springframework.http.MediaType;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link ProtobufMetrics} aggregating in memory a {@link StageMetrics} per stage, service, media type and message
+ * type, and a {@link ServiceMetrics} per service.<br/>
+ * Media types are aggregated by type and subtype, ignoring parameters like the charset.
+ * @see JmxProtobufMetrics
+ */
+public class HistogramProtobufMetrics implements ProtobufMetrics {
+    private final ConcurrentHashMap<Key, StageMetrics> stageMetrics = new ConcurrentHashMap<Key, StageMetrics>();
+    private final ConcurrentHashMap<String, ServiceMetrics> serviceMetrics = new ConcurrentHashMap<String, ServiceMetrics>();
+
+    public boolean isEnabled() {
+        return true;
+    }
+
+    public void record(Stage stage, String serviceName, MediaType mediaType, Class<?> messageType, long durationNanos, long bytes) {
+        getStageMetrics(stage, serviceName, mediaType, messageType).record(durationNanos, bytes);
+    }
+
+    public void recordError(Stage stage, String serviceName, MediaType mediaType, Class<?> messageType) {
+        getStageMetrics(stage, serviceName, mediaType, messageType).recordError();
+    }
+
+    public void requestStarted(String serviceName) {
+        getServiceMetrics(serviceName).started();
+    }
+
+    public void requestFinished(String serviceName) {
+        getServiceMetrics(serviceName).finished();
+    }
+
+    /**
+     * @return metrics of the <i>stage</i>, created empty if nothing was recorded yet.
+     */
+    public StageMetrics getStageMetrics(Stage stage, String serviceName, MediaType mediaType, Class<?> messageType) {
+        Key key = new Key(stage, serviceName, mediaType, messageType);
+        StageMetrics metrics = stageMetrics.get(key);
+        if (metrics == null) {
+            StageMetrics created = new StageMetrics(stage, serviceName,
+                    mediaType != null ? mediaType.getType() + '/' + mediaType.getSubtype() : null,
+                    messageType != null ? messageType.getName() : null);
+            metrics = stageMetrics.putIfAbsent(key, created);
+            if (metrics == null) {
+                metrics = created;
+                stageMetricsCreated(created);
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * @return in-flight gauge of the service, created empty if no call was started yet.
+     */
+    public ServiceMetrics getServiceMetrics(String serviceName) {
+        ServiceMetrics metrics = serviceMetrics.get(serviceName);
+        if (metrics == null) {
+            ServiceMetrics created = new ServiceMetrics(serviceName);
+            metrics = serviceMetrics.putIfAbsent(serviceName, created);
+            if (metrics == null) {
+                metrics = created;
+                serviceMetricsCreated(created);
+            }
+        }
+        return metrics;
+    }
+
+    public Collection<StageMetrics> getAllStageMetrics() {
+        return Collections.unmodifiableList(new ArrayList<StageMetrics>(stageMetrics.values()));
+    }
+
+    public Collection<ServiceMetrics> getAllServiceMetrics() {
+        return Collections.unmodifiableList(new ArrayList<ServiceMetrics>(serviceMetrics.values()));
+    }
+
+    /**
+     * Called once for each new <i>metrics</i>, after it became visible to other threads.
+     */
+    protected void stageMetricsCreated(StageMetrics metrics) {
+    }
+
+    /**
+     * Called once for each new <i>metrics</i>, after it became visible to other threads.
+     */
+    protected void serviceMetricsCreated(ServiceMetrics metrics) {
+    }
+
+    private static final class Key {
+        private final Stage stage;
+        private final String serviceName;
+        private final String type;
+        private final String subtype;
+        private final Class<?> messageType;
+        private final int hash;
+
+        private Key(Stage stage, String serviceName, MediaType mediaType, Class<?> messageType) {
+            this.stage = stage;
+            this.serviceName = serviceName;
+            this.type = mediaType != null ? mediaType.getType() : null;
+            this.subtype = mediaType != null ? mediaType.getSubtype() : null;
+            this.messageType = messageType;
+            int h = stage.hashCode();
+            h = 31 * h + (serviceName != null ? serviceName.hashCode() : 0);
+            h = 31 * h + (type != null ? type.hashCode() : 0);
+            h = 31 * h + (subtype != null ? subtype.hashCode() : 0);
+            this.hash = 31 * h + (messageType != null ? messageType.hashCode() : 0);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash && stage == other.stage && messageType == other.messageType &&
+                    equal(serviceName, other.serviceName) && equal(type, other.type) && equal(subtype, other.subtype);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        private static boolean equal(Object a, Object b) {
+            return a != null ? a.equals(b) : b == null;
+        }
+    }
+}
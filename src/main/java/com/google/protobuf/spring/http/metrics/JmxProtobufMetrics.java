@@ -0,0 +1,82 @@
+package com.google.protobuf.spring.http.metrics;
+
+import org.springframework.beans.factory.DisposableBean;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@link HistogramProtobufMetrics} exporting each {@link StageMetrics} and {@link ServiceMetrics} as an MBean
+ * as soon as it is created, e.g.
+ * <code>com.google.protobuf.spring:type=StageMetrics,stage=PARSE,service="orders",mediaType="application/json",messageType="..."</code>
+ * <br/>The MBeans are unregistered when the bean is destroyed.
+ */
+public class JmxProtobufMetrics extends HistogramProtobufMetrics implements DisposableBean {
+    private static final Logger log = Logger.getLogger(JmxProtobufMetrics.class.getName());
+    public static final String DEFAULT_DOMAIN = "com.google.protobuf.spring";
+
+    private final MBeanServer mBeanServer;
+    private final String domain;
+    private final List<ObjectName> registeredNames = new CopyOnWriteArrayList<ObjectName>();
+
+    public JmxProtobufMetrics() {
+        this(ManagementFactory.getPlatformMBeanServer(), DEFAULT_DOMAIN);
+    }
+
+    public JmxProtobufMetrics(MBeanServer mBeanServer, String domain) {
+        this.mBeanServer = mBeanServer;
+        this.domain = domain;
+    }
+
+    public List<ObjectName> getRegisteredNames() {
+        return registeredNames;
+    }
+
+    public void destroy() {
+        for (ObjectName name : registeredNames) {
+            try {
+                mBeanServer.unregisterMBean(name);
+            } catch (JMException e) {
+                log.log(Level.FINE, "Unable to unregister " + name, e);
+            }
+        }
+        registeredNames.clear();
+    }
+
+    @Override
+    protected void stageMetricsCreated(StageMetrics metrics) {
+        StringBuilder name = new StringBuilder(domain).append(":type=StageMetrics,stage=").append(metrics.getStage());
+        appendProperty(name, "service", metrics.getServiceName());
+        appendProperty(name, "mediaType", metrics.getMediaType());
+        appendProperty(name, "messageType", metrics.getMessageType());
+        register(metrics, name.toString());
+    }
+
+    @Override
+    protected void serviceMetricsCreated(ServiceMetrics metrics) {
+        register(metrics, domain + ":type=ServiceMetrics,service=" + ObjectName.quote(String.valueOf(metrics.getServiceName())));
+    }
+
+    private void register(Object mBean, String name) {
+        try {
+            ObjectName objectName = new ObjectName(name);
+            mBeanServer.registerMBean(mBean, objectName);
+            registeredNames.add(objectName);
+        } catch (JMException e) {
+            // Metrics keep being recorded, they are just not visible through JMX
+            log.log(Level.WARNING, "Unable to register the MBean " + name, e);
+        }
+    }
+
+    private static void appendProperty(StringBuilder name, String key, String value) {
+        if (value != null) {
+            name.append(',').append(key).append('=').append(ObjectName.quote(value));
+        }
+    }
+}
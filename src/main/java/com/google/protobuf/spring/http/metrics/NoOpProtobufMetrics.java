@@ -0,0 +1,29 @@
+package com.google.protobuf.spring.http.metrics;
+
+import org.springframework.http.MediaType;
+
+/**
+ * {@link ProtobufMetrics} recording nothing, used by default.
+ */
+public final class NoOpProtobufMetrics implements ProtobufMetrics {
+    public static final NoOpProtobufMetrics INSTANCE = new NoOpProtobufMetrics();
+
+    private NoOpProtobufMetrics() {
+    }
+
+    public boolean isEnabled() {
+        return false;
+    }
+
+    public void record(Stage stage, String serviceName, MediaType mediaType, Class<?> messageType, long durationNanos, long bytes) {
+    }
+
+    public void recordError(Stage stage, String serviceName, MediaType mediaType, Class<?> messageType) {
+    }
+
+    public void requestStarted(String serviceName) {
+    }
+
+    public void requestFinished(String serviceName) {
+    }
+}
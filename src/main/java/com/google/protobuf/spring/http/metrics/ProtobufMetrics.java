@@ -0,0 +1,53 @@
+package com.google.protobuf.spring.http.metrics;
+
+import org.springframework.http.MediaType;
+
+/**
+ * Receives the timings, payload sizes, errors and in-flight changes of the converters and service proxies.<br/>
+ * Implementations must be thread safe and cheap, since they are called on every request. Callers only take
+ * timestamps when {@link #isEnabled()} returns <code>true</code>, so the {@link NoOpProtobufMetrics} default costs
+ * a single call per request.
+ * @see HistogramProtobufMetrics
+ * @see JmxProtobufMetrics
+ */
+public interface ProtobufMetrics {
+
+    /**
+     * Measured parts of the processing of a request.
+     */
+    enum Stage {
+        /** Reading a message from a request or response body. */
+        PARSE,
+        /** Rendering a message and writing it into a request or response body. */
+        SERIALIZE,
+        /** A whole service call made by a service proxy, from sending the request until the response is available. */
+        EXCHANGE,
+        /** Running the <code>ResponseCallback</code> of a service call. */
+        CALLBACK
+    }
+
+    /**
+     * @return <code>false</code> if nothing is recorded, allowing callers to skip measuring.
+     */
+    boolean isEnabled();
+
+    /**
+     * Records a successful stage.
+     * @param stage measured.
+     * @param serviceName <code>ServiceRequest.name</code> of the service call, <code>null</code> outside service proxies.
+     * @param mediaType of the body, <code>null</code> if unknown.
+     * @param messageType of the body, <code>null</code> if unknown.
+     * @param durationNanos elapsed time in nanoseconds.
+     * @param bytes uncompressed size of the body, -1 if unknown or not applicable.
+     */
+    void record(Stage stage, String serviceName, MediaType mediaType, Class<?> messageType, long durationNanos, long bytes);
+
+    /**
+     * Records a stage that failed with an exception.
+     */
+    void recordError(Stage stage, String serviceName, MediaType mediaType, Class<?> messageType);
+
+    void requestStarted(String serviceName);
+
+    void requestFinished(String serviceName);
+}
@@ -0,0 +1,38 @@
+package com.google.protobuf.spring.http.metrics;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-flight gauge of the calls to a service.
+ */
+public class ServiceMetrics implements ServiceMetricsMBean {
+    private final String serviceName;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong startedCount = new AtomicLong();
+
+    public ServiceMetrics(String serviceName) {
+        this.serviceName = serviceName;
+    }
+
+    void started() {
+        inFlight.incrementAndGet();
+        startedCount.incrementAndGet();
+    }
+
+    void finished() {
+        inFlight.decrementAndGet();
+    }
+
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    public int getInFlightCount() {
+        return inFlight.get();
+    }
+
+    public long getStartedCount() {
+        return startedCount.get();
+    }
+}
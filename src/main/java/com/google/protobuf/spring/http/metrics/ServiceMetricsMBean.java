@@ -0,0 +1,13 @@
+package com.google.protobuf.spring.http.metrics;
+
+/**
+ * JMX view of a {@link ServiceMetrics}.
+ */
+public interface ServiceMetricsMBean {
+
+    String getServiceName();
+
+    int getInFlightCount();
+
+    long getStartedCount();
+}
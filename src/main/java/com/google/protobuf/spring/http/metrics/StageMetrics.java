@@ -0,0 +1,92 @@
+package com.google.protobuf.spring.http.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latencies, payload bytes and errors of one {@link ProtobufMetrics.Stage} for a service, media type and
+ * message type.
+ */
+public class StageMetrics implements StageMetricsMBean {
+    private static final double NANOS_PER_MICRO = 1000.0;
+
+    private final ProtobufMetrics.Stage stage;
+    private final String serviceName;
+    private final String mediaType;
+    private final String messageType;
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong errorCount = new AtomicLong();
+
+    public StageMetrics(ProtobufMetrics.Stage stage, String serviceName, String mediaType, String messageType) {
+        this.stage = stage;
+        this.serviceName = serviceName;
+        this.mediaType = mediaType;
+        this.messageType = messageType;
+    }
+
+    void record(long durationNanos, long bytes) {
+        latencies.record(durationNanos);
+        if (bytes > 0) {
+            this.bytes.addAndGet(bytes);
+        }
+    }
+
+    void recordError() {
+        errorCount.incrementAndGet();
+    }
+
+    public String getStage() {
+        return stage.name();
+    }
+
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    public String getMessageType() {
+        return messageType;
+    }
+
+    /**
+     * @return latency histogram in nanoseconds.
+     */
+    public LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    public long getCount() {
+        return latencies.getCount();
+    }
+
+    public long getErrorCount() {
+        return errorCount.get();
+    }
+
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    public double getMeanMicros() {
+        return latencies.getMean() / NANOS_PER_MICRO;
+    }
+
+    public double getMedianMicros() {
+        return latencies.getValueAtPercentile(50) / NANOS_PER_MICRO;
+    }
+
+    public double get99thPercentileMicros() {
+        return latencies.getValueAtPercentile(99) / NANOS_PER_MICRO;
+    }
+
+    public double get999thPercentileMicros() {
+        return latencies.getValueAtPercentile(99.9) / NANOS_PER_MICRO;
+    }
+
+    public double getMaxMicros() {
+        return latencies.getMax() / NANOS_PER_MICRO;
+    }
+}
@@ -0,0 +1,31 @@
+package com.google.protobuf.spring.http.metrics;
+
+/**
+ * JMX view of a {@link StageMetrics}, latencies are in microseconds.
+ */
+public interface StageMetricsMBean {
+
+    String getStage();
+
+    String getServiceName();
+
+    String getMediaType();
+
+    String getMessageType();
+
+    long getCount();
+
+    long getErrorCount();
+
+    long getBytes();
+
+    double getMeanMicros();
+
+    double getMedianMicros();
+
+    double get99thPercentileMicros();
+
+    double get999thPercentileMicros();
+
+    double getMaxMicros();
+}
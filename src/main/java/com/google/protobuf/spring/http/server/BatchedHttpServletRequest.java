@@ -0,0 +1,133 @@
+package com.google.protobuf.spring.http.server;
+
+import com.google.protobuf.spring.http.BatchProtos.BatchRequest;
+
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+
+/**
+ * Request of a single call of a batch: the method, the <code>Accept</code>, <code>Content-Type</code> and
+ * <code>Content-Length</code> headers and the body are those of its <code>BatchRequest</code>, the other headers
+ * are those of the batch request, except its content coding headers.
+ */
+final class BatchedHttpServletRequest extends HttpServletRequestWrapper {
+    private static final String ACCEPT = "Accept";
+    private static final String CONTENT_TYPE = "Content-Type";
+    private static final String CONTENT_LENGTH = "Content-Length";
+    private static final String[] HIDDEN_HEADERS = {ACCEPT, CONTENT_TYPE, CONTENT_LENGTH, "Accept-Encoding", "Content-Encoding"};
+
+    private final BatchRequest request;
+    private final InputStream body;
+
+    BatchedHttpServletRequest(HttpServletRequest batchRequest, BatchRequest request) {
+        super(batchRequest);
+        this.request = request;
+        this.body = request.getBody().newInput();
+    }
+
+    @Override
+    public String getMethod() {
+        return request.getMethod();
+    }
+
+    @Override
+    public String getContentType() {
+        return request.hasContentType() ? request.getContentType() : null;
+    }
+
+    @Override
+    public int getContentLength() {
+        return request.hasBody() ? request.getBody().size() : -1;
+    }
+
+    @Override
+    public ServletInputStream getInputStream() throws IOException {
+        return new ServletInputStream() {
+            @Override
+            public int read() throws IOException {
+                return body.read();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return body.read(b, off, len);
+            }
+        };
+    }
+
+    @Override
+    public BufferedReader getReader() throws IOException {
+        String encoding = getCharacterEncoding();
+        return new BufferedReader(new InputStreamReader(body, encoding != null ? encoding : "ISO-8859-1"));
+    }
+
+    @Override
+    public String getHeader(String name) {
+        String value = ownHeader(name);
+        if (value != null || isHidden(name)) {
+            return value;
+        }
+        return super.getHeader(name);
+    }
+
+    @Override
+    public Enumeration getHeaders(String name) {
+        if (isHidden(name)) {
+            String value = ownHeader(name);
+            return Collections.enumeration(value != null ? Collections.singletonList(value) : Collections.<String>emptyList());
+        }
+        return super.getHeaders(name);
+    }
+
+    @Override
+    public Enumeration getHeaderNames() {
+        List<String> names = new ArrayList<String>();
+        for (Enumeration e = super.getHeaderNames(); e.hasMoreElements();) {
+            String name = (String) e.nextElement();
+            if (!isHidden(name)) {
+                names.add(name);
+            }
+        }
+        for (String name : HIDDEN_HEADERS) {
+            if (ownHeader(name) != null) {
+                names.add(name);
+            }
+        }
+        return Collections.enumeration(names);
+    }
+
+    @Override
+    public int getIntHeader(String name) {
+        String value = getHeader(name);
+        return value != null ? Integer.parseInt(value) : -1;
+    }
+
+    private String ownHeader(String name) {
+        if (ACCEPT.equalsIgnoreCase(name)) {
+            return request.hasAccept() ? request.getAccept() : null;
+        } else if (CONTENT_TYPE.equalsIgnoreCase(name)) {
+            return getContentType();
+        } else if (CONTENT_LENGTH.equalsIgnoreCase(name)) {
+            return request.hasBody() ? String.valueOf(request.getBody().size()) : null;
+        }
+        return null;
+    }
+
+    private static boolean isHidden(String name) {
+        for (String hidden : HIDDEN_HEADERS) {
+            if (hidden.equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,201 @@
+package com.google.protobuf.spring.http.server;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.spring.http.BatchProtos.BatchResponse;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Response of a single call of a batch, buffering the status, content type and body into a
+ * <code>BatchResponse</code> instead of writing to the batch response. Other headers and cookies are dropped.
+ */
+final class BatchedHttpServletResponse extends HttpServletResponseWrapper {
+    private static final String CONTENT_TYPE = "Content-Type";
+    private static final String DEFAULT_CHARACTER_ENCODING = "ISO-8859-1";
+
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    private int status = SC_OK;
+    private String contentType;
+    private String characterEncoding;
+    private ServletOutputStream outputStream;
+    private PrintWriter writer;
+
+    BatchedHttpServletResponse(HttpServletResponse batchResponse) {
+        super(batchResponse);
+    }
+
+    BatchResponse toBatchResponse() {
+        if (writer != null) {
+            writer.flush();
+        }
+        BatchResponse.Builder response = BatchResponse.newBuilder().setStatus(status);
+        if (contentType != null) {
+            response.setContentType(contentType);
+        }
+        if (body.size() > 0) {
+            response.setBody(ByteString.copyFrom(body.toByteArray()));
+        }
+        return response.build();
+    }
+
+    @Override
+    public void setStatus(int status) {
+        this.status = status;
+    }
+
+    @Override
+    public void setStatus(int status, String message) {
+        this.status = status;
+    }
+
+    @Override
+    public void sendError(int status) throws IOException {
+        sendError(status, null);
+    }
+
+    @Override
+    public void sendError(int status, String message) throws IOException {
+        this.status = status;
+        resetBuffer();
+        if (message != null) {
+            contentType = "text/plain;charset=UTF-8";
+            body.write(message.getBytes("UTF-8"));
+        }
+    }
+
+    @Override
+    public void sendRedirect(String location) throws IOException {
+        status = SC_FOUND;
+    }
+
+    @Override
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+
+    @Override
+    public String getContentType() {
+        return contentType;
+    }
+
+    @Override
+    public void setCharacterEncoding(String characterEncoding) {
+        this.characterEncoding = characterEncoding;
+    }
+
+    @Override
+    public String getCharacterEncoding() {
+        return characterEncoding != null ? characterEncoding : DEFAULT_CHARACTER_ENCODING;
+    }
+
+    @Override
+    public void setContentLength(int length) {
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+        if (CONTENT_TYPE.equalsIgnoreCase(name)) {
+            contentType = value;
+        }
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        setHeader(name, value);
+    }
+
+    @Override
+    public boolean containsHeader(String name) {
+        return CONTENT_TYPE.equalsIgnoreCase(name) && contentType != null;
+    }
+
+    @Override
+    public void setIntHeader(String name, int value) {
+    }
+
+    @Override
+    public void addIntHeader(String name, int value) {
+    }
+
+    @Override
+    public void setDateHeader(String name, long date) {
+    }
+
+    @Override
+    public void addDateHeader(String name, long date) {
+    }
+
+    @Override
+    public void addCookie(Cookie cookie) {
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() {
+        if (outputStream == null) {
+            outputStream = new ServletOutputStream() {
+                @Override
+                public void write(int b) {
+                    body.write(b);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                    body.write(b, off, len);
+                }
+            };
+        }
+        return outputStream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws UnsupportedEncodingException {
+        if (writer == null) {
+            writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), getCharacterEncoding()));
+        }
+        return writer;
+    }
+
+    @Override
+    public void setBufferSize(int size) {
+    }
+
+    @Override
+    public int getBufferSize() {
+        return body.size();
+    }
+
+    @Override
+    public void flushBuffer() {
+        if (writer != null) {
+            writer.flush();
+        }
+    }
+
+    @Override
+    public boolean isCommitted() {
+        return false;
+    }
+
+    @Override
+    public void resetBuffer() {
+        if (writer != null) {
+            writer.flush();
+        }
+        body.reset();
+    }
+
+    @Override
+    public void reset() {
+        resetBuffer();
+        status = SC_OK;
+        contentType = null;
+    }
+}
@@ -1,22 +1,74 @@
 package com.google.protobuf.spring.http.server;
 
+import org.springframework.web.servlet.ModelAndView;
 import org.springframework.web.servlet.mvc.annotation.AnnotationMethodHandlerAdapter;
 import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.util.StringUtils;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
+import com.google.protobuf.spring.http.AcceptEncodingHttpOutputMessage;
+import com.google.protobuf.spring.http.ConditionalHttpOutputMessage;
+import com.google.protobuf.spring.http.ContentEncoding;
+import com.google.protobuf.spring.http.MessageLimits;
+import com.google.protobuf.spring.http.ProtobufFormat;
 import com.google.protobuf.spring.http.ProtobufHttpMessageConverter;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
 import java.util.List;
 import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * 
  */
 public class ProtobufAnnotationMethodHandlerAdapter extends AnnotationMethodHandlerAdapter {
+    /**
+     * Bounds the negotiation cache, since the <code>Accept</code> header values are chosen by the clients; the cache is
+     * cleared once full.
+     */
+    static final int MAX_NEGOTIATED_ACCEPT_HEADERS = 256;
+    private static final String ACCEPT = "Accept";
+
     private String formatParameterName = "format";
+    private final ConcurrentMap<String, NegotiatedAccept> negotiatedAcceptHeaders = new ConcurrentHashMap<String, NegotiatedAccept>();
+    private final ThreadLocal<HttpServletRequest> currentRequest = new ThreadLocal<HttpServletRequest>();
+    private HttpMessageConverter<?>[] messageConverters;
+
+    public ProtobufAnnotationMethodHandlerAdapter() {
+        setMessageConverters(super.getMessageConverters());
+    }
+
+    /**
+     * The <code>@RequestBody</code> arguments are read by wrappers of the converters, so that only the request bodies
+     * rejected by the {@link MessageLimits} are answered with <code>413 Request Entity Too Large</code>.
+     */
+    @Override
+    public void setMessageConverters(HttpMessageConverter<?>[] messageConverters) {
+        HttpMessageConverter<?>[] requestBodyConverters = new HttpMessageConverter<?>[messageConverters.length];
+        for (int i = 0; i < messageConverters.length; i++) {
+            requestBodyConverters[i] = new RequestBodyHttpMessageConverter(messageConverters[i]);
+        }
+        this.messageConverters = messageConverters;
+        super.setMessageConverters(requestBodyConverters);
+    }
+
+    @Override
+    public HttpMessageConverter<?>[] getMessageConverters() {
+        return messageConverters;
+    }
 
     public String getFormatParameterName() {
         return formatParameterName;
@@ -24,36 +76,158 @@ public class ProtobufAnnotationMethodHandlerAdapter extends AnnotationMethodHand
 
     public void setFormatParameterName(String formatParameterName) {
         this.formatParameterName = formatParameterName;
+        negotiatedAcceptHeaders.clear();
     }
 
     @Override
     protected HttpInputMessage createHttpInputMessage(HttpServletRequest servletRequest) throws Exception {
-        HttpInputMessage input = super.createHttpInputMessage(servletRequest);
-        adjustAcceptHeader(servletRequest, input.getHeaders());
-        return input;
-    }
-
-    private void adjustAcceptHeader(HttpServletRequest servletRequest, HttpHeaders headers) {
-        List<MediaType> format = new LinkedList<MediaType>();
-        List<MediaType> original = headers.getAccept();
-        if (servletRequest.getParameter(formatParameterName) != null) {
-            format.add(MediaType.parseMediaType(servletRequest.getParameter(formatParameterName)));
-        } else if (!original.isEmpty()) {
-            // This is to handle the modern browsers that send application/xml ahead of text/html header
-            for (MediaType mediaType : original) {
-                if (ProtobufHttpMessageConverter.HTML.isCompatibleWith(mediaType)) {
-                    format.add(0, ProtobufHttpMessageConverter.HTML);
-                } else {
-                    format.add(mediaType);
-                }
+        return new NegotiatedHttpInputMessage(super.createHttpInputMessage(servletRequest), negotiateAccept(servletRequest));
+    }
+
+    /**
+     * Answers request bodies rejected by the {@link MessageLimits} of the <code>ProtobufHttpMessageConverter</code>
+     * with <code>413 Request Entity Too Large</code>; the messages too large that the handler reads itself are server
+     * errors and propagate.
+     */
+    @Override
+    protected ModelAndView invokeHandlerMethod(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        currentRequest.set(request);
+        try {
+            return super.invokeHandlerMethod(request, response, handler);
+        } catch (RequestBodyTooLargeException e) {
+            response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, e.getMessage());
+            return null;
+        } finally {
+            currentRequest.remove();
+        }
+    }
+
+    /**
+     * Exposes the content coding accepted by the current request to the <code>ProtobufHttpMessageConverter</code>,
+     * which decides whether to compress the response, along with the <code>If-None-Match</code> entity tags of
+     * <code>GET</code> and <code>HEAD</code> requests.
+     */
+    @Override
+    protected HttpOutputMessage createHttpOutputMessage(HttpServletResponse servletResponse) throws Exception {
+        HttpOutputMessage output = super.createHttpOutputMessage(servletResponse);
+        HttpServletRequest servletRequest = currentRequest.get();
+        if (servletRequest == null) {
+            return output;
+        }
+        ContentEncoding acceptedEncoding = ContentEncoding.negotiate(servletRequest.getHeader(ContentEncoding.ACCEPT_ENCODING));
+        String method = servletRequest.getMethod();
+        if ("GET".equals(method) || "HEAD".equals(method)) {
+            return new ConditionalHttpOutputMessage(output, acceptedEncoding, retrieveIfNoneMatch(servletRequest));
+        }
+        return new AcceptEncodingHttpOutputMessage(output, acceptedEncoding);
+    }
+
+    private List<String> retrieveIfNoneMatch(HttpServletRequest servletRequest) {
+        List<String> eTags = new LinkedList<String>();
+        Enumeration values = servletRequest.getHeaders(ConditionalHttpOutputMessage.IF_NONE_MATCH);
+        while (values != null && values.hasMoreElements()) {
+            eTags.addAll(Arrays.asList(StringUtils.tokenizeToStringArray((String) values.nextElement(), ",")));
+        }
+        return eTags;
+    }
+
+    /**
+     * Replaces the <code>Accept</code> header with the formats requested by the <code>format</code> parameter, or
+     * moves HTML ahead of the other accepted types.<br/>
+     * The outcome only depends on the parameter if present, on the raw header value otherwise, so it is negotiated
+     * once per distinct value and then looked up.
+     */
+    private NegotiatedAccept negotiateAccept(HttpServletRequest servletRequest) {
+        String format = servletRequest.getParameter(formatParameterName);
+        String accept = servletRequest.getHeader(ACCEPT);
+        // Header values cannot hold line breaks, so the parameter values never collide with them
+        String key = format != null ? '\n' + format : (accept != null ? accept : "");
+        NegotiatedAccept negotiated = negotiatedAcceptHeaders.get(key);
+        if (negotiated == null) {
+            List<MediaType> original = accept != null ? MediaType.parseMediaTypes(accept) : Collections.<MediaType>emptyList();
+            negotiated = new NegotiatedAccept(negotiateAccept(format, original));
+            if (negotiatedAcceptHeaders.size() >= MAX_NEGOTIATED_ACCEPT_HEADERS) {
+                negotiatedAcceptHeaders.clear();
             }
-            if (format.isEmpty()) {
-                format = original;
+            negotiatedAcceptHeaders.put(key, negotiated);
+        }
+        return negotiated;
+    }
+
+    private List<MediaType> negotiateAccept(String format, List<MediaType> original) {
+        if (format != null) {
+            ProtobufFormat namedFormat = ProtobufFormat.forName(format);
+            return Collections.singletonList(namedFormat != null ? namedFormat.getMediaType() : MediaType.parseMediaType(format));
+        } else if (original.isEmpty()) {
+            return Collections.singletonList(ProtobufHttpMessageConverter.PROTOBUF);
+        }
+        // This is to handle the modern browsers that send application/xml ahead of text/html header
+        List<MediaType> negotiated = new ArrayList<MediaType>(original.size());
+        for (MediaType mediaType : original) {
+            if (ProtobufHttpMessageConverter.HTML.isCompatibleWith(mediaType)) {
+                negotiated.add(0, ProtobufHttpMessageConverter.HTML);
+            } else {
+                negotiated.add(mediaType);
             }
-        } else {
-            format.add(ProtobufHttpMessageConverter.PROTOBUF);
         }
+        return negotiated;
+    }
+
+    int getNegotiatedAcceptHeaderCount() {
+        return negotiatedAcceptHeaders.size();
+    }
+
+    boolean isNegotiationCached(String accept) {
+        return negotiatedAcceptHeaders.containsKey(accept);
+    }
+
+    /**
+     * Outcome of the negotiation of an <code>Accept</code> header, shared by the requests sending it.
+     */
+    private static final class NegotiatedAccept {
+        private final List<MediaType> mediaTypes;
+        private final String value;
 
-        headers.setAccept(format);
+        private NegotiatedAccept(List<MediaType> mediaTypes) {
+            this.mediaTypes = mediaTypes;
+            this.value = MediaType.toString(mediaTypes);
+        }
+    }
+
+    /**
+     * Request whose <code>Accept</code> header is the negotiated one, handed out without parsing it again.
+     */
+    private static final class NegotiatedHttpInputMessage implements HttpInputMessage {
+        private final HttpInputMessage input;
+        private final NegotiatedAccept accept;
+        private HttpHeaders headers;
+
+        private NegotiatedHttpInputMessage(HttpInputMessage input, NegotiatedAccept accept) {
+            this.input = input;
+            this.accept = accept;
+        }
+
+        public InputStream getBody() throws IOException {
+            return input.getBody();
+        }
+
+        public HttpHeaders getHeaders() {
+            if (headers == null) {
+                headers = new HttpHeaders() {
+                    @Override
+                    public List<MediaType> getAccept() {
+                        // Callers sort the list in place
+                        return new ArrayList<MediaType>(accept.mediaTypes);
+                    }
+                };
+                for (Map.Entry<String, List<String>> header : input.getHeaders().entrySet()) {
+                    for (String value : header.getValue()) {
+                        headers.add(header.getKey(), value);
+                    }
+                }
+                headers.set(ACCEPT, accept.value);
+            }
+            return headers;
+        }
     }
 }
@@ -0,0 +1,169 @@
+package com.google.protobuf.spring.http.server;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.UninitializedMessageException;
+import com.google.protobuf.spring.http.BatchProtos.BatchRequest;
+import com.google.protobuf.spring.http.BatchProtos.BatchResponse;
+import com.google.protobuf.spring.http.MessageLimits;
+import com.google.protobuf.spring.http.ProtobufHttpMessageConverter;
+import org.springframework.web.HttpRequestHandler;
+
+import javax.servlet.RequestDispatcher;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Serves the batches sent by a <code>ServiceBatch</code>: each length-delimited <code>BatchRequest</code> of the
+ * request body is forwarded through the servlet container to the handler method mapped to its path, as if it had
+ * been sent on its own, and its response is written back as a length-delimited <code>BatchResponse</code> before
+ * the next call is dispatched, so responses are streamed in the order of the calls.<br/>
+ * Map it on the batch path of the service, <code>/batch</code> by default, e.g. with an
+ * <code>HttpRequestHandlerAdapter</code> or an <code>HttpRequestHandlerServlet</code>.
+ * All calls are read before the first is dispatched, so the memory held by a batch is bounded by its maximum size in
+ * bytes: a batch with more calls than the maximum batch size, more bytes than the maximum batch length or a call
+ * larger than the size limit of <code>BatchRequest</code> in the {@link MessageLimits} is rejected as a whole with
+ * <code>413 Request Entity Too Large</code> before the offending call is read, and a malformed batch with
+ * <code>400 Bad Request</code>.
+ */
+public class ProtobufBatchDispatcher implements HttpRequestHandler {
+    private static final Logger log = Logger.getLogger(ProtobufBatchDispatcher.class.getName());
+    public static final int DEFAULT_MAX_BATCH_SIZE = 1000;
+    public static final int DEFAULT_MAX_BATCH_LENGTH = 16 * 1024 * 1024;
+
+    private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+    private int maxBatchLength = DEFAULT_MAX_BATCH_LENGTH;
+    private MessageLimits messageLimits = new MessageLimits();
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * @param maxBatchSize number of calls dispatched per batch, 1000 by default.
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("Maximum batch size must be positive, but was " + maxBatchSize);
+        }
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public int getMaxBatchLength() {
+        return maxBatchLength;
+    }
+
+    /**
+     * @param maxBatchLength number of bytes of the request body of a batch, 16 MB by default.
+     */
+    public void setMaxBatchLength(int maxBatchLength) {
+        if (maxBatchLength <= 0) {
+            throw new IllegalArgumentException("Maximum batch length must be positive, but was " + maxBatchLength);
+        }
+        this.maxBatchLength = maxBatchLength;
+    }
+
+    public MessageLimits getMessageLimits() {
+        return messageLimits;
+    }
+
+    /**
+     * @param messageLimits applied to each call of a batch, usually those of the
+     * <code>ProtobufHttpMessageConverter</code>, <code>null</code> for the defaults, which only limit nesting. The
+     * size limit of <code>BatchRequest</code> bounds a call, envelope included; the body of the call is read by the
+     * converter with the limit of its own type.
+     */
+    public void setMessageLimits(MessageLimits messageLimits) {
+        this.messageLimits = messageLimits != null ? messageLimits : new MessageLimits();
+    }
+
+    public void handleRequest(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        if (!"POST".equals(request.getMethod())) {
+            response.setHeader("Allow", "POST");
+            response.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+            return;
+        }
+        if (request.getContentLength() > maxBatchLength) {
+            response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE,
+                    "A batch must not be larger than " + maxBatchLength + " bytes");
+            return;
+        }
+        CodedInputStream input = CodedInputStream.newInstance(request.getInputStream());
+        // Bounded by the maximum batch length instead, checked before each call is read
+        input.setSizeLimit(Integer.MAX_VALUE);
+        input.setRecursionLimit(messageLimits.getRecursionLimit());
+        int maxCallSize = messageLimits.getMaxMessageSize(BatchRequest.class);
+        List<BatchRequest> calls = new ArrayList<BatchRequest>();
+        try {
+            while (!input.isAtEnd()) {
+                if (calls.size() == maxBatchSize) {
+                    response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE,
+                            "A batch must not have more than " + maxBatchSize + " calls");
+                    return;
+                }
+                int length = input.readRawVarint32();
+                if (maxCallSize >= 0 && length > maxCallSize) {
+                    response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE,
+                            "A batched call must not be larger than " + maxCallSize + " bytes");
+                    return;
+                }
+                if ((long) input.getTotalBytesRead() + length > maxBatchLength) {
+                    response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE,
+                            "A batch must not be larger than " + maxBatchLength + " bytes");
+                    return;
+                }
+                int limit = input.pushLimit(length);
+                BatchRequest.Builder call = BatchRequest.newBuilder().mergeFrom(input);
+                input.checkLastTagWas(0);
+                input.popLimit(limit);
+                calls.add(call.build());
+            }
+        } catch (InvalidProtocolBufferException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        } catch (UninitializedMessageException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+        response.setContentType(ProtobufHttpMessageConverter.BATCH.toString());
+        OutputStream out = response.getOutputStream();
+        for (BatchRequest call : calls) {
+            dispatch(request, response, call).writeDelimitedTo(out);
+        }
+        out.flush();
+    }
+
+    /**
+     * Forwards a single call to the handler method mapped to its path.
+     * @param request of the whole batch.
+     * @param response of the whole batch, left untouched.
+     * @param call to be dispatched.
+     * @return response of the call.
+     */
+    protected BatchResponse dispatch(HttpServletRequest request, HttpServletResponse response, BatchRequest call) {
+        String path = call.getPath();
+        String contextPath = request.getContextPath();
+        if (contextPath != null && contextPath.length() > 0 && path.startsWith(contextPath)) {
+            path = path.substring(contextPath.length());
+        }
+        RequestDispatcher dispatcher = request.getRequestDispatcher(path);
+        if (dispatcher == null) {
+            return BatchResponse.newBuilder().setStatus(HttpServletResponse.SC_NOT_FOUND).build();
+        }
+        BatchedHttpServletResponse callResponse = new BatchedHttpServletResponse(response);
+        try {
+            dispatcher.forward(new BatchedHttpServletRequest(request, call), callResponse);
+        } catch (Exception e) {
+            log.log(Level.WARNING, "Batched call to " + call.getMethod() + " " + call.getPath() + " failed", e);
+            return BatchResponse.newBuilder().setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR).build();
+        }
+        return callResponse.toBatchResponse();
+    }
+}
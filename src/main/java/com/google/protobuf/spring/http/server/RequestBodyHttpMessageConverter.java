@@ -0,0 +1,56 @@
+package com.google.protobuf.spring.http.server;
+
+import com.google.protobuf.spring.http.MessageTooLargeException;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Converter used by the {@link ProtobufAnnotationMethodHandlerAdapter} to read the <code>@RequestBody</code>
+ * arguments, which marks the bodies rejected by the {@link com.google.protobuf.spring.http.MessageLimits} with a
+ * {@link RequestBodyTooLargeException}.
+ */
+final class RequestBodyHttpMessageConverter implements HttpMessageConverter<Object> {
+    private final HttpMessageConverter<Object> converter;
+
+    @SuppressWarnings("unchecked")
+    RequestBodyHttpMessageConverter(HttpMessageConverter<?> converter) {
+        this.converter = (HttpMessageConverter<Object>) converter;
+    }
+
+    HttpMessageConverter<?> getConverter() {
+        return converter;
+    }
+
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return converter.canRead(clazz, mediaType);
+    }
+
+    public boolean canWrite(Class<?> clazz, MediaType mediaType) {
+        return converter.canWrite(clazz, mediaType);
+    }
+
+    public List<MediaType> getSupportedMediaTypes() {
+        return converter.getSupportedMediaTypes();
+    }
+
+    public Object read(Class<?> clazz, HttpInputMessage inputMessage) throws IOException, HttpMessageNotReadableException {
+        try {
+            return converter.read(clazz, inputMessage);
+        } catch (RequestBodyTooLargeException e) {
+            throw e;
+        } catch (MessageTooLargeException e) {
+            throw new RequestBodyTooLargeException(e);
+        }
+    }
+
+    public void write(Object o, MediaType contentType, HttpOutputMessage outputMessage) throws IOException, HttpMessageNotWritableException {
+        converter.write(o, contentType, outputMessage);
+    }
+}
@@ -0,0 +1,13 @@
+package com.google.protobuf.spring.http.server;
+
+import com.google.protobuf.spring.http.MessageTooLargeException;
+
+/**
+ * Tells a request body rejected by the {@link com.google.protobuf.spring.http.MessageLimits} apart from the messages
+ * too large that the handler itself reads, e.g. the responses of the services it calls.
+ */
+final class RequestBodyTooLargeException extends MessageTooLargeException {
+    RequestBodyTooLargeException(MessageTooLargeException cause) {
+        super(cause);
+    }
+}
@@ -1,17 +1,38 @@
 package com.google.protobuf.spring.http;
 
+import com.google.protobuf.spring.ExtensionRegistryCache;
+import com.google.protobuf.spring.ExtensionRegistryInitializer;
+import com.google.protobuf.spring.MessageDefaultInstanceRegistry;
+import com.google.protobuf.spring.http.proto.model.Everything;
+import com.google.protobuf.spring.http.proto.model.TestProtos;
 import com.google.protobuf.spring.http.proto.model.Tester;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.ExtensionRegistry;
 import com.google.protobuf.Message;
 import junit.framework.TestCase;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpOutputMessage;
 import org.springframework.http.HttpInputMessage;
+import org.springframework.http.MediaType;
 import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.http.server.ServletServerHttpResponse;
 import org.springframework.http.server.ServletServerHttpRequest;
 import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.util.FileCopyUtils;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * 
@@ -46,4 +67,501 @@ public class ProtobufHttpMessageConverterTest extends TestCase {
 
         assertEquals(converted, msg);
     }
+
+    @SuppressWarnings("unchecked")
+    public void testTextFormatsRenderedOnce() throws IOException {
+        Tester msg = Tester.newBuilder().setId(1).build();
+        MediaType[] mediaTypes = {ProtobufHttpMessageConverter.JSON, ProtobufHttpMessageConverter.XML,
+                ProtobufHttpMessageConverter.TEXT, ProtobufHttpMessageConverter.HTML};
+        for (MediaType mediaType : mediaTypes) {
+            CountingProtobufHttpMessageConverter converter = new CountingProtobufHttpMessageConverter();
+            MockHttpServletResponse response = new MockHttpServletResponse();
+
+            converter.write(msg, mediaType, new ServletServerHttpResponse(response));
+
+            assertEquals(1, converter.printCount);
+            assertEquals(String.valueOf(response.getContentAsByteArray().length), response.getHeader("Content-Length"));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testProtobufContentLength() throws IOException {
+        Tester msg = Tester.newBuilder().setId(1).build();
+        CountingProtobufHttpMessageConverter converter = new CountingProtobufHttpMessageConverter();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        converter.write(msg, ProtobufHttpMessageConverter.PROTOBUF, new ServletServerHttpResponse(response));
+
+        assertEquals(0, converter.printCount);
+        assertEquals(String.valueOf(msg.getSerializedSize()), response.getHeader("Content-Length"));
+        assertEquals(msg, Tester.parseFrom(response.getContentAsByteArray()));
+    }
+
+    public void testProtobufStreamedInBufferSizeChunks() throws IOException {
+        Everything.Builder builder = Everything.newBuilder();
+        for (int i = 0; i < 200; i++) {
+            builder.addRs("value-" + i);
+        }
+        Everything msg = builder.build();
+        ProtobufHttpMessageConverter converter = new ProtobufHttpMessageConverter();
+        converter.setBufferSize(16);
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final int[] writes = {0, 0};
+        final HttpHeaders headers = new HttpHeaders();
+
+        converter.write(msg, ProtobufHttpMessageConverter.PROTOBUF, new HttpOutputMessage() {
+            public HttpHeaders getHeaders() {
+                return headers;
+            }
+
+            public OutputStream getBody() {
+                return new OutputStream() {
+                    @Override
+                    public void write(int b) {
+                        write(new byte[]{(byte) b}, 0, 1);
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) {
+                        writes[0]++;
+                        writes[1] = Math.max(writes[1], len);
+                        body.write(b, off, len);
+                    }
+                };
+            }
+        });
+
+        assertTrue(Arrays.equals(msg.toByteArray(), body.toByteArray()));
+        assertEquals(msg.getSerializedSize(), headers.getContentLength());
+        assertTrue("Expected many chunks, but was " + writes[0], writes[0] >= msg.getSerializedSize() / 16);
+        assertTrue("Chunks must not be larger than the buffer, but was " + writes[1], writes[1] <= 16);
+
+        try {
+            converter.setBufferSize(0);
+            fail("Buffer size must be positive");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testMessageDefaultInstanceRegistry() throws IOException {
+        assertSame(Tester.getDefaultInstance(), MessageDefaultInstanceRegistry.getDefaultInstance(Tester.class));
+        assertSame(Everything.getDefaultInstance(), MessageDefaultInstanceRegistry.getDefaultInstance(Everything.class));
+
+        Message.Builder first = MessageDefaultInstanceRegistry.newBuilder(Tester.class);
+        Message.Builder second = MessageDefaultInstanceRegistry.newBuilder(Tester.class);
+        assertTrue(first instanceof Tester.Builder);
+        assertNotSame(first, second);
+        ((Tester.Builder) first).setId(1);
+        assertFalse(((Tester.Builder) second).hasId());
+
+        try {
+            MessageDefaultInstanceRegistry.getDefaultInstance(Message.class);
+            fail("Only generated classes have a default instance");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        ProtobufHttpMessageConverter converter = new ProtobufHttpMessageConverter();
+        converter.setMessageTypes(Arrays.<Class<? extends Message>>asList(Tester.class, Everything.class));
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setContent(Tester.newBuilder().setId(7).build().toByteArray());
+        assertEquals(7, ((Tester) converter.read((Class) Tester.class, new ServletServerHttpRequest(request))).getId());
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testReadTextFormats() throws IOException {
+        Tester msg = Tester.newBuilder().setId(1).build();
+        HttpMessageConverter<Message> converter = new ProtobufHttpMessageConverter();
+        MediaType[] mediaTypes = {ProtobufHttpMessageConverter.JSON, ProtobufHttpMessageConverter.XML,
+                ProtobufHttpMessageConverter.TEXT};
+        for (MediaType mediaType : mediaTypes) {
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            converter.write(msg, mediaType, new ServletServerHttpResponse(response));
+
+            MockHttpServletRequest request = new MockHttpServletRequest();
+            request.addHeader("Content-Type", mediaType.toString());
+            request.setContent(response.getContentAsByteArray());
+
+            assertEquals(msg, converter.read(msg.getClass(), new ServletServerHttpRequest(request)));
+        }
+    }
+
+    public void testConvertInputStreamToStringKeepsContent() {
+        String data = "line1\r\nline2\n\u00e9";
+        Charset charset = Charset.forName("ISO-8859-1");
+
+        String converted = ProtobufHttpMessageConverter.convertInputStreamToString(
+                new ByteArrayInputStream(data.getBytes(charset)), charset);
+
+        assertEquals(data, converted);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testCompression() throws IOException {
+        Tester msg = Tester.newBuilder().setId(1).build();
+        ProtobufHttpMessageConverter converter = new ProtobufHttpMessageConverter();
+        converter.setCompressionThreshold(0);
+        MediaType[] mediaTypes = {ProtobufHttpMessageConverter.PROTOBUF, ProtobufHttpMessageConverter.JSON};
+        for (ContentEncoding encoding : ContentEncoding.values()) {
+            for (MediaType mediaType : mediaTypes) {
+                MockHttpServletResponse response = new MockHttpServletResponse();
+                converter.write(msg, mediaType, new AcceptEncodingHttpOutputMessage(new ServletServerHttpResponse(response), encoding));
+
+                if (encoding == ContentEncoding.IDENTITY) {
+                    assertNull(response.getHeader(ContentEncoding.CONTENT_ENCODING));
+                } else {
+                    assertEquals(encoding.getValue(), response.getHeader(ContentEncoding.CONTENT_ENCODING));
+                    assertNull(response.getHeader("Content-Length"));
+                }
+
+                MockHttpServletRequest request = new MockHttpServletRequest();
+                request.addHeader("Content-Type", mediaType.toString());
+                request.addHeader(ContentEncoding.CONTENT_ENCODING, encoding.getValue());
+                request.setContent(response.getContentAsByteArray());
+                assertEquals(msg, converter.read(msg.getClass(), new ServletServerHttpRequest(request)));
+            }
+        }
+    }
+
+    public void testCompressionThreshold() throws IOException {
+        Tester msg = Tester.newBuilder().setId(1).build();
+        ProtobufHttpMessageConverter converter = new ProtobufHttpMessageConverter();
+        converter.setCompressionThreshold(1024);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        converter.write(msg, ProtobufHttpMessageConverter.PROTOBUF,
+                new AcceptEncodingHttpOutputMessage(new ServletServerHttpResponse(response), ContentEncoding.GZIP));
+
+        assertNull(response.getHeader(ContentEncoding.CONTENT_ENCODING));
+        assertEquals(msg, Tester.parseFrom(response.getContentAsByteArray()));
+    }
+
+    public void testFailedWriteReleasesDeflater() throws IOException {
+        Everything msg = Everything.newBuilder().setStr("released when the response fails").build();
+        ProtobufHttpMessageConverter converter = new ProtobufHttpMessageConverter();
+        converter.setCompressionThreshold(0);
+        // Leaves a Deflater in the pool, so that the failing writes borrow it
+        converter.write(msg, ProtobufHttpMessageConverter.PROTOBUF,
+                new AcceptEncodingHttpOutputMessage(new ServletServerHttpResponse(new MockHttpServletResponse()), ContentEncoding.GZIP));
+        int pooled = ContentEncoding.GZIP.getPooledDeflaterCount();
+        assertTrue(pooled > 0);
+
+        // Fails while writing the gzip header, then while writing the compressed body
+        for (final int accepted : new int[]{0, 10}) {
+            final MockHttpServletResponse response = new MockHttpServletResponse();
+            HttpOutputMessage failing = new ServletServerHttpResponse(response) {
+                @Override
+                public OutputStream getBody() {
+                    return new OutputStream() {
+                        private int count;
+
+                        @Override
+                        public void write(int b) throws IOException {
+                            if (++count > accepted) {
+                                throw new IOException("Connection reset");
+                            }
+                        }
+                    };
+                }
+            };
+            for (MediaType mediaType : Arrays.asList(ProtobufHttpMessageConverter.PROTOBUF, ProtobufHttpMessageConverter.JSON)) {
+                try {
+                    converter.write(msg, mediaType, new AcceptEncodingHttpOutputMessage(failing, ContentEncoding.GZIP));
+                    fail("The failure of the response must propagate");
+                } catch (IOException e) {
+                    // expected
+                }
+                assertEquals(pooled, ContentEncoding.GZIP.getPooledDeflaterCount());
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testFailedReadReleasesInflater() throws IOException {
+        Everything msg = Everything.newBuilder().setStr("released when the request is malformed").build();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        OutputStream out = ContentEncoding.GZIP.encode(compressed);
+        msg.writeTo(out);
+        out.close();
+        byte[] valid = compressed.toByteArray();
+        ProtobufHttpMessageConverter converter = new ProtobufHttpMessageConverter();
+        // Leaves an Inflater in the pool, so that the failing reads borrow it
+        assertEquals(msg, converter.read((Class) Everything.class, createGzipRequest(valid)));
+        int pooled = ContentEncoding.GZIP.getPooledInflaterCount();
+        assertTrue(pooled > 0);
+
+        // Not in gzip format, then a corrupted deflate stream
+        byte[] corrupted = valid.clone();
+        for (int i = 10; i < corrupted.length - 8; i++) {
+            corrupted[i] = (byte) 0xff;
+        }
+        for (byte[] body : Arrays.asList(msg.toByteArray(), corrupted)) {
+            try {
+                converter.read((Class) Everything.class, createGzipRequest(body));
+                fail("The malformed body must be rejected");
+            } catch (HttpMessageNotReadableException e) {
+                // expected
+            }
+            assertEquals(pooled, ContentEncoding.GZIP.getPooledInflaterCount());
+        }
+    }
+
+    public void testGzipInterop() throws IOException {
+        byte[] data = "gzip interop \u00e9 test data, repeated repeated repeated".getBytes("UTF-8");
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        OutputStream out = ContentEncoding.GZIP.encode(compressed);
+        out.write(data);
+        out.close();
+
+        assertTrue(Arrays.equals(data, FileCopyUtils.copyToByteArray(new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray())))));
+
+        compressed.reset();
+        out = new GZIPOutputStream(compressed);
+        out.write(data);
+        out.close();
+
+        assertTrue(Arrays.equals(data, FileCopyUtils.copyToByteArray(ContentEncoding.GZIP.decode(new ByteArrayInputStream(compressed.toByteArray())))));
+        assertEquals(ContentEncoding.GZIP, ContentEncoding.negotiate("deflate, gzip;q=0.5"));
+        assertEquals(ContentEncoding.DEFLATE, ContentEncoding.negotiate("deflate, gzip;q=0"));
+        assertEquals(ContentEncoding.IDENTITY, ContentEncoding.negotiate(null));
+    }
+
+    public void testETagNotModified() throws IOException {
+        Tester msg = Tester.newBuilder().setId(1).build();
+        MediaType[] mediaTypes = {ProtobufHttpMessageConverter.PROTOBUF, ProtobufHttpMessageConverter.JSON};
+        for (MediaType mediaType : mediaTypes) {
+            CountingProtobufHttpMessageConverter converter = new CountingProtobufHttpMessageConverter();
+            converter.setETagGeneration(true);
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            converter.write(msg, mediaType, new ConditionalHttpOutputMessage(new ServletServerHttpResponse(response),
+                    ContentEncoding.IDENTITY, null));
+
+            String eTag = (String) response.getHeader("ETag");
+            assertNotNull(eTag);
+            assertEquals(String.valueOf(response.getContentAsByteArray().length), response.getHeader("Content-Length"));
+            int printCount = converter.printCount;
+
+            response = new MockHttpServletResponse();
+            converter.write(Tester.newBuilder().setId(1).build(), mediaType, new ConditionalHttpOutputMessage(
+                    new ServletServerHttpResponse(response), ContentEncoding.IDENTITY, Arrays.asList("\"other\"", "W/" + eTag)));
+
+            assertEquals(304, response.getStatus());
+            assertEquals(eTag, response.getHeader("ETag"));
+            assertEquals(0, response.getContentAsByteArray().length);
+            assertNull(response.getHeader("Content-Length"));
+            assertEquals(printCount, converter.printCount);
+        }
+    }
+
+    public void testETagDependsOnContent() throws IOException {
+        ProtobufHttpMessageConverter converter = new ProtobufHttpMessageConverter();
+        Tester msg = Tester.newBuilder().setId(1).build();
+
+        String eTag = converter.generateETag(msg, null, ContentEncoding.IDENTITY);
+        assertEquals(eTag, converter.generateETag(Tester.newBuilder().setId(1).build(), null, ContentEncoding.IDENTITY));
+        assertFalse(eTag.equals(converter.generateETag(Tester.newBuilder().setId(2).build(), null, ContentEncoding.IDENTITY)));
+        assertFalse(eTag.equals(converter.generateETag(msg, ProtobufHttpMessageConverter.JSON, ContentEncoding.IDENTITY)));
+
+        String jsonETag = converter.generateETag(msg, ProtobufHttpMessageConverter.JSON, ContentEncoding.IDENTITY);
+        assertEquals(jsonETag, converter.generateETag(msg, MediaType.parseMediaType("application/json;charset=UTF-8;q=0.5"),
+                ContentEncoding.IDENTITY));
+        assertFalse(jsonETag.equals(converter.generateETag(msg, MediaType.parseMediaType("application/json;charset=UTF-16"),
+                ContentEncoding.IDENTITY)));
+        assertEquals(eTag.substring(0, eTag.length() - 1) + "-gzip\"", converter.generateETag(msg, null, ContentEncoding.GZIP));
+        assertEquals(eTag.substring(0, eTag.length() - 1) + "-deflate\"", converter.generateETag(msg, null, ContentEncoding.DEFLATE));
+    }
+
+    public void testETagNamesContentEncoding() throws IOException {
+        Tester msg = Tester.newBuilder().setId(1).build();
+        ProtobufHttpMessageConverter converter = new ProtobufHttpMessageConverter();
+        converter.setETagGeneration(true);
+        converter.setCompressionThreshold(0);
+        ContentEncoding[] encodings = {ContentEncoding.IDENTITY, ContentEncoding.GZIP, ContentEncoding.DEFLATE};
+        Set<String> eTags = new HashSet<String>();
+        for (ContentEncoding encoding : encodings) {
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            converter.write(msg, ProtobufHttpMessageConverter.PROTOBUF, new ConditionalHttpOutputMessage(
+                    new ServletServerHttpResponse(response), encoding, null));
+            String eTag = (String) response.getHeader("ETag");
+            assertTrue(eTags.add(eTag));
+
+            response = new MockHttpServletResponse();
+            converter.write(msg, ProtobufHttpMessageConverter.PROTOBUF, new ConditionalHttpOutputMessage(
+                    new ServletServerHttpResponse(response), encoding, Arrays.asList(eTag)));
+            assertEquals(304, response.getStatus());
+            assertEquals(ContentEncoding.ACCEPT_ENCODING, response.getHeader("Vary"));
+        }
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        converter.write(msg, ProtobufHttpMessageConverter.PROTOBUF, new ConditionalHttpOutputMessage(
+                new ServletServerHttpResponse(response), ContentEncoding.GZIP,
+                Arrays.asList(converter.generateETag(msg, null, ContentEncoding.IDENTITY))));
+        assertEquals("A gzip client must not revalidate an uncompressed body", 200, response.getStatus());
+    }
+
+    public void testETagOfBodyBelowCompressionThreshold() throws IOException {
+        Tester msg = Tester.newBuilder().setId(1).build();
+        ProtobufHttpMessageConverter converter = new ProtobufHttpMessageConverter();
+        converter.setETagGeneration(true);
+        converter.setCompressionThreshold(1024);
+        MediaType[] mediaTypes = {ProtobufHttpMessageConverter.PROTOBUF, ProtobufHttpMessageConverter.JSON};
+        for (MediaType mediaType : mediaTypes) {
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            converter.write(msg, mediaType, new ConditionalHttpOutputMessage(new ServletServerHttpResponse(response),
+                    ContentEncoding.GZIP, null));
+
+            assertNull(response.getHeader(ContentEncoding.CONTENT_ENCODING));
+            MediaType textContentType = mediaType == ProtobufHttpMessageConverter.PROTOBUF ? null : mediaType;
+            assertEquals(converter.generateETag(msg, textContentType, ContentEncoding.IDENTITY), response.getHeader("ETag"));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testRenderedOutputCache() throws IOException {
+        Tester msg = Tester.newBuilder().setId(1).build();
+        CountingProtobufHttpMessageConverter converter = new CountingProtobufHttpMessageConverter();
+        converter.setRenderedOutputCacheSize(1024);
+
+        MockHttpServletResponse first = new MockHttpServletResponse();
+        converter.write(msg, ProtobufHttpMessageConverter.JSON, new ServletServerHttpResponse(first));
+        MockHttpServletResponse second = new MockHttpServletResponse();
+        converter.write(msg, ProtobufHttpMessageConverter.JSON, new ServletServerHttpResponse(second));
+
+        assertEquals(1, converter.printCount);
+        assertTrue(Arrays.equals(first.getContentAsByteArray(), second.getContentAsByteArray()));
+
+        converter.write(msg, ProtobufHttpMessageConverter.XML, new ServletServerHttpResponse(new MockHttpServletResponse()));
+        converter.write(Tester.newBuilder().setId(1).build(), ProtobufHttpMessageConverter.JSON,
+                new ServletServerHttpResponse(new MockHttpServletResponse()));
+        assertEquals(3, converter.printCount);
+    }
+
+    public void testRenderedOutputCacheEviction() {
+        Tester msg = Tester.newBuilder().setId(1).build();
+        RenderedOutputCache cache = new RenderedOutputCache(10);
+
+        cache.put(msg, ProtobufHttpMessageConverter.JSON, new byte[6]);
+        cache.put(msg, ProtobufHttpMessageConverter.XML, new byte[6]);
+        cache.put(msg, ProtobufHttpMessageConverter.HTML, new byte[11]);
+
+        assertNull(cache.get(msg, ProtobufHttpMessageConverter.JSON));
+        assertNotNull(cache.get(msg, ProtobufHttpMessageConverter.XML));
+        assertNull(cache.get(msg, ProtobufHttpMessageConverter.HTML));
+        assertEquals(6, cache.getWeight());
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testExtensionRegistrySharedPerInitializer() throws IOException {
+        final int[] initializations = {0};
+        ExtensionRegistryInitializer initializer = new ExtensionRegistryInitializer() {
+            public void initializeExtensionRegistry(ExtensionRegistry registry) {
+                initializations[0]++;
+                TestProtos.registerAllExtensions(registry);
+            }
+        };
+        ExtensionRegistry registry = ExtensionRegistryCache.getExtensionRegistry(initializer);
+        HttpMessageConverter<Message> first = new ProtobufHttpMessageConverter(initializer);
+        HttpMessageConverter<Message> second = new ProtobufHttpMessageConverter(initializer);
+
+        assertEquals(1, initializations[0]);
+        assertSame(registry, ExtensionRegistryCache.getExtensionRegistry(initializer));
+        assertNotNull(registry.findExtensionByName("test.ext_i"));
+        try {
+            registry.add(TestProtos.extI);
+            fail("Shared registries must not be modifiable");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+
+        Everything msg = Everything.newBuilder().setExtension(TestProtos.extI, 5).build();
+        for (HttpMessageConverter<Message> converter : Arrays.asList(first, second)) {
+            MockHttpServletRequest request = new MockHttpServletRequest();
+            request.setContent(msg.toByteArray());
+            assertEquals(msg, converter.read((Class) Everything.class, new ServletServerHttpRequest(request)));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testPooledRead() throws IOException {
+        ProtobufHttpMessageConverter converter = new ProtobufHttpMessageConverter();
+        converter.setPooledReadLimit(1024);
+        Everything large = Everything.newBuilder().setByt(ByteString.copyFrom(new byte[512])).build();
+        Everything small = Everything.newBuilder().setByt(ByteString.copyFromUtf8("abc")).build();
+
+        Everything first = (Everything) converter.read((Class) Everything.class, createRequest(large.toByteArray(), large.getSerializedSize()));
+        Everything second = (Everything) converter.read((Class) Everything.class, createRequest(small.toByteArray(), small.getSerializedSize()));
+        assertEquals(large, first);
+        assertEquals(small, second);
+
+        try {
+            converter.read((Class) Everything.class, createRequest(small.toByteArray(), small.getSerializedSize() + 1));
+            fail("Truncated bodies must not be parsed");
+        } catch (HttpMessageNotReadableException e) {
+            // expected
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testMessageLimits() throws IOException {
+        ProtobufHttpMessageConverter converter = new ProtobufHttpMessageConverter();
+        MessageLimits limits = new MessageLimits();
+        limits.setMaxMessageSize(16);
+        limits.setMaxMessageSizes(Collections.<Class<? extends Message>, Integer>singletonMap(Tester.class, 4));
+        converter.setMessageLimits(limits);
+        Everything small = Everything.newBuilder().setStr("abc").build();
+        Everything large = Everything.newBuilder().setStr("abcdefghijklmnopqrstuvwxyz").build();
+        Tester tester = Tester.newBuilder().setId(1L << 40).build();
+
+        assertEquals(small, converter.read((Class) Everything.class, createRequest(small.toByteArray(), small.getSerializedSize())));
+        assertTooLarge(converter, Everything.class, createRequest(large.toByteArray(), large.getSerializedSize()));
+        assertTooLarge(converter, Tester.class, createRequest(tester.toByteArray(), tester.getSerializedSize()));
+
+        // Without Content-Length the limit is enforced while the body is read, for the text formats as well
+        for (MediaType mediaType : Arrays.asList(ProtobufHttpMessageConverter.PROTOBUF, ProtobufHttpMessageConverter.JSON,
+                ProtobufHttpMessageConverter.XML, ProtobufHttpMessageConverter.TEXT)) {
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            new ProtobufHttpMessageConverter().write(large, mediaType, new ServletServerHttpResponse(response));
+            MockHttpServletRequest request = new MockHttpServletRequest();
+            request.addHeader("Content-Type", mediaType.toString());
+            request.setContent(response.getContentAsByteArray());
+            assertTooLarge(converter, Everything.class, new ServletServerHttpRequest(request));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void assertTooLarge(HttpMessageConverter<Message> converter, Class<? extends Message> type,
+                                       HttpInputMessage inputMessage) throws IOException {
+        try {
+            converter.read((Class) type, inputMessage);
+            fail("The body of " + type.getName() + " must be rejected");
+        } catch (MessageTooLargeException e) {
+            // expected
+        }
+    }
+
+    private static ServletServerHttpRequest createRequest(byte[] body, int contentLength) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Content-Length", String.valueOf(contentLength));
+        request.setContent(body);
+        return new ServletServerHttpRequest(request);
+    }
+
+    private static ServletServerHttpRequest createGzipRequest(byte[] body) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(ContentEncoding.CONTENT_ENCODING, ContentEncoding.GZIP.getValue());
+        request.setContent(body);
+        return new ServletServerHttpRequest(request);
+    }
+
+    private static class CountingProtobufHttpMessageConverter extends ProtobufHttpMessageConverter {
+        private int printCount;
+
+        @Override
+        protected byte[] printToBytes(Message message, MediaType contentType) {
+            printCount++;
+            return super.printToBytes(message, contentType);
+        }
+    }
 }
@@ -0,0 +1,167 @@
+package com.google.protobuf.spring.http;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.ExtensionRegistry;
+import com.google.protobuf.UnknownFieldSet;
+import com.google.protobuf.spring.http.proto.model.Color;
+import com.google.protobuf.spring.http.proto.model.Everything;
+import com.google.protobuf.spring.http.proto.model.Inner;
+import com.google.protobuf.spring.http.proto.model.TestProtos;
+import com.googlecode.protobuf.format.JsonFormat;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+/**
+ *
+ */
+public class ProtobufJsonCodecTest extends TestCase {
+    private static final ExtensionRegistry registry = ExtensionRegistry.newInstance();
+
+    static {
+        TestProtos.registerAllExtensions(registry);
+    }
+
+    public void testPrintMatchesJsonFormat() throws IOException {
+        Everything[] messages = {
+                Everything.getDefaultInstance(),
+                createEverything(),
+                Everything.newBuilder().setI32(Integer.MIN_VALUE).setI64(Long.MIN_VALUE).setU32(-1).setU64(-1L)
+                        .setF32(-1).setF64(Long.MIN_VALUE).setFl(Float.NaN).setDb(Double.NEGATIVE_INFINITY)
+                        .setStr("\u0000\u001f\b\t\n\f\r\u000b\"\\/\u007f\u00e9\u20ac\ud83d\ude00").build(),
+                Everything.newBuilder().setFl(1e20f).setDb(1e-7).setByt(ByteString.copyFrom(new byte[]{0, 7, 8, 9, 10, 11, 12, 13, '"', '\'', '\\', 0x7f})).build()
+        };
+        for (Everything message : messages) {
+            assertEquals(JsonFormat.printToString(message), new String(ProtobufJsonCodec.printToByteArray(message), "UTF-8"));
+        }
+    }
+
+    public void testRoundTrip() throws IOException {
+        Everything message = createEverything().toBuilder()
+                .setByt(ByteString.copyFrom(new byte[]{(byte) 0x80, (byte) 0xff, 1}))
+                .setStr("\ud83d\ude00 \u20ac").build();
+
+        assertEquals(message, parse(ProtobufJsonCodec.printToByteArray(message)));
+        // The JsonFormat output is read as well
+        Everything plain = createEverything();
+        assertEquals(plain, parse(JsonFormat.printToString(plain).getBytes("UTF-8")));
+        // and the codec output can be read by JsonFormat
+        Everything.Builder builder = Everything.newBuilder();
+        JsonFormat.merge(new String(ProtobufJsonCodec.printToByteArray(message), "UTF-8"), registry, builder);
+        assertEquals(message, builder.build());
+    }
+
+    public void testLongValues() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            text.append((char) ('a' + i % 26));
+        }
+        Everything message = Everything.newBuilder().setStr(text.toString()).setByt(ByteString.copyFromUtf8(text.toString()))
+                .setDb(0.1234567890123456789e-300).build();
+
+        assertEquals(message, parse(ProtobufJsonCodec.printToByteArray(message)));
+    }
+
+    public void testParseLenientInput() throws IOException {
+        String json = "{ i32: 0x10, 'str': 'a\\/b', \"i64\": \"-5\", \"u64\": 18446744073709551615, \"b\": \"true\"," +
+                " \"color\": 2, \"rcolor\": [\"GREEN\", BLUE], \"ri\": 7, \"rs\": [], \"inner\": null, \"unknown\": {\"x\": [1, {}]}," +
+                " \"G\": {\"ga\": 1}, \"db\": 1e3, \"byt\": \"\\x41\\101\\377\\u00ff\", \"test.ext_i\": 3}";
+        Everything message = parse(json.getBytes("UTF-8"));
+
+        assertEquals(16, message.getI32());
+        assertEquals("a/b", message.getStr());
+        assertEquals(-5L, message.getI64());
+        assertEquals(-1L, message.getU64());
+        assertTrue(message.getB());
+        assertEquals(Color.BLUE, message.getColor());
+        assertEquals(2, message.getRcolorCount());
+        assertEquals(1, message.getRiCount());
+        assertFalse(message.hasInner());
+        assertEquals(1, message.getG().getGa());
+        assertEquals(1000.0, message.getDb());
+        assertEquals(ByteString.copyFrom(new byte[]{'A', 'A', (byte) 0xff, (byte) 0xff}), message.getByt());
+        assertEquals(3, (int) message.getExtension(TestProtos.extI));
+    }
+
+    public void testParseErrors() {
+        String[] invalid = {"{\"i32\": 2147483648}", "{\"u32\": -1}", "{\"color\": \"PURPLE\"}", "{\"i32\": 1,}",
+                "{\"str\": \"abc}", "{\"b\": 1}", "[]"};
+        for (String json : invalid) {
+            try {
+                parse(json.getBytes());
+                fail("Expected a parse error for " + json);
+            } catch (IOException e) {
+                assertTrue(e instanceof ProtobufJsonCodec.ParseException);
+            }
+        }
+    }
+
+    public void testInvalidUtf8Rejected() throws IOException {
+        assertEquals("caf\u00e9 \ud83d\ude00", parse(new byte[]{'{', '"', 's', 't', 'r', '"', ':', '"', 'c', 'a', 'f',
+                (byte) 0xc3, (byte) 0xa9, ' ', (byte) 0xf0, (byte) 0x9f, (byte) 0x98, (byte) 0x80, '"', '}'}).getStr());
+        // Lowest and highest second bytes allowed after E0, ED, F0 and F4
+        assertEquals("\u0800\ud7ff\ud800\udc00\udbff\udfff", parse(new byte[]{'{', '"', 's', 't', 'r', '"', ':', '"',
+                (byte) 0xe0, (byte) 0xa0, (byte) 0x80, (byte) 0xed, (byte) 0x9f, (byte) 0xbf,
+                (byte) 0xf0, (byte) 0x90, (byte) 0x80, (byte) 0x80, (byte) 0xf4, (byte) 0x8f, (byte) 0xbf, (byte) 0xbf, '"', '}'}).getStr());
+
+        // Lone continuation byte, overlong encodings of '/' and NUL, a UTF-16 surrogate and code points beyond U+10FFFF
+        byte[][] invalid = {{(byte) 0x80}, {(byte) 0xc0, (byte) 0xaf}, {(byte) 0xc1, (byte) 0xbf},
+                {(byte) 0xe0, (byte) 0x80, (byte) 0x80}, {(byte) 0xed, (byte) 0xa0, (byte) 0x80},
+                {(byte) 0xf4, (byte) 0x90, (byte) 0x80, (byte) 0x80}, {(byte) 0xf5, (byte) 0x80, (byte) 0x80, (byte) 0x80}};
+        for (byte[] sequence : invalid) {
+            byte[] json = new byte[sequence.length + 11];
+            System.arraycopy("{\"str\": \"".getBytes("UTF-8"), 0, json, 0, 9);
+            System.arraycopy(sequence, 0, json, 9, sequence.length);
+            json[json.length - 2] = '"';
+            json[json.length - 1] = '}';
+            try {
+                parse(json);
+                fail("Invalid UTF-8 lead byte " + Integer.toHexString(sequence[0] & 0xff) + " must be rejected");
+            } catch (ProtobufJsonCodec.ParseException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("Invalid UTF-8"));
+            }
+        }
+    }
+
+    public void testRecursionLimit() throws IOException {
+        byte[] json = "{\"inner\": {\"a\": 1}, \"unknown\": {\"x\": [{\"y\": {}}]}}".getBytes("UTF-8");
+        Everything.Builder builder = Everything.newBuilder();
+        ProtobufJsonCodec.merge(new ByteArrayInputStream(json), registry, builder, 4);
+        assertEquals(1, builder.getInner().getA());
+        try {
+            ProtobufJsonCodec.merge(new ByteArrayInputStream(json), registry, Everything.newBuilder(), 3);
+            fail("Nesting beyond the limit must be rejected");
+        } catch (ProtobufJsonCodec.ParseException e) {
+            // expected
+        }
+    }
+
+    public void testUnknownFieldsPrintedAsValidJson() throws IOException {
+        Everything message = Everything.newBuilder().setI32(1).setUnknownFields(UnknownFieldSet.newBuilder()
+                .addField(998, UnknownFieldSet.Field.newBuilder().addVarint(1).build())
+                .addField(999, UnknownFieldSet.Field.newBuilder().addVarint(5).addFixed32(3).addLengthDelimited(ByteString.copyFromUtf8("z")).build())
+                .build()).build();
+
+        String json = new String(ProtobufJsonCodec.printToByteArray(message), "UTF-8");
+        assertEquals("{\"i32\": 1, \"998\": [1], \"999\": [5, 0x00000003, \"z\"]}", json);
+        assertEquals(Everything.newBuilder().setI32(1).build(), parse(json.getBytes("UTF-8")));
+    }
+
+    private static Everything parse(byte[] json) throws IOException {
+        Everything.Builder builder = Everything.newBuilder();
+        ProtobufJsonCodec.merge(new ByteArrayInputStream(json), registry, builder);
+        return builder.build();
+    }
+
+    private static Everything createEverything() {
+        return Everything.newBuilder()
+                .setI32(-5).setI64(-1234567890123L).setU32(7).setU64(8).setS32(-9).setS64(-10).setF32(11).setF64(12)
+                .setSf32(-13).setSf64(-14).setFl(1.5f).setDb(-2.25).setB(true).setStr("hello").setByt(ByteString.copyFromUtf8("bytes"))
+                .setColor(Color.GREEN).setInner(Inner.newBuilder().setA(3).setS("x"))
+                .addRi(1).addRi(2).addRs("a").addRs("b").addRinner(Inner.newBuilder().setA(4)).addRinner(Inner.getDefaultInstance())
+                .addRcolor(Color.RED).addRcolor(Color.BLUE).setG(Everything.G.newBuilder().setGa(6))
+                .setExtension(TestProtos.extI, 42).addExtension(TestProtos.extInner, Inner.newBuilder().setA(1).build())
+                .build();
+    }
+}
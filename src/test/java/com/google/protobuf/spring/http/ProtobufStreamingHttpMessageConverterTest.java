@@ -0,0 +1,160 @@
+package com.google.protobuf.spring.http;
+
+import com.google.protobuf.Message;
+import com.google.protobuf.spring.http.client.DelimitedMessageIterator;
+import com.google.protobuf.spring.http.proto.model.Everything;
+import com.google.protobuf.spring.http.proto.model.Inner;
+import com.google.protobuf.spring.http.proto.model.Tester;
+import junit.framework.TestCase;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ *
+ */
+public class ProtobufStreamingHttpMessageConverterTest extends TestCase {
+    private static final MediaType[] MEDIA_TYPES = {ProtobufHttpMessageConverter.PROTOBUF, ProtobufHttpMessageConverter.JSON,
+            MediaType.parseMediaType("application/json;charset=UTF-16")};
+
+    public void testSupports() {
+        ProtobufStreamingHttpMessageConverter converter = new ProtobufStreamingHttpMessageConverter();
+
+        assertTrue(converter.canWrite(MessageStream.class, ProtobufHttpMessageConverter.PROTOBUF));
+        assertTrue(converter.canWrite(MessageStream.class, ProtobufHttpMessageConverter.JSON));
+        // The elements of plain iterables are unknown, they are left to the other converters
+        assertFalse(converter.canWrite(List.class, ProtobufHttpMessageConverter.JSON));
+        assertFalse(converter.canWrite(Iterator.class, ProtobufHttpMessageConverter.PROTOBUF));
+        assertFalse(converter.canWrite(Tester.class, ProtobufHttpMessageConverter.PROTOBUF));
+        assertFalse(converter.canRead(MessageStream.class, ProtobufHttpMessageConverter.PROTOBUF));
+    }
+
+    public void testStreamRoundTrip() throws IOException {
+        List<Tester> messages = new ArrayList<Tester>();
+        for (int i = 0; i < 100; i++) {
+            messages.add(Tester.newBuilder().setId(i).build());
+        }
+        for (MediaType mediaType : MEDIA_TYPES) {
+            assertEquals(messages, roundTrip(Tester.class, MessageStream.of(Tester.class, messages), mediaType));
+        }
+    }
+
+    public void testNdjsonRoundTrip() throws IOException {
+        // Strings with escaped line breaks and non-ASCII characters, unset messages printed as {}
+        List<Everything> messages = Arrays.asList(
+                Everything.newBuilder().setStr("line\nbreak \u00e9\u20ac \ud83d\ude00").setI32(-1).build(),
+                Everything.getDefaultInstance(),
+                Everything.newBuilder().addRi(1).addRi(2).setInner(Inner.newBuilder().setA(3)).build());
+        for (MediaType mediaType : MEDIA_TYPES) {
+            assertEquals(messages, roundTrip(Everything.class, MessageStream.of(Everything.class, messages), mediaType));
+        }
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        new ProtobufStreamingHttpMessageConverter().write(MessageStream.of(Everything.class, messages),
+                ProtobufHttpMessageConverter.JSON, new ServletServerHttpResponse(response));
+        String ndjson = response.getContentAsString();
+        assertEquals(3, ndjson.split("\n").length);
+        assertTrue(ndjson.endsWith("\n"));
+    }
+
+    public void testEmptyStream() throws IOException {
+        for (MediaType mediaType : MEDIA_TYPES) {
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            new ProtobufStreamingHttpMessageConverter().write(MessageStream.of(Tester.class, Collections.<Tester>emptyList()),
+                    mediaType, new ServletServerHttpResponse(response));
+
+            assertEquals(0, response.getContentAsByteArray().length);
+            assertTrue(roundTrip(Tester.class, MessageStream.of(Tester.class, Collections.<Tester>emptyList()), mediaType).isEmpty());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testNonMessageElementsRejected() throws IOException {
+        List mixed = Arrays.asList(Tester.newBuilder().setId(1).build(), "not a message");
+        try {
+            new ProtobufStreamingHttpMessageConverter().write(MessageStream.of(Tester.class, (List<Tester>) mixed),
+                    ProtobufHttpMessageConverter.PROTOBUF, new ServletServerHttpResponse(new MockHttpServletResponse()));
+            fail("Only elements of the message type can be streamed");
+        } catch (HttpMessageNotWritableException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(String.class.getName()));
+        }
+    }
+
+    public void testCompressedResponseDecoded() throws IOException {
+        List<Tester> messages = Arrays.asList(Tester.newBuilder().setId(1).build(), Tester.newBuilder().setId(2).build());
+        for (MediaType mediaType : MEDIA_TYPES) {
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            new ProtobufStreamingHttpMessageConverter().write(MessageStream.of(Tester.class, messages), mediaType,
+                    new ServletServerHttpResponse(response));
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            OutputStream out = ContentEncoding.GZIP.encode(compressed);
+            out.write(response.getContentAsByteArray());
+            out.close();
+
+            DelimitedMessageIterator<Tester> iterator = new DelimitedMessageIterator<Tester>(Tester.class,
+                    new GzipClientHttpResponse(compressed.toByteArray(), mediaType), null);
+            assertEquals(messages, readAll(iterator));
+        }
+    }
+
+    private static <T extends Message> List<T> roundTrip(Class<T> type, MessageStream<T> messages, MediaType mediaType)
+            throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        new ProtobufStreamingHttpMessageConverter().write(messages, mediaType, new ServletServerHttpResponse(response));
+        return readAll(new DelimitedMessageIterator<T>(type, new ByteArrayInputStream(response.getContentAsByteArray()),
+                mediaType, null));
+    }
+
+    private static <T extends Message> List<T> readAll(DelimitedMessageIterator<T> iterator) {
+        List<T> read = new ArrayList<T>();
+        while (iterator.hasNext()) {
+            read.add(iterator.next());
+        }
+        return read;
+    }
+
+    private static class GzipClientHttpResponse implements ClientHttpResponse {
+        private final HttpHeaders headers = new HttpHeaders();
+        private final byte[] body;
+
+        private GzipClientHttpResponse(byte[] body, MediaType contentType) {
+            this.body = body;
+            headers.setContentType(contentType);
+            headers.set(ContentEncoding.CONTENT_ENCODING, ContentEncoding.GZIP.getValue());
+        }
+
+        public HttpStatus getStatusCode() {
+            return HttpStatus.OK;
+        }
+
+        public String getStatusText() {
+            return getStatusCode().name();
+        }
+
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        public InputStream getBody() {
+            return new ByteArrayInputStream(body);
+        }
+
+        public void close() {
+        }
+    }
+}
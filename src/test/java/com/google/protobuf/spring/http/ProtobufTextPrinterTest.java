@@ -0,0 +1,58 @@
+package com.google.protobuf.spring.http;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.TextFormat;
+import com.google.protobuf.UnknownFieldSet;
+import com.google.protobuf.spring.http.proto.model.Color;
+import com.google.protobuf.spring.http.proto.model.Everything;
+import com.google.protobuf.spring.http.proto.model.Inner;
+import com.google.protobuf.spring.http.proto.model.TestProtos;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+
+/**
+ *
+ */
+public class ProtobufTextPrinterTest extends TestCase {
+
+    public void testPrintMatchesTextFormat() throws IOException {
+        byte[] allBytes = new byte[256];
+        for (int i = 0; i < allBytes.length; i++) {
+            allBytes[i] = (byte) i;
+        }
+        Everything[] messages = {
+                Everything.getDefaultInstance(),
+                Everything.newBuilder()
+                        .setI32(Integer.MIN_VALUE).setI64(Long.MIN_VALUE).setU32(-1).setU64(-1L).setS32(-9).setS64(-10)
+                        .setF32(-2).setF64(Long.MIN_VALUE).setSf32(-13).setSf64(-14).setFl(1e20f).setDb(Double.NaN)
+                        .setB(false).setStr("\u0000\t\"'\\\u007f\u00e9\u20ac\ud83d\ude00\ud800").setByt(ByteString.copyFrom(allBytes))
+                        .setColor(Color.BLUE).setInner(Inner.newBuilder().setA(3).setS("x"))
+                        .addRi(1).addRi(2).addRs("a").addRinner(Inner.getDefaultInstance()).addRcolor(Color.RED)
+                        .setG(Everything.G.newBuilder().setGa(6))
+                        .setExtension(TestProtos.extI, 42).addExtension(TestProtos.extInner, Inner.newBuilder().setA(1).build())
+                        .build(),
+                Everything.newBuilder().setInner(Inner.newBuilder().setUnknownFields(UnknownFieldSet.newBuilder()
+                        .addField(998, UnknownFieldSet.Field.newBuilder().addVarint(-1).addFixed32(3).addFixed64(-1)
+                                .addLengthDelimited(ByteString.copyFromUtf8("z\"")).addGroup(UnknownFieldSet.newBuilder()
+                                        .addField(1, UnknownFieldSet.Field.newBuilder().addVarint(2).build()).build()).build())
+                        .build())).build()
+        };
+        for (Everything message : messages) {
+            assertEquals(TextFormat.printToString(message), new String(ProtobufTextPrinter.printToByteArray(message), "UTF-8"));
+        }
+    }
+
+    public void testSchemaCompiledOnce() {
+        MessageSchema.compile(Everything.getDescriptor());
+
+        MessageSchema schema = MessageSchema.forType(Everything.getDescriptor());
+        assertSame(schema, MessageSchema.forType(Everything.getDescriptor()));
+        assertSame(Everything.getDescriptor().findFieldByName("g"), schema.names.get("G"));
+        assertSame(Everything.getDescriptor().findFieldByName("g"), schema.names.get("g"));
+        assertNull(schema.names.get("unknown"));
+        assertEquals("\"i32\": ", new String(schema.fieldSchema(Everything.getDescriptor().findFieldByNumber(1)).jsonName));
+        assertEquals("[test.ext_i]: ", new String(schema.fieldSchema(TestProtos.extI.getDescriptor()).textName));
+        assertEquals("BLUE", new String(EnumSchema.forType(Color.getDescriptor()).textNames[Color.BLUE.getValueDescriptor().getIndex()]));
+    }
+}
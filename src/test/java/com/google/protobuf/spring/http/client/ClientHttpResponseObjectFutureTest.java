@@ -0,0 +1,207 @@
+package com.google.protobuf.spring.http.client;
+
+import com.google.protobuf.spring.http.ProtobufHttpMessageConverter;
+import com.google.protobuf.spring.http.proto.model.Tester;
+import junit.framework.TestCase;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ *
+ */
+public class ClientHttpResponseObjectFutureTest extends TestCase {
+
+    public interface TesterService {
+        @ServiceRequest(name = "testers", pattern = "/testers/${id}", method = HttpMethod.GET)
+        ClientHttpResponseObjectFuture<Tester> getTester(@RequestParam("id") long id);
+
+        @ServiceRequest(name = "testers", pattern = "/testers/${id}", method = HttpMethod.GET, contentType = "application/json")
+        ClientHttpResponseObjectFuture<Tester> getJsonTester(@RequestParam("id") long id);
+
+        @ServiceRequest(name = "testers", pattern = "/testers/${id}", method = HttpMethod.GET, contentType = "application/xml")
+        ClientHttpResponseObjectFuture<Tester> getXmlTester(@RequestParam("id") long id);
+
+        @ServiceRequest(name = "testers", pattern = "/testers/${id}", method = HttpMethod.GET, contentType = "text/plain")
+        ClientHttpResponseObjectFuture<Tester> getTextTester(@RequestParam("id") long id);
+    }
+
+    private final List<MediaType> contentTypes = new ArrayList<MediaType>();
+    private final CountDownLatch closedResponses = new CountDownLatch(2);
+    private final CountDownLatch startedRequests = new CountDownLatch(2);
+    private CountDownLatch responseGate;
+    private TesterService service;
+
+    @Override
+    protected void setUp() throws Exception {
+        ClientHttpInvocationHandlerServiceConfigurator config = new ClientHttpInvocationHandlerServiceConfigurator() {
+            public String getServiceBaseUrl(String serviceName) {
+                return "http://localhost/api";
+            }
+
+            public int getServiceTimeoutInSeconds(String serviceName) {
+                return 5;
+            }
+        };
+        AbstractClientHttpInvocationHandler handler = new AbstractClientHttpInvocationHandler(new TesterRequestFactory(), config) {
+        };
+        service = (TesterService) Proxy.newProxyInstance(TesterService.class.getClassLoader(),
+                new Class[]{TesterService.class}, handler);
+    }
+
+    public void testBinaryResponse() throws Exception {
+        assertEquals(1, service.getTester(1).getObject().getId());
+        assertTrue(ProtobufHttpMessageConverter.PROTOBUF.includes(contentTypes.get(0)));
+    }
+
+    public void testTextResponses() throws Exception {
+        assertEquals(2, service.getJsonTester(2).getObject().getId());
+        assertEquals(3, service.getXmlTester(3).getObject().getId());
+        assertEquals(4, service.getTextTester(4).getObject().getId());
+        assertEquals(MediaType.parseMediaType("application/json"), contentTypes.get(0));
+        assertEquals(MediaType.parseMediaType("application/xml"), contentTypes.get(1));
+        assertEquals(MediaType.parseMediaType("text/plain"), contentTypes.get(2));
+    }
+
+    public void testResponseClosedAfterCancel() throws Exception {
+        responseGate = new CountDownLatch(1);
+        ClientHttpResponseObjectFuture<Tester> timedOut = service.getTester(1);
+        ClientHttpResponseObjectFuture<Tester> cancelled = service.getTester(2);
+        assertTrue(startedRequests.await(5, TimeUnit.SECONDS));
+        try {
+            timedOut.getObject(10, TimeUnit.MILLISECONDS);
+            fail("The response is held back");
+        } catch (TimeoutException e) {
+            // expected
+        }
+        assertTrue(timedOut.isCancelled());
+        assertTrue(cancelled.cancel(false));
+
+        responseGate.countDown();
+        assertTrue("Responses arriving after the cancellation must be closed",
+                closedResponses.await(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Answers <code>GET /api/testers/{id}</code> in the first accepted media type.
+     */
+    private class TesterRequestFactory implements ClientHttpRequestFactory {
+
+        public ClientHttpRequest createRequest(final URI uri, final HttpMethod httpMethod) {
+            return new ClientHttpRequest() {
+                private final HttpHeaders headers = new HttpHeaders();
+
+                public HttpMethod getMethod() {
+                    return httpMethod;
+                }
+
+                public URI getURI() {
+                    return uri;
+                }
+
+                public HttpHeaders getHeaders() {
+                    return headers;
+                }
+
+                public OutputStream getBody() {
+                    return new ByteArrayOutputStream();
+                }
+
+                public ClientHttpResponse execute() throws IOException {
+                    awaitResponseGate();
+                    // Copied headers are only visible through the entries, as in the HTTP client request factories
+                    MediaType contentType = null;
+                    for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                        if ("Accept".equalsIgnoreCase(header.getKey())) {
+                            contentType = MediaType.parseMediaType(header.getValue().get(0));
+                        }
+                    }
+                    contentTypes.add(contentType);
+                    Tester tester = Tester.newBuilder().setId(Long.parseLong(uri.getPath().substring(13))).build();
+                    final HttpHeaders responseHeaders = new HttpHeaders();
+                    final ByteArrayOutputStream responseBody = new ByteArrayOutputStream();
+                    new ProtobufHttpMessageConverter().write(tester, contentType, new HttpOutputMessage() {
+                        public HttpHeaders getHeaders() {
+                            return responseHeaders;
+                        }
+
+                        public OutputStream getBody() {
+                            return responseBody;
+                        }
+                    });
+                    return new BufferedResponse(responseHeaders, responseBody.toByteArray());
+                }
+            };
+        }
+    }
+
+    private void awaitResponseGate() {
+        if (responseGate == null) {
+            return;
+        }
+        startedRequests.countDown();
+        // Not interruptible, like a blocking socket read
+        boolean interrupted = false;
+        while (true) {
+            try {
+                responseGate.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private class BufferedResponse implements ClientHttpResponse {
+        private final HttpHeaders headers;
+        private final byte[] body;
+
+        private BufferedResponse(HttpHeaders headers, byte[] body) {
+            this.headers = headers;
+            this.body = body;
+        }
+
+        public HttpStatus getStatusCode() {
+            return HttpStatus.OK;
+        }
+
+        public String getStatusText() {
+            return getStatusCode().name();
+        }
+
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        public InputStream getBody() {
+            return new ByteArrayInputStream(body);
+        }
+
+        public void close() {
+            closedResponses.countDown();
+        }
+    }
+}
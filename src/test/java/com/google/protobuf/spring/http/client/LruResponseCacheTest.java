@@ -0,0 +1,73 @@
+package com.google.protobuf.spring.http.client;
+
+import com.google.protobuf.spring.http.proto.model.Tester;
+import junit.framework.TestCase;
+import org.springframework.http.HttpHeaders;
+
+/**
+ *
+ */
+public class LruResponseCacheTest extends TestCase {
+
+    public void testEvictsLeastRecentlyUsedByWeight() {
+        CachedResponse first = fresh(1);
+        int weight = first.getWeight();
+        LruResponseCache cache = new LruResponseCache(2 * weight);
+
+        cache.put("1", first);
+        cache.put("2", fresh(2));
+        assertNotNull(cache.get("1"));
+        cache.put("3", fresh(3));
+
+        assertNotNull(cache.get("1"));
+        assertNull(cache.get("2"));
+        assertNotNull(cache.get("3"));
+        assertEquals(2 * weight, cache.getWeight());
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(3, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    public void testStaleResponseIsReturnedForRevalidation() {
+        LruResponseCache cache = new LruResponseCache();
+        Tester message = Tester.newBuilder().setId(1).build();
+        cache.put("1", new CachedResponse(message, "\"v1\"", System.currentTimeMillis() - 1));
+
+        CachedResponse stale = cache.get("1");
+        assertFalse(stale.isFresh(System.currentTimeMillis()));
+        assertEquals(1, cache.getStaleCount());
+
+        CachedResponse refreshed = stale.refresh(null, System.currentTimeMillis() + 60000);
+        assertSame(message, refreshed.getMessage());
+        assertEquals("\"v1\"", refreshed.getETag());
+    }
+
+    public void testReplacingKeepsWeight() {
+        LruResponseCache cache = new LruResponseCache();
+        cache.put("1", fresh(1));
+        cache.put("1", fresh(1));
+        cache.remove("2");
+
+        assertEquals(1, cache.size());
+        assertEquals(fresh(1).getWeight(), cache.getWeight());
+    }
+
+    public void testRetrieveMaxAge() {
+        assertEquals(0, AbstractClientHttpInvocationHandler.retrieveMaxAge(cacheControl(null)));
+        assertEquals(60, AbstractClientHttpInvocationHandler.retrieveMaxAge(cacheControl("public, max-age=60")));
+        assertEquals(0, AbstractClientHttpInvocationHandler.retrieveMaxAge(cacheControl("no-cache, max-age=60")));
+        assertEquals(-1, AbstractClientHttpInvocationHandler.retrieveMaxAge(cacheControl("max-age=60, no-store")));
+    }
+
+    private static CachedResponse fresh(long id) {
+        return new CachedResponse(Tester.newBuilder().setId(id).build(), null, System.currentTimeMillis() + 60000);
+    }
+
+    private static HttpHeaders cacheControl(String value) {
+        HttpHeaders headers = new HttpHeaders();
+        if (value != null) {
+            headers.setCacheControl(value);
+        }
+        return headers;
+    }
+}
@@ -0,0 +1,275 @@
+package com.google.protobuf.spring.http.client;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.spring.http.ProtobufHttpMessageConverter;
+import com.google.protobuf.spring.http.proto.model.Everything;
+import junit.framework.TestCase;
+import org.apache.commons.httpclient.ConnectionPoolTimeoutException;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ *
+ */
+public class PooledClientHttpRequestFactoryTest extends TestCase {
+    private ServerSocket serverSocket;
+    private String baseUrl;
+    private PooledClientHttpRequestFactory factory;
+    private final List<Map<String, String>> requestHeaders = new CopyOnWriteArrayList<Map<String, String>>();
+    private final List<byte[]> requestBodies = new CopyOnWriteArrayList<byte[]>();
+
+    @Override
+    protected void setUp() throws Exception {
+        serverSocket = new ServerSocket(0);
+        baseUrl = "http://localhost:" + serverSocket.getLocalPort() + "/api";
+        Thread acceptor = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    while (true) {
+                        serve(serverSocket.accept());
+                    }
+                } catch (IOException e) {
+                    // closed by tearDown
+                }
+            }
+        }, "loopback-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        factory = new PooledClientHttpRequestFactory();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        factory.destroy();
+        serverSocket.close();
+    }
+
+    public void testPoolWaitBoundedByConnectionManagerTimeout() throws Exception {
+        factory.setConnectionManagerTimeout(200);
+        factory.setMaxConnectionsPerService(Collections.singletonMap("testers", 1));
+        factory.registerService("testers", baseUrl, 30);
+
+        // Holds the only connection of the service until closed
+        ClientHttpResponse held = factory.createRequest(new URI(baseUrl + "/testers/1"), HttpMethod.GET).execute();
+        assertEquals(HttpStatus.OK, held.getStatusCode());
+
+        long start = System.currentTimeMillis();
+        try {
+            factory.createRequest(new URI(baseUrl + "/testers/2"), HttpMethod.GET).execute();
+            fail("No connection of the exhausted pool can be taken");
+        } catch (ConnectionPoolTimeoutException e) {
+            // expected
+        }
+        long waited = System.currentTimeMillis() - start;
+        assertTrue("Waited " + waited + " ms for a connection", waited >= 150 && waited < 5000);
+
+        held.close();
+        ClientHttpResponse response = factory.createRequest(new URI(baseUrl + "/testers/2"), HttpMethod.GET).execute();
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        response.close();
+    }
+
+    public void testPoolWaitBoundedByServiceTimeout() throws Exception {
+        factory.setMaxConnectionsPerService(Collections.singletonMap("testers", 1));
+        factory.registerService("testers", baseUrl, 1);
+        factory.setConnectionManagerTimeout(60 * 1000);
+
+        ClientHttpResponse held = factory.createRequest(new URI(baseUrl + "/testers/1"), HttpMethod.GET).execute();
+        long start = System.currentTimeMillis();
+        try {
+            factory.createRequest(new URI(baseUrl + "/testers/2"), HttpMethod.GET).execute();
+            fail("No connection of the exhausted pool can be taken");
+        } catch (ConnectionPoolTimeoutException e) {
+            // expected
+        } finally {
+            held.close();
+        }
+        long waited = System.currentTimeMillis() - start;
+        assertTrue("Waited " + waited + " ms for a connection", waited >= 900 && waited < 5000);
+    }
+
+    public void testMessageBodyStreamed() throws Exception {
+        factory.setBufferSize(16);
+        factory.registerService("testers", baseUrl, 30);
+        Everything message = Everything.newBuilder()
+                .setByt(ByteString.copyFrom(new byte[1000]))
+                .setStr("streamed in chunks of the buffer size")
+                .addRi(1).addRi(2)
+                .build();
+
+        ClientHttpRequest request = factory.createRequest(new URI(baseUrl + "/testers"), HttpMethod.POST);
+        ((MessageClientHttpRequest) request).setMessageBody(message, ProtobufHttpMessageConverter.PROTOBUF);
+        ClientHttpResponse response = request.execute();
+        try {
+            assertEquals(HttpStatus.OK, response.getStatusCode());
+            assertEquals(message, Everything.parseFrom(response.getBody()));
+        } finally {
+            response.close();
+        }
+
+        assertEquals(String.valueOf(message.getSerializedSize()), requestHeaders.get(0).get("content-length"));
+        assertNull(requestHeaders.get(0).get("transfer-encoding"));
+        assertEquals(ProtobufHttpMessageConverter.PROTOBUF.toString(), requestHeaders.get(0).get("content-type"));
+        assertTrue(Arrays.equals(message.toByteArray(), requestBodies.get(0)));
+    }
+
+    public void testServiceCallBodyArrivesIntact() throws Exception {
+        ClientHttpInvocationHandlerServiceConfigurator config = new ClientHttpInvocationHandlerServiceConfigurator() {
+            public String getServiceBaseUrl(String serviceName) {
+                return baseUrl;
+            }
+
+            public int getServiceTimeoutInSeconds(String serviceName) {
+                return 30;
+            }
+        };
+        AbstractClientHttpInvocationHandler handler = new AbstractClientHttpInvocationHandler(factory, config) {
+        };
+        EverythingService service = (EverythingService) Proxy.newProxyInstance(EverythingService.class.getClassLoader(),
+                new Class[]{EverythingService.class}, handler);
+        Everything message = Everything.newBuilder().setI32(42).setStr("posted").build();
+
+        assertEquals(message, service.create(message));
+        assertEquals(String.valueOf(message.getSerializedSize()), requestHeaders.get(0).get("content-length"));
+        assertTrue(Arrays.equals(message.toByteArray(), requestBodies.get(0)));
+    }
+
+    public void testDefaultFactorySharedByHandlers() throws Exception {
+        ClientHttpInvocationHandlerServiceConfigurator config = new ClientHttpInvocationHandlerServiceConfigurator() {
+            public String getServiceBaseUrl(String serviceName) {
+                return baseUrl;
+            }
+
+            public int getServiceTimeoutInSeconds(String serviceName) {
+                return 30;
+            }
+        };
+        AbstractClientHttpInvocationHandler first = new AbstractClientHttpInvocationHandler(config) {
+        };
+        AbstractClientHttpInvocationHandler second = new AbstractClientHttpInvocationHandler(config) {
+        };
+        assertTrue(first.getRequestFactory() instanceof PooledClientHttpRequestFactory);
+        assertSame(first.getRequestFactory(), second.getRequestFactory());
+
+        // A factory passed to the constructor is left to its owner
+        AbstractClientHttpInvocationHandler injected = new AbstractClientHttpInvocationHandler(factory, config) {
+        };
+        assertSame(factory, injected.getRequestFactory());
+        injected.destroy();
+        ClientHttpResponse response = factory.createRequest(new URI(baseUrl + "/testers/1"), HttpMethod.GET).execute();
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        response.close();
+
+        // The factory outlives the handlers destroyed before the last one
+        first.destroy();
+        first.destroy();
+        EverythingService service = (EverythingService) Proxy.newProxyInstance(EverythingService.class.getClassLoader(),
+                new Class[]{EverythingService.class}, second);
+        Everything message = Everything.newBuilder().setI32(7).build();
+        assertEquals(message, service.create(message));
+
+        second.destroy();
+        AbstractClientHttpInvocationHandler third = new AbstractClientHttpInvocationHandler(config) {
+        };
+        assertNotSame(second.getRequestFactory(), third.getRequestFactory());
+        third.destroy();
+    }
+
+    public interface EverythingService {
+        @ServiceRequest(name = "everything", pattern = "/everything", method = HttpMethod.POST)
+        Everything create(Everything everything);
+    }
+
+    /**
+     * Answers every request on the connection with <code>200 OK</code>, echoing its body if it has one, and keeps the
+     * connection alive.
+     */
+    private void serve(final Socket socket) {
+        Thread worker = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    InputStream in = socket.getInputStream();
+                    OutputStream out = socket.getOutputStream();
+                    Map<String, String> headers;
+                    while ((headers = readHeaders(in)) != null) {
+                        String contentLength = headers.get("content-length");
+                        byte[] body = new byte[contentLength != null ? Integer.parseInt(contentLength) : 0];
+                        for (int n = 0, read; n < body.length; n += read) {
+                            if ((read = in.read(body, n, body.length - n)) == -1) {
+                                throw new EOFException("Request body ended after " + n + " of " + body.length + " bytes");
+                            }
+                        }
+                        requestHeaders.add(headers);
+                        requestBodies.add(body);
+                        String contentType = body.length > 0 ? headers.get("content-type") : "text/plain";
+                        if (body.length == 0) {
+                            body = "ok".getBytes("US-ASCII");
+                        }
+                        out.write(("HTTP/1.1 200 OK\r\nContent-Type: " + contentType + "\r\nContent-Length: " + body.length
+                                + "\r\n\r\n").getBytes("US-ASCII"));
+                        out.write(body);
+                        out.flush();
+                    }
+                } catch (IOException e) {
+                    // connection closed by the client
+                } finally {
+                    try {
+                        socket.close();
+                    } catch (IOException e) {
+                        // ignored
+                    }
+                }
+            }
+        }, "loopback-connection");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * @return headers of the next request keyed by lower case name, <code>null</code> once the connection is closed.
+     */
+    private static Map<String, String> readHeaders(InputStream in) throws IOException {
+        Map<String, String> headers = new HashMap<String, String>();
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        boolean requestLine = true;
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\r') {
+                continue;
+            }
+            if (b != '\n') {
+                line.write(b);
+                continue;
+            }
+            String text = line.toString("US-ASCII");
+            line.reset();
+            if (text.length() == 0) {
+                return headers;
+            }
+            if (!requestLine) {
+                int colon = text.indexOf(':');
+                headers.put(text.substring(0, colon).trim().toLowerCase(), text.substring(colon + 1).trim());
+            }
+            requestLine = false;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,105 @@
+package com.google.protobuf.spring.http.client;
+
+import com.google.protobuf.spring.http.ProtobufHttpMessageConverter;
+import com.google.protobuf.spring.http.proto.model.Tester;
+import junit.framework.TestCase;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *
+ */
+public class RequestCoalescerTest extends TestCase {
+    private static final int CALLERS = 8;
+
+    private Method method;
+    private ExecutorService executor;
+
+    @Override
+    protected void setUp() throws Exception {
+        method = Object.class.getMethod("toString");
+        executor = Executors.newFixedThreadPool(CALLERS);
+    }
+
+    @Override
+    protected void tearDown() {
+        executor.shutdownNow();
+    }
+
+    public void testIdenticalCallsShareOneExecution() throws Exception {
+        final RequestCoalescer coalescer = new RequestCoalescer();
+        final AtomicInteger executions = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        final Callable<Object> call = new Callable<Object>() {
+            public Object call() throws Exception {
+                executions.incrementAndGet();
+                release.await(5, TimeUnit.SECONDS);
+                return Tester.newBuilder().setId(1).build();
+            }
+        };
+
+        List<Future<Object>> results = new ArrayList<Future<Object>>();
+        for (int i = 0; i < CALLERS; i++) {
+            results.add(executor.submit(new Callable<Object>() {
+                public Object call() throws Exception {
+                    return coalescer.execute(method, "http://localhost/t/1", ProtobufHttpMessageConverter.PROTOBUF, call);
+                }
+            }));
+        }
+        while (coalescer.getExecutedCount() + coalescer.getCoalescedCount() < CALLERS) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+
+        Object first = results.get(0).get(5, TimeUnit.SECONDS);
+        for (Future<Object> result : results) {
+            assertSame(first, result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, executions.get());
+        assertEquals(CALLERS - 1, coalescer.getCoalescedCount());
+        assertEquals(0, coalescer.getInFlightCount());
+    }
+
+    public void testDifferentKeysAreNotCoalesced() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        final AtomicInteger executions = new AtomicInteger();
+        Callable<Object> call = new Callable<Object>() {
+            public Object call() {
+                return executions.incrementAndGet();
+            }
+        };
+
+        coalescer.execute(method, "http://localhost/t/1", ProtobufHttpMessageConverter.PROTOBUF, call);
+        coalescer.execute(method, "http://localhost/t/1", ProtobufHttpMessageConverter.JSON, call);
+        coalescer.execute(method, "http://localhost/t/2", ProtobufHttpMessageConverter.PROTOBUF, call);
+        // Completed calls are not cached
+        coalescer.execute(method, "http://localhost/t/1", ProtobufHttpMessageConverter.PROTOBUF, call);
+
+        assertEquals(4, executions.get());
+        assertEquals(0, coalescer.getCoalescedCount());
+    }
+
+    public void testExceptionIsRethrown() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        try {
+            coalescer.execute(method, "http://localhost/t/1", null, new Callable<Object>() {
+                public Object call() {
+                    throw new IllegalStateException("service down");
+                }
+            });
+            fail("Exception of the call must be rethrown");
+        } catch (IllegalStateException e) {
+            assertEquals("service down", e.getMessage());
+        }
+        assertEquals(0, coalescer.getInFlightCount());
+    }
+}
@@ -0,0 +1,359 @@
+package com.google.protobuf.spring.http.client;
+
+import com.google.protobuf.Message;
+import com.google.protobuf.spring.http.BatchProtos.BatchRequest;
+import com.google.protobuf.spring.http.BatchProtos.BatchResponse;
+import com.google.protobuf.spring.http.MessageLimits;
+import com.google.protobuf.spring.http.MessageTooLargeException;
+import com.google.protobuf.spring.http.ProtobufHttpMessageConverter;
+import com.google.protobuf.spring.http.proto.model.Tester;
+import com.google.protobuf.spring.http.server.ProtobufBatchDispatcher;
+import junit.framework.TestCase;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import javax.servlet.RequestDispatcher;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ *
+ */
+public class ServiceBatchTest extends TestCase {
+
+    public interface TesterService {
+        @ServiceRequest(name = "testers", pattern = "/testers/${id}", method = HttpMethod.GET)
+        ClientHttpResponseObjectFuture<Tester> getTester(@RequestParam("id") long id);
+
+        @ServiceRequest(name = "testers", pattern = "/testers", method = HttpMethod.POST)
+        ClientHttpResponseObjectFuture<Tester> createTester(Tester tester);
+    }
+
+    private final List<URI> batchUris = new ArrayList<URI>();
+    private final ProtobufBatchDispatcher dispatcher = new ProtobufBatchDispatcher();
+    private AbstractClientHttpInvocationHandler handler;
+    private TesterService service;
+
+    @Override
+    protected void setUp() throws Exception {
+        ClientHttpInvocationHandlerServiceConfigurator config = new ClientHttpInvocationHandlerServiceConfigurator() {
+            public String getServiceBaseUrl(String serviceName) {
+                return "http://localhost/api";
+            }
+
+            public int getServiceTimeoutInSeconds(String serviceName) {
+                return 5;
+            }
+        };
+        handler = new AbstractClientHttpInvocationHandler(new DispatchingRequestFactory(), config) {
+        };
+        service = (TesterService) Proxy.newProxyInstance(TesterService.class.getClassLoader(),
+                new Class[]{TesterService.class}, handler);
+    }
+
+    public void testCallsSentInOneRequest() throws Exception {
+        List<ClientHttpResponseObjectFuture<Tester>> futures = new ArrayList<ClientHttpResponseObjectFuture<Tester>>();
+        ServiceBatch batch = handler.beginBatch();
+        try {
+            for (int i = 1; i <= 5; i++) {
+                futures.add(service.getTester(i));
+            }
+            futures.add(service.createTester(Tester.newBuilder().setId(42).build()));
+            futures.add(service.getTester(-1));
+            assertEquals(7, batch.getPendingCount());
+            assertTrue(batchUris.isEmpty());
+        } finally {
+            batch.execute();
+        }
+
+        assertEquals(1, batchUris.size());
+        assertEquals("http://localhost/api/batch", batchUris.get(0).toString());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i + 1, futures.get(i).getObject().getId());
+        }
+        assertEquals(42, futures.get(5).getObject().getId());
+        assertEquals(HttpStatus.NOT_FOUND, futures.get(6).get().getStatusCode());
+        try {
+            futures.get(6).getObject();
+            fail();
+        } catch (HttpClientInvocationResponseException e) {
+            // expected
+        }
+
+        // Calls made after the batch are sent on their own
+        assertEquals(3, service.getTester(3).getObject().getId());
+        assertEquals(1, batchUris.size());
+    }
+
+    public void testBatchSizeAndEarlyGet() throws Exception {
+        handler.setMaxBatchSize(2);
+        ServiceBatch batch = handler.beginBatch();
+        try {
+            ClientHttpResponseObjectFuture<Tester> first = service.getTester(1);
+            service.getTester(2);
+            assertEquals(1, batchUris.size());
+            ClientHttpResponseObjectFuture<Tester> third = service.getTester(3);
+            assertEquals(1, first.getObject().getId());
+            assertEquals(3, third.getObject().getId());
+            assertEquals(2, batchUris.size());
+        } finally {
+            batch.execute();
+        }
+        assertEquals(2, batchUris.size());
+        try {
+            handler.beginBatch().execute();
+            handler.beginBatch();
+            handler.beginBatch();
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    public void testDispatcherLimitsBatchSize() throws Exception {
+        dispatcher.setMaxBatchSize(1);
+        ServiceBatch batch = handler.beginBatch();
+        ClientHttpResponseObjectFuture<Tester> first = service.getTester(1);
+        ClientHttpResponseObjectFuture<Tester> second = service.getTester(2);
+        batch.execute();
+
+        // The whole batch is rejected, no call is dispatched
+        for (ClientHttpResponseObjectFuture<Tester> future : Arrays.asList(first, second)) {
+            try {
+                future.get();
+                fail("Calls of a batch larger than the limit must fail");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause().getMessage(), e.getCause().getMessage().contains("413"));
+            }
+        }
+    }
+
+    public void testDispatcherLimitsBatchLength() throws Exception {
+        dispatcher.setMaxBatchLength(40);
+        ServiceBatch batch = handler.beginBatch();
+        ClientHttpResponseObjectFuture<Tester> first = service.getTester(1);
+        ClientHttpResponseObjectFuture<Tester> second = service.getTester(2);
+        ClientHttpResponseObjectFuture<Tester> third = service.getTester(3);
+        batch.execute();
+
+        for (ClientHttpResponseObjectFuture<Tester> future : Arrays.asList(first, second, third)) {
+            try {
+                future.get();
+                fail("Calls of a batch longer than the limit must fail");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause().getMessage(), e.getCause().getMessage().contains("413"));
+            }
+        }
+    }
+
+    public void testDispatcherLimitsCallSize() throws Exception {
+        MessageLimits limits = new MessageLimits();
+        limits.setMaxMessageSizes(Collections.<Class<? extends Message>, Integer>singletonMap(BatchRequest.class, 4));
+        dispatcher.setMessageLimits(limits);
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/batch");
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        BatchRequest.newBuilder().setMethod("GET").setPath("/testers/1").build().writeDelimitedTo(body);
+        request.setContent(body.toByteArray());
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        dispatcher.handleRequest(request, response);
+
+        assertEquals(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, response.getStatus());
+    }
+
+    public void testDispatcherRejectsMalformedBatch() throws Exception {
+        ByteArrayOutputStream truncated = new ByteArrayOutputStream();
+        BatchRequest.newBuilder().setMethod("GET").setPath("/testers/1").build().writeDelimitedTo(truncated);
+        ByteArrayOutputStream uninitialized = new ByteArrayOutputStream();
+        BatchRequest.newBuilder().setMethod("GET").buildPartial().writeDelimitedTo(uninitialized);
+        byte[][] bodies = {Arrays.copyOf(truncated.toByteArray(), truncated.size() - 1), uninitialized.toByteArray(),
+                {2, (byte) 0xff, (byte) 0xff}};
+
+        for (byte[] body : bodies) {
+            MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/batch");
+            request.setContent(body);
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            dispatcher.handleRequest(request, response);
+            assertEquals(HttpServletResponse.SC_BAD_REQUEST, response.getStatus());
+        }
+    }
+
+    public void testResponseSizeLimit() throws Exception {
+        MessageLimits limits = new MessageLimits();
+        limits.setMaxMessageSizes(Collections.<Class<? extends Message>, Integer>singletonMap(Tester.class, 4));
+        handler.setMessageLimits(limits);
+        ServiceBatch batch = handler.beginBatch();
+        ClientHttpResponseObjectFuture<Tester> small = service.getTester(1);
+        ClientHttpResponseObjectFuture<Tester> large = service.getTester(1L << 40);
+        batch.execute();
+
+        assertEquals(1, small.getObject().getId());
+        try {
+            large.getObject();
+            fail("Responses larger than the limit must be rejected");
+        } catch (MessageTooLargeException e) {
+            // expected
+        }
+    }
+
+    public void testBatchResponseSizeLimit() throws Exception {
+        MessageLimits limits = new MessageLimits();
+        limits.setMaxMessageSizes(Collections.<Class<? extends Message>, Integer>singletonMap(BatchResponse.class, 4));
+        handler.setMessageLimits(limits);
+        ServiceBatch batch = handler.beginBatch();
+        ClientHttpResponseObjectFuture<Tester> first = service.getTester(1);
+        ClientHttpResponseObjectFuture<Tester> second = service.getTester(2);
+        batch.execute();
+
+        // Each oversized response is skipped, the following ones are still read
+        for (ClientHttpResponseObjectFuture<Tester> future : Arrays.asList(first, second)) {
+            try {
+                future.get();
+                fail("Responses larger than the limit must be rejected");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof MessageTooLargeException);
+            }
+        }
+    }
+
+    /**
+     * Serves the batch requests with a <code>ProtobufBatchDispatcher</code> forwarding to {@link TesterHandler}.
+     */
+    private class DispatchingRequestFactory implements ClientHttpRequestFactory {
+
+        public ClientHttpRequest createRequest(final URI uri, final HttpMethod httpMethod) {
+            return new ClientHttpRequest() {
+                private final HttpHeaders headers = new HttpHeaders();
+                private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+                public HttpMethod getMethod() {
+                    return httpMethod;
+                }
+
+                public HttpHeaders getHeaders() {
+                    return headers;
+                }
+
+                public OutputStream getBody() {
+                    return body;
+                }
+
+                public ClientHttpResponse execute() throws IOException {
+                    MockHttpServletRequest request = new MockHttpServletRequest(httpMethod.name(), uri.getPath()) {
+                        @Override
+                        public RequestDispatcher getRequestDispatcher(String path) {
+                            return new TesterHandler(path);
+                        }
+                    };
+                    request.setContextPath("/api");
+                    request.setContent(body.toByteArray());
+                    for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                        for (String value : header.getValue()) {
+                            request.addHeader(header.getKey(), value);
+                        }
+                    }
+                    MockHttpServletResponse response = new MockHttpServletResponse();
+                    if (uri.getPath().endsWith("/batch")) {
+                        batchUris.add(uri);
+                        try {
+                            dispatcher.handleRequest(request, response);
+                        } catch (Exception e) {
+                            throw new IllegalStateException(e);
+                        }
+                    } else {
+                        new TesterHandler(uri.getPath().substring(4)).handle(request, response);
+                    }
+                    return new MockClientHttpResponse(response);
+                }
+            };
+        }
+    }
+
+    /**
+     * Answers <code>GET /testers/{id}</code> and echoes <code>POST /testers</code> in binary protobuf.
+     */
+    private static class TesterHandler implements RequestDispatcher {
+        private final String path;
+
+        private TesterHandler(String path) {
+            this.path = path;
+        }
+
+        public void forward(ServletRequest request, ServletResponse response) throws IOException {
+            handle((HttpServletRequest) request, (HttpServletResponse) response);
+        }
+
+        public void include(ServletRequest request, ServletResponse response) {
+            throw new UnsupportedOperationException();
+        }
+
+        private void handle(HttpServletRequest request, HttpServletResponse response) throws IOException {
+            assertTrue(ProtobufHttpMessageConverter.PROTOBUF.includes(MediaType.parseMediaType(request.getHeader("Accept"))));
+            Tester tester;
+            if ("POST".equals(request.getMethod()) && path.equals("/testers")) {
+                assertEquals(ProtobufHttpMessageConverter.PROTOBUF.toString(), request.getContentType());
+                tester = Tester.parseFrom(request.getInputStream());
+            } else if ("GET".equals(request.getMethod()) && path.startsWith("/testers/") && !path.endsWith("-1")) {
+                tester = Tester.newBuilder().setId(Long.parseLong(path.substring(9))).build();
+            } else {
+                response.sendError(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+            response.setContentType(ProtobufHttpMessageConverter.PROTOBUF.toString());
+            tester.writeTo(response.getOutputStream());
+        }
+    }
+
+    private static class MockClientHttpResponse implements ClientHttpResponse {
+        private final MockHttpServletResponse response;
+        private final HttpHeaders headers = new HttpHeaders();
+
+        private MockClientHttpResponse(MockHttpServletResponse response) {
+            this.response = response;
+            if (response.getContentType() != null) {
+                headers.setContentType(MediaType.parseMediaType(response.getContentType()));
+            }
+        }
+
+        public HttpStatus getStatusCode() {
+            return HttpStatus.valueOf(response.getStatus());
+        }
+
+        public String getStatusText() {
+            return getStatusCode().name();
+        }
+
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        public InputStream getBody() {
+            return new ByteArrayInputStream(response.getContentAsByteArray());
+        }
+
+        public void close() {
+        }
+    }
+}
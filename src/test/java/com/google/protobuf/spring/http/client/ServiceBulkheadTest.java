@@ -0,0 +1,173 @@
+package com.google.protobuf.spring.http.client;
+
+import com.google.protobuf.spring.http.proto.model.Tester;
+import junit.framework.TestCase;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ */
+public class ServiceBulkheadTest extends TestCase {
+
+    public interface TesterService {
+        @ServiceRequest(name = "testers", pattern = "/testers/${id}", method = HttpMethod.GET)
+        ClientHttpResponseObjectFuture<Tester> getTester(@RequestParam("id") long id);
+    }
+
+    public void testRejectsWhenQueueIsFull() {
+        ServiceBulkhead bulkhead = new ServiceBulkhead("users", 1, 0);
+        bulkhead.acquire(1, TimeUnit.SECONDS);
+        assertEquals(1, bulkhead.getInFlightCount());
+
+        try {
+            bulkhead.acquire(1, TimeUnit.SECONDS);
+            fail("Call beyond the in-flight limit with no queue must be rejected");
+        } catch (ServiceBulkheadRejectedException e) {
+            assertEquals("users", e.getServiceName());
+        }
+        assertEquals(1, bulkhead.getRejectedCount());
+
+        bulkhead.release();
+        bulkhead.acquire(1, TimeUnit.SECONDS);
+        assertEquals(1, bulkhead.getInFlightCount());
+    }
+
+    public void testRejectsAfterTimeout() {
+        ServiceBulkhead bulkhead = new ServiceBulkhead("users", 1, 1);
+        bulkhead.acquire(1, TimeUnit.SECONDS);
+
+        try {
+            bulkhead.acquire(10, TimeUnit.MILLISECONDS);
+            fail("Queued call must be rejected once the timeout elapses");
+        } catch (ServiceBulkheadRejectedException e) {
+            // expected
+        }
+        assertEquals(0, bulkhead.getQueuedCount());
+        assertEquals(1, bulkhead.getRejectedCount());
+    }
+
+    public void testAsyncCallsWaitForSlotInTask() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch responseGate = new CountDownLatch(1);
+        ClientHttpRequestFactory factory = new ClientHttpRequestFactory() {
+            public ClientHttpRequest createRequest(final URI uri, final HttpMethod httpMethod) {
+                return new ClientHttpRequest() {
+                    private final HttpHeaders headers = new HttpHeaders();
+
+                    public HttpMethod getMethod() {
+                        return httpMethod;
+                    }
+
+                    public URI getURI() {
+                        return uri;
+                    }
+
+                    public HttpHeaders getHeaders() {
+                        return headers;
+                    }
+
+                    public OutputStream getBody() {
+                        return new ByteArrayOutputStream();
+                    }
+
+                    public ClientHttpResponse execute() {
+                        started.countDown();
+                        try {
+                            responseGate.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return new TesterResponse(Tester.newBuilder().setId(Long.parseLong(uri.getPath().substring(13))).build());
+                    }
+                };
+            }
+        };
+        ServiceBulkheadConfigurator config = new ServiceBulkheadConfigurator() {
+            public String getServiceBaseUrl(String serviceName) {
+                return "http://localhost/api";
+            }
+
+            public int getServiceTimeoutInSeconds(String serviceName) {
+                return 5;
+            }
+
+            public int getServiceMaxConcurrentRequests(String serviceName) {
+                return 1;
+            }
+
+            public int getServiceMaxQueuedRequests(String serviceName) {
+                return 1;
+            }
+        };
+        AbstractClientHttpInvocationHandler handler = new AbstractClientHttpInvocationHandler(factory, config) {
+        };
+        TesterService service = (TesterService) Proxy.newProxyInstance(TesterService.class.getClassLoader(),
+                new Class[]{TesterService.class}, handler);
+
+        long start = System.currentTimeMillis();
+        ClientHttpResponseObjectFuture<Tester> first = service.getTester(1);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        ClientHttpResponseObjectFuture<Tester> queued = service.getTester(2);
+        ServiceBulkhead bulkhead = handler.getServiceBulkhead("testers");
+        while (bulkhead.getQueuedCount() == 0) {
+            Thread.sleep(5);
+        }
+        ClientHttpResponseObjectFuture<Tester> rejected = service.getTester(3);
+        assertTrue("Callers must not wait for a slot", System.currentTimeMillis() - start < 2000);
+
+        try {
+            rejected.get();
+            fail("The call beyond the queue depth must be rejected");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof ServiceBulkheadRejectedException);
+        }
+        responseGate.countDown();
+        assertEquals(1, first.getObject().getId());
+        assertEquals(2, queued.getObject().getId());
+        assertEquals(0, bulkhead.getInFlightCount());
+    }
+
+    private static class TesterResponse implements ClientHttpResponse {
+        private final HttpHeaders headers = new HttpHeaders();
+        private final byte[] body;
+
+        private TesterResponse(Tester tester) {
+            this.body = tester.toByteArray();
+        }
+
+        public HttpStatus getStatusCode() {
+            return HttpStatus.OK;
+        }
+
+        public String getStatusText() {
+            return getStatusCode().name();
+        }
+
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        public InputStream getBody() {
+            return new ByteArrayInputStream(body);
+        }
+
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.google.protobuf.spring.http.client;
+
+import com.google.protobuf.spring.http.ProtobufHttpMessageConverter;
+import com.google.protobuf.spring.http.proto.model.Tester;
+import junit.framework.TestCase;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+
+/**
+ *
+ */
+public class ServiceInvocationPlanTest extends TestCase {
+
+    public interface TesterService {
+        @ServiceRequest(name = "testers", pattern = "/testers/${id}", method = HttpMethod.GET)
+        ClientHttpResponseObjectFuture<Tester> getTester(@RequestParam("id") long id);
+
+        @ServiceRequest(name = "testers", pattern = "/testers", method = HttpMethod.POST)
+        ClientHttpResponseObjectFuture<Tester> createTester(Tester tester);
+    }
+
+    private int configLookups;
+    private AbstractClientHttpInvocationHandler handler;
+    private TesterService service;
+
+    @Override
+    protected void setUp() throws Exception {
+        ClientHttpInvocationHandlerServiceConfigurator config = new ClientHttpInvocationHandlerServiceConfigurator() {
+            public String getServiceBaseUrl(String serviceName) {
+                configLookups++;
+                return "http://localhost/api";
+            }
+
+            public int getServiceTimeoutInSeconds(String serviceName) {
+                configLookups++;
+                return 5;
+            }
+        };
+        handler = new AbstractClientHttpInvocationHandler(new TesterRequestFactory(), config) {
+        };
+        service = (TesterService) Proxy.newProxyInstance(TesterService.class.getClassLoader(),
+                new Class[]{TesterService.class}, handler);
+    }
+
+    public void testInvocationPlansPrepared() throws Exception {
+        handler.prepareInvocationPlans(TesterService.class);
+        int lookups = configLookups;
+        assertEquals(4, lookups);
+
+        Method getTester = TesterService.class.getMethod("getTester", long.class);
+        ServiceInvocationPlan plan = handler.getInvocationPlan(getTester);
+        assertSame(plan, handler.getInvocationPlan(getTester));
+        assertEquals("testers", plan.getServiceName());
+        assertEquals("http://localhost/api", plan.getBaseUrl());
+        assertEquals("/api", plan.getServiceIdentifier());
+        assertEquals(5, plan.getTimeout());
+        assertEquals(HttpMethod.GET, plan.getRequestMethod());
+        assertEquals(MediaType.parseMediaType("application/x-protobuf"), plan.getResponseDesiredContentType());
+        assertEquals(Tester.class, plan.getReturnType());
+        assertTrue(plan.isReturnHttpResponseObjectFuture());
+        assertEquals(1, plan.getParamNames().length);
+        assertEquals("id", plan.getParamNames()[0].value());
+        assertNull(plan.retrieveRequestBody(new Object[]{1L}));
+
+        ServiceInvocationPlan createPlan = handler.getInvocationPlan(TesterService.class.getMethod("createTester", Tester.class));
+        Tester tester = Tester.newBuilder().setId(42).build();
+        assertEquals(HttpMethod.POST, createPlan.getRequestMethod());
+        assertSame(tester, createPlan.retrieveRequestBody(new Object[]{tester}));
+        assertFalse(createPlan.isCacheable());
+
+        // Calls only bind their arguments, the configuration is not looked up again
+        assertEquals(3, service.getTester(3).getObject().getId());
+        assertEquals(4, service.getTester(4).getObject().getId());
+        assertEquals(lookups, configLookups);
+    }
+
+    /**
+     * Answers <code>GET /api/testers/{id}</code> in binary protobuf.
+     */
+    private static class TesterRequestFactory implements ClientHttpRequestFactory {
+
+        public ClientHttpRequest createRequest(final URI uri, final HttpMethod httpMethod) {
+            return new ClientHttpRequest() {
+                private final HttpHeaders headers = new HttpHeaders();
+                private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+                public HttpMethod getMethod() {
+                    return httpMethod;
+                }
+
+                public HttpHeaders getHeaders() {
+                    return headers;
+                }
+
+                public OutputStream getBody() {
+                    return body;
+                }
+
+                public ClientHttpResponse execute() {
+                    assertEquals(HttpMethod.GET, httpMethod);
+                    assertTrue(uri.getPath().startsWith("/api/testers/"));
+                    long id = Long.parseLong(uri.getPath().substring("/api/testers/".length()));
+                    return new TesterClientHttpResponse(Tester.newBuilder().setId(id).build());
+                }
+            };
+        }
+    }
+
+    private static class TesterClientHttpResponse implements ClientHttpResponse {
+        private final HttpHeaders headers = new HttpHeaders();
+        private final byte[] body;
+
+        private TesterClientHttpResponse(Tester tester) {
+            this.body = tester.toByteArray();
+            headers.setContentType(ProtobufHttpMessageConverter.PROTOBUF);
+        }
+
+        public HttpStatus getStatusCode() {
+            return HttpStatus.OK;
+        }
+
+        public String getStatusText() {
+            return getStatusCode().name();
+        }
+
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        public InputStream getBody() {
+            return new ByteArrayInputStream(body);
+        }
+
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.google.protobuf.spring.http.client;
+
+import junit.framework.TestCase;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import java.lang.reflect.Method;
+
+/**
+ *
+ */
+public class UrlTemplateTest extends TestCase {
+
+    public void testExpand() throws Exception {
+        UrlTemplate template = createTemplate("find");
+
+        assertEquals("http://host/users/42/items?q=a+b%26c&tag=x&tag=y",
+                template.expand(new Object[]{42, "a b&c", new String[]{"x", null, "y"}, null}, false));
+        assertEquals("http://host/users/42/items",
+                template.expand(new Object[]{42, "a b&c", new String[]{"x"}, null}, true));
+    }
+
+    public void testUnresolvedVariableIsKept() throws Exception {
+        UrlTemplate template = createTemplate("find");
+
+        assertEquals("http://host/users/${id}/items", template.expand(null, false));
+    }
+
+    public void testRequiredParameter() throws Exception {
+        UrlTemplate template = createTemplate("find");
+
+        try {
+            template.expand(new Object[]{42, null, null, null}, false);
+            fail("Missing required parameter must be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testArrayInPathIsRejected() throws Exception {
+        UrlTemplate template = createTemplate("find");
+
+        try {
+            template.expand(new Object[]{new int[]{1}, "q", null, null}, false);
+            fail("Array path variable must be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private UrlTemplate createTemplate(String methodName) throws Exception {
+        Method method = null;
+        for (Method m : Service.class.getMethods()) {
+            if (m.getName().equals(methodName)) {
+                method = m;
+            }
+        }
+        ServiceRequest service = method.getAnnotation(ServiceRequest.class);
+        return new UrlTemplate("http://host", service.pattern(), AbstractClientHttpInvocationHandler.retrieveRequestParams(method));
+    }
+
+    private interface Service {
+        @ServiceRequest(name = "users", pattern = "/users/${id}/items", method = HttpMethod.GET)
+        String find(@RequestParam("id") Object id,
+                    @RequestParam("q") String query,
+                    @RequestParam(value = "tag", required = false) String[] tags,
+                    @RequestParam(value = "page", required = false) Integer page);
+    }
+}
@@ -0,0 +1,92 @@
+package com.google.protobuf.spring.http.metrics;
+
+import com.google.protobuf.Message;
+import com.google.protobuf.spring.http.ProtobufHttpMessageConverter;
+import com.google.protobuf.spring.http.proto.model.Tester;
+import junit.framework.TestCase;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import java.io.IOException;
+
+/**
+ *
+ */
+public class HistogramProtobufMetricsTest extends TestCase {
+
+    public void testLatencyHistogram() {
+        for (long value : new long[]{0, 1, 31, 32, 33, 63, 64, 1000, 123456789, Long.MAX_VALUE / 3, Long.MAX_VALUE}) {
+            long highest = LatencyHistogram.highestValueAt(LatencyHistogram.indexOf(value));
+            assertTrue(value + " > " + highest, highest >= value);
+            assertTrue(value + " << " + highest, highest - value <= value / 16);
+        }
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000, histogram.getMax());
+        assertEquals(500.5, histogram.getMean());
+        assertTrue(histogram.getValueAtPercentile(50) >= 500 && histogram.getValueAtPercentile(50) <= 531);
+        assertTrue(histogram.getValueAtPercentile(99) >= 990);
+        assertEquals(1000, histogram.getValueAtPercentile(100));
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testConverterMetrics() throws IOException {
+        HistogramProtobufMetrics metrics = new HistogramProtobufMetrics();
+        ProtobufHttpMessageConverter converter = new ProtobufHttpMessageConverter();
+        converter.setMetrics(metrics);
+        Tester msg = Tester.newBuilder().setId(300).build();
+
+        converter.write(msg, ProtobufHttpMessageConverter.JSON, new ServletServerHttpResponse(new MockHttpServletResponse()));
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setContentType(ProtobufHttpMessageConverter.PROTOBUF.toString());
+        request.setContent(msg.toByteArray());
+        converter.read((Class) Tester.class, new ServletServerHttpRequest(request));
+        request.setContent(new byte[]{1, 2, 3});
+        try {
+            converter.read((Class) Tester.class, new ServletServerHttpRequest(request));
+            fail();
+        } catch (Exception e) {
+            // expected
+        }
+
+        StageMetrics serialize = metrics.getStageMetrics(ProtobufMetrics.Stage.SERIALIZE, null,
+                MediaType.parseMediaType("application/json"), Tester.class);
+        assertEquals(1, serialize.getCount());
+        assertEquals("{\"id\": 300}".length(), serialize.getBytes());
+        StageMetrics parse = metrics.getStageMetrics(ProtobufMetrics.Stage.PARSE, null,
+                ProtobufHttpMessageConverter.PROTOBUF, Tester.class);
+        assertEquals(1, parse.getCount());
+        assertEquals(msg.getSerializedSize(), parse.getBytes());
+        assertEquals(1, parse.getErrorCount());
+        assertEquals("application/x-protobuf", parse.getMediaType());
+        assertEquals(2, metrics.getAllStageMetrics().size());
+    }
+
+    public void testJmxExport() throws Exception {
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        JmxProtobufMetrics metrics = new JmxProtobufMetrics(server, "test");
+
+        metrics.record(ProtobufMetrics.Stage.EXCHANGE, "orders", ProtobufHttpMessageConverter.PROTOBUF,
+                Message.class, 2000, -1);
+        metrics.requestStarted("orders");
+
+        ObjectName stage = new ObjectName("test:type=StageMetrics,stage=EXCHANGE,service=\"orders\"," +
+                "mediaType=\"application/x-protobuf\",messageType=\"com.google.protobuf.Message\"");
+        assertEquals(1L, server.getAttribute(stage, "Count"));
+        assertEquals(2.0, server.getAttribute(stage, "MaxMicros"));
+        assertEquals(1, server.getAttribute(new ObjectName("test:type=ServiceMetrics,service=\"orders\""), "InFlightCount"));
+
+        metrics.destroy();
+        assertFalse(server.isRegistered(stage));
+    }
+}
@@ -0,0 +1,154 @@
+package com.google.protobuf.spring.http.server;
+
+import com.google.protobuf.spring.http.MessageLimits;
+import com.google.protobuf.spring.http.MessageTooLargeException;
+import com.google.protobuf.spring.http.ProtobufHttpMessageConverter;
+import com.google.protobuf.spring.http.proto.model.Tester;
+import junit.framework.TestCase;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ *
+ */
+public class ProtobufAnnotationMethodHandlerAdapterTest extends TestCase {
+
+    public void testNegotiateAccept() throws Exception {
+        ProtobufAnnotationMethodHandlerAdapter adapter = new ProtobufAnnotationMethodHandlerAdapter();
+
+        assertEquals(ProtobufHttpMessageConverter.PROTOBUF, negotiate(adapter, null, null).get(0));
+        assertEquals(ProtobufHttpMessageConverter.JSON, negotiate(adapter, "application/xml", "json").get(0));
+        assertEquals(ProtobufHttpMessageConverter.JSON, negotiate(adapter, null, "JSON").get(0));
+        assertEquals(ProtobufHttpMessageConverter.XML, negotiate(adapter, null, "application/xml;charset=UTF-8").get(0));
+
+        List<MediaType> browser = negotiate(adapter, "application/xml,text/html;q=0.9,*/*;q=0.8", null);
+        assertEquals(ProtobufHttpMessageConverter.HTML, browser.get(0));
+        assertTrue(browser.contains(MediaType.parseMediaType("application/xml")));
+    }
+
+    public void testNegotiationCached() throws Exception {
+        ProtobufAnnotationMethodHandlerAdapter adapter = new ProtobufAnnotationMethodHandlerAdapter();
+        for (int i = 0; i < 3; i++) {
+            assertEquals(MediaType.parseMediaType("application/json"), negotiate(adapter, "application/json", null).get(0));
+            assertEquals(ProtobufHttpMessageConverter.TEXT, negotiate(adapter, "application/json", "text").get(0));
+            // The parameter alone decides the outcome
+            assertEquals(ProtobufHttpMessageConverter.TEXT, negotiate(adapter, "application/xml", "text").get(0));
+        }
+        assertEquals(2, adapter.getNegotiatedAcceptHeaderCount());
+        assertTrue(adapter.isNegotiationCached("application/json"));
+        assertTrue(adapter.isNegotiationCached("\ntext"));
+
+        // The cached list is handed out as a copy, callers sort it in place
+        List<MediaType> browser = negotiate(adapter, "application/xml,text/html;q=0.9", null);
+        MediaType.sortByQualityValue(browser);
+        browser.clear();
+        assertEquals(ProtobufHttpMessageConverter.HTML, negotiate(adapter, "application/xml,text/html;q=0.9", null).get(0));
+
+        for (int i = 0; i < ProtobufAnnotationMethodHandlerAdapter.MAX_NEGOTIATED_ACCEPT_HEADERS * 2; i++) {
+            negotiate(adapter, "application/x-" + i, null);
+        }
+        assertTrue(adapter.getNegotiatedAcceptHeaderCount() <= ProtobufAnnotationMethodHandlerAdapter.MAX_NEGOTIATED_ACCEPT_HEADERS);
+        // The cache is cleared once full, so new headers are still cached
+        assertFalse(adapter.isNegotiationCached("application/json"));
+        assertTrue(adapter.isNegotiationCached("application/x-" + (ProtobufAnnotationMethodHandlerAdapter.MAX_NEGOTIATED_ACCEPT_HEADERS * 2 - 1)));
+
+        assertEquals(MediaType.parseMediaType("application/json"), negotiate(adapter, "application/json", null).get(0));
+        assertTrue(adapter.isNegotiationCached("application/json"));
+    }
+
+    public void testTooLargeBodyRejected() throws Exception {
+        ProtobufHttpMessageConverter converter = new ProtobufHttpMessageConverter();
+        MessageLimits limits = new MessageLimits();
+        limits.setMaxMessageSize(4);
+        converter.setMessageLimits(limits);
+        ProtobufAnnotationMethodHandlerAdapter adapter = new ProtobufAnnotationMethodHandlerAdapter();
+        adapter.setMessageConverters(new HttpMessageConverter[]{converter});
+        Tester tester = Tester.newBuilder().setId(1L << 40).build();
+
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/testers");
+        request.addHeader("Content-Type", ProtobufHttpMessageConverter.PROTOBUF.toString());
+        request.addHeader("Content-Length", String.valueOf(tester.getSerializedSize()));
+        request.setContent(tester.toByteArray());
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        adapter.handle(request, response, new TesterController());
+
+        assertEquals(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, response.getStatus());
+    }
+
+    public void testTooLargeDownstreamResponseNotRejected() throws Exception {
+        ProtobufAnnotationMethodHandlerAdapter adapter = new ProtobufAnnotationMethodHandlerAdapter();
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/testers/1");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        try {
+            adapter.handle(request, response, new DownstreamController());
+            fail("A response of a downstream service rejected by the client is a server error");
+        } catch (MessageTooLargeException e) {
+            assertFalse(e instanceof RequestBodyTooLargeException);
+        }
+        assertTrue(response.getStatus() != HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+    }
+
+    @Controller
+    public static class TesterController {
+        @RequestMapping(value = "/testers", method = RequestMethod.POST)
+        @ResponseBody
+        public Tester createTester(@RequestBody Tester tester) {
+            fail("The body must not be converted");
+            return tester;
+        }
+    }
+
+    /**
+     * Reads the response of a downstream service the way the client proxies do, with limits it exceeds.
+     */
+    @Controller
+    public static class DownstreamController {
+        @RequestMapping(value = "/testers/1", method = RequestMethod.GET)
+        @ResponseBody
+        public Tester getTester() throws IOException {
+            ProtobufHttpMessageConverter client = new ProtobufHttpMessageConverter();
+            MessageLimits limits = new MessageLimits();
+            limits.setMaxMessageSize(4);
+            client.setMessageLimits(limits);
+            final Tester tester = Tester.newBuilder().setId(1L << 40).build();
+            return (Tester) client.read(Tester.class, new HttpInputMessage() {
+                public InputStream getBody() {
+                    return new ByteArrayInputStream(tester.toByteArray());
+                }
+
+                public HttpHeaders getHeaders() {
+                    HttpHeaders headers = new HttpHeaders();
+                    headers.setContentType(ProtobufHttpMessageConverter.PROTOBUF);
+                    return headers;
+                }
+            });
+        }
+    }
+
+    private static List<MediaType> negotiate(ProtobufAnnotationMethodHandlerAdapter adapter, String accept, String format) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/test");
+        if (accept != null) {
+            request.addHeader("Accept", accept);
+        }
+        if (format != null) {
+            request.addParameter("format", format);
+        }
+        return adapter.createHttpInputMessage(request).getHeaders().getAccept();
+    }
+}